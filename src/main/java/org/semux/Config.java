@@ -9,12 +9,15 @@ package org.semux;
 import java.io.File;
 import java.io.FileInputStream;
 import java.net.InetSocketAddress;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.semux.core.Unit;
+import org.semux.db.DBName;
 import org.semux.net.msg.MessageCode;
 import org.semux.utils.SystemUtil;
 import org.slf4j.Logger;
@@ -45,6 +48,18 @@ public class Config {
                 case "minTransactionFee":
                     MIN_TRANSACTION_FEE_SOFT = Integer.parseInt(props.getProperty(name));
                     break;
+                case "validationThreads":
+                    VALIDATION_THREADS = Integer.parseInt(props.getProperty(name));
+                    break;
+                case "pending.queueMemory":
+                    PENDING_QUEUE_MEMORY = Long.parseLong(props.getProperty(name)) * 1024 * 1024;
+                    break;
+                case "pending.poolMemory":
+                    PENDING_POOL_MEMORY = Long.parseLong(props.getProperty(name)) * 1024 * 1024;
+                    break;
+                case "pending.cacheMemory":
+                    PENDING_CACHE_MEMORY = Long.parseLong(props.getProperty(name)) * 1024 * 1024;
+                    break;
 
                 case "p2p.ip":
                     P2P_LISTEN_IP = props.getProperty(name);
@@ -89,7 +104,16 @@ public class Config {
                 case "api.port":
                     API_LISTEN_PORT = Integer.parseInt(props.getProperty(name));
                     break;
+
+                case "db.backend":
+                    DB_BACKEND = props.getProperty(name).trim().toLowerCase();
+                    break;
                 default:
+                    DBName db = getCompressionDB(name);
+                    if (db != null) {
+                        DB_COMPRESSION.put(db, props.getProperty(name).trim().toLowerCase());
+                        break;
+                    }
                     logger.error("Unsupported option: {} = {}", name, props.getProperty(name));
                     break;
                 }
@@ -146,11 +170,87 @@ public class Config {
      */
     public static long MANDATORY_UPGRADE = 2 * 60 * 24 * 30;
 
+    /**
+     * Max total size of the decoded blocks cached in memory, in bytes.
+     */
+    public static long BLOCK_CACHE_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Max total size of the decoded block headers cached in memory, in bytes.
+     */
+    public static long BLOCK_HEADER_CACHE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Max number of cached per-account transaction counters and validator
+     * statistics.
+     */
+    public static int COUNTER_CACHE_SIZE = 256 * 1024;
+
+    /**
+     * Max number of verified signatures cached in memory.
+     */
+    public static int SIGNATURE_CACHE_SIZE = 128 * 1024;
+
+    /**
+     * Number of block validation threads, or 0 for the number of CPU cores.
+     */
+    public static int VALIDATION_THREADS = 0;
+
+    /**
+     * Max memory taken by the transactions waiting for validation, in bytes.
+     */
+    public static long PENDING_QUEUE_MEMORY = 32 * 1024 * 1024;
+
+    /**
+     * Max memory taken by the pool of pending transactions, in bytes.
+     */
+    public static long PENDING_POOL_MEMORY = 64 * 1024 * 1024;
+
+    /**
+     * Max memory taken by the future-nonce transactions and the hashes of
+     * processed transactions, in bytes.
+     */
+    public static long PENDING_CACHE_MEMORY = 32 * 1024 * 1024;
+
     /**
      * State lock to prevent state inconsistency.
      */
     public static ReentrantReadWriteLock STATE_LOCK = new ReentrantReadWriteLock();
 
+    // =========================
+    // Database
+    // =========================
+
+    /**
+     * Database backend [leveldb, rocksdb].
+     */
+    public static String DB_BACKEND = "leveldb";
+
+    /**
+     * Per-database compression type, only used by the RocksDB backend.
+     */
+    public static Map<DBName, String> DB_COMPRESSION = new EnumMap<>(DBName.class);
+
+    private static final String DB_COMPRESSION_PREFIX = "db.compression.";
+
+    /**
+     * Returns the database of a <code>db.compression.[name]</code> option.
+     * 
+     * @param option
+     * @return the database, or null if the option doesn't name one
+     */
+    private static DBName getCompressionDB(String option) {
+        if (!option.startsWith(DB_COMPRESSION_PREFIX)) {
+            return null;
+        }
+
+        try {
+            return DBName.valueOf(option.substring(DB_COMPRESSION_PREFIX.length()).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     // =========================
     // Client
     // =========================
@@ -174,6 +274,19 @@ public class Config {
      */
     public static String CRYPTO_H256_ALG = "BLAKE2B-256";
 
+    /**
+     * Max number of decoded public keys cached for signature verification.
+     */
+    public static int CRYPTO_PUBLIC_KEY_CACHE_SIZE = 4096;
+
+    /**
+     * Block number from which transaction signatures are verified with the
+     * cofactored equation, which allows verifying them in batches. Before it, they
+     * are verified one by one, with the cofactorless check existing nodes do. Not
+     * scheduled yet.
+     */
+    public static long CRYPTO_BATCH_VERIFY_HEIGHT = Long.MAX_VALUE;
+
     // =========================
     // P2P
     // =========================
@@ -183,6 +296,17 @@ public class Config {
      */
     public static short P2P_VERSION = 0;
 
+    /**
+     * P2P capability of relaying transactions by announcing their hashes. Peers
+     * without it are sent the transactions in full.
+     */
+    public static final String P2P_CAPABILITY_TX_HASHES = "TX_HASHES";
+
+    /**
+     * P2P capabilities advertised in the handshake.
+     */
+    public static String[] P2P_CAPABILITIES = { P2P_CAPABILITY_TX_HASHES };
+
     /**
      * P2P listening address.
      */
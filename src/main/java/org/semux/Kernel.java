@@ -16,12 +16,12 @@ import org.semux.consensus.SemuxSync;
 import org.semux.core.Blockchain;
 import org.semux.core.BlockchainImpl;
 import org.semux.core.PendingManager;
+import org.semux.core.ValidationPool;
 import org.semux.core.Wallet;
 import org.semux.crypto.EdDSA;
 import org.semux.db.DBFactory;
-import org.semux.db.DBName;
-import org.semux.db.KVDB;
-import org.semux.db.LevelDB;
+import org.semux.db.LevelDBFactory;
+import org.semux.db.RocksDBFactory;
 import org.semux.net.ChannelManager;
 import org.semux.net.NodeManager;
 import org.semux.net.PeerClient;
@@ -46,6 +46,7 @@ public class Kernel {
 
     private Blockchain chain;
     private PeerClient client;
+    private ValidationPool validationPool;
 
     private PendingManager pendingMgr;
     private ChannelManager channelMgr;
@@ -101,33 +102,22 @@ public class Kernel {
         logger.info(Config.getClientId(true));
         logger.info("System booting up: network = {}, coinbase = {}", Config.NETWORK_ID, coinbase);
 
-        DBFactory dbFactory = new DBFactory() {
-            private final KVDB indexDB = new LevelDB(DBName.INDEX);
-            private final KVDB blockDB = new LevelDB(DBName.BLOCK);
-            private final KVDB accountDB = new LevelDB(DBName.ACCOUNT);
-            private final KVDB delegateDB = new LevelDB(DBName.DELEGATE);
-            private final KVDB voteDB = new LevelDB(DBName.VOTE);
-
-            @Override
-            public KVDB getDB(DBName name) {
-                switch (name) {
-                case INDEX:
-                    return indexDB;
-                case BLOCK:
-                    return blockDB;
-                case ACCOUNT:
-                    return accountDB;
-                case DELEGATE:
-                    return delegateDB;
-                case VOTE:
-                    return voteDB;
-                default:
-                    throw new RuntimeException("Unexpected database: " + name);
-                }
-            }
-        };
+        DBFactory dbFactory;
+        switch (Config.DB_BACKEND) {
+        case "leveldb":
+            dbFactory = new LevelDBFactory();
+            break;
+        case "rocksdb":
+            dbFactory = new RocksDBFactory();
+            break;
+        default:
+            logger.error("Unsupported database backend: {}", Config.DB_BACKEND);
+            System.exit(-1);
+            return;
+        }
         chain = new BlockchainImpl(dbFactory);
         client = new PeerClient(SystemUtil.getIp(), Config.P2P_LISTEN_PORT, coinbase);
+        validationPool = new ValidationPool(Config.VALIDATION_THREADS);
 
         long number = chain.getLatestBlockNumber();
         if (number >= Config.MANDATORY_UPGRADE) {
@@ -141,7 +131,7 @@ public class Kernel {
         // start channel/pending/node manager
         // ====================================
         channelMgr = new ChannelManager();
-        pendingMgr = new PendingManager(chain, channelMgr);
+        pendingMgr = new PendingManager(chain, channelMgr, validationPool);
         nodeMgr = new NodeManager(chain, channelMgr, pendingMgr, client);
 
         pendingMgr.start();
@@ -174,10 +164,10 @@ public class Kernel {
         // start sync/consensus
         // ====================================
         SemuxSync sync = SemuxSync.getInstance();
-        sync.init(chain, channelMgr);
+        sync.init(chain, channelMgr, validationPool);
 
         SemuxBFT cons = SemuxBFT.getInstance();
-        cons.init(chain, channelMgr, pendingMgr, coinbase);
+        cons.init(chain, channelMgr, pendingMgr, validationPool, coinbase);
 
         Thread consThread = new Thread(() -> {
             cons.start();
@@ -223,15 +213,12 @@ public class Kernel {
             } catch (InterruptedException e) {
                 logger.error("Failed to stop sync/consensus properly");
             }
+            validationPool.shutdown();
 
             // make sure no thread is updating state
             WriteLock lock = Config.STATE_LOCK.writeLock();
             lock.lock();
-            for (DBName name : DBName.values()) {
-                if (name != DBName.TEST) {
-                    dbFactory.getDB(name).close();
-                }
-            }
+            dbFactory.close();
             lock.unlock();
 
             api.stop();
@@ -266,6 +253,15 @@ public class Kernel {
         return chain;
     }
 
+    /**
+     * Returns the block validation pool.
+     * 
+     * @return
+     */
+    public ValidationPool getValidationPool() {
+        return validationPool;
+    }
+
     /**
      * Returns the peer client.
      * 
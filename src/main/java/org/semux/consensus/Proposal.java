@@ -9,6 +9,7 @@ package org.semux.consensus;
 import org.semux.core.Block;
 import org.semux.crypto.EdDSA;
 import org.semux.crypto.EdDSA.Signature;
+import org.semux.crypto.SignatureCache;
 import org.semux.utils.SimpleDecoder;
 import org.semux.utils.SimpleEncoder;
 
@@ -77,7 +78,7 @@ public class Proposal {
                 && getView() >= 0 //
                 && proof != null //
                 && encoded != null//
-                && signature != null && EdDSA.verify(encoded, signature) //
+                && signature != null && SignatureCache.getInstance().verify(encoded, signature) //
                 && block != null;
     }
 
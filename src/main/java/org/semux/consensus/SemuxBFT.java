@@ -11,6 +11,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.apache.commons.lang3.tuple.Pair;
@@ -26,12 +27,15 @@ import org.semux.core.Sync;
 import org.semux.core.Transaction;
 import org.semux.core.TransactionExecutor;
 import org.semux.core.TransactionResult;
+import org.semux.core.ValidationPool;
+import org.semux.core.ValidatorSet;
 import org.semux.core.state.AccountState;
 import org.semux.core.state.DelegateState;
 import org.semux.crypto.EdDSA;
 import org.semux.crypto.EdDSA.Signature;
 import org.semux.crypto.Hash;
 import org.semux.crypto.Hex;
+import org.semux.crypto.SignatureCache;
 import org.semux.net.Channel;
 import org.semux.net.ChannelManager;
 import org.semux.net.msg.Message;
@@ -53,6 +57,7 @@ public class SemuxBFT implements Consensus {
     private Blockchain chain;
     private ChannelManager channelMgr;
     private PendingManager pendingMgr;
+    private ValidationPool validationPool;
     private Sync sync;
 
     private EdDSA coinbase;
@@ -74,6 +79,19 @@ public class SemuxBFT implements Consensus {
     private Proof proof;
     private Proposal proposal;
 
+    /**
+     * State changes of the last block validated, kept so that the block doesn't
+     * have to be executed again when finalized.
+     */
+    private ValidatedState validated;
+
+    // statistics of the block validations
+    private AtomicLong validatedCount = new AtomicLong();
+    private volatile long validationTime;
+    private volatile long validationQueueDepth;
+    private volatile double validationUtilization;
+
+    private volatile ValidatorSet validatorSet;
     private volatile List<String> validators;
     private volatile List<Channel> activeValidators;
     private volatile long lastUpdate;
@@ -102,10 +120,12 @@ public class SemuxBFT implements Consensus {
     }
 
     @Override
-    public void init(Blockchain chain, ChannelManager channelMgr, PendingManager pendingMgr, EdDSA coinbase) {
+    public void init(Blockchain chain, ChannelManager channelMgr, PendingManager pendingMgr,
+            ValidationPool validationPool, EdDSA coinbase) {
         this.chain = chain;
         this.channelMgr = channelMgr;
         this.pendingMgr = pendingMgr;
+        this.validationPool = validationPool;
         this.sync = SemuxSync.getInstance();
         this.coinbase = coinbase;
 
@@ -226,6 +246,44 @@ public class SemuxBFT implements Consensus {
         return status == Status.RUNNING;
     }
 
+    /**
+     * Returns the number of blocks validated.
+     * 
+     * @return
+     */
+    public long getValidatedCount() {
+        return validatedCount.get();
+    }
+
+    /**
+     * Returns the time taken to validate the last block, in milliseconds.
+     * 
+     * @return
+     */
+    public long getValidationTime() {
+        return validationTime;
+    }
+
+    /**
+     * Returns the number of tasks waiting on the validation pool when the last
+     * block was submitted to it.
+     * 
+     * @return
+     */
+    public long getValidationQueueDepth() {
+        return validationQueueDepth;
+    }
+
+    /**
+     * Returns the utilization of the validation pool after the last block was
+     * validated.
+     * 
+     * @return a number between 0 and 1
+     */
+    public double getValidationUtilization() {
+        return validationUtilization;
+    }
+
     /**
      * Enter the NEW_HEIGHT state
      */
@@ -240,6 +298,7 @@ public class SemuxBFT implements Consensus {
         view = 0;
         proof = new Proof(height, view);
         proposal = null;
+        validated = null;
 
         // update validators
         updateValidators();
@@ -625,7 +684,8 @@ public class SemuxBFT implements Consensus {
      * Update the validator sets.
      */
     protected void updateValidators() {
-        validators = chain.getValidators();
+        validatorSet = chain.getValidatorSet();
+        validators = validatorSet.getPeerIds();
         activeValidators = channelMgr.getActiveChannels(validators);
         lastUpdate = System.currentTimeMillis();
     }
@@ -636,7 +696,7 @@ public class SemuxBFT implements Consensus {
      * @return
      */
     protected boolean isValidator() {
-        return validators.contains(coinbase.toAddressString());
+        return validatorSet.contains(coinbase.toAddress());
     }
 
     /**
@@ -659,10 +719,9 @@ public class SemuxBFT implements Consensus {
      * @return
      */
     protected boolean isPrimary(int view, byte[] pubKey) {
-        String peerId = Hex.encode(Hash.h160(pubKey));
-        int n = (int) ((height - 1 + view) % validators.size());
+        int n = (int) ((height - 1 + view) % validatorSet.size());
 
-        return validators.get(n).equals(peerId);
+        return validatorSet.indexOf(Hash.h160(pubKey)) == n;
     }
 
     /**
@@ -672,7 +731,7 @@ public class SemuxBFT implements Consensus {
      * @return
      */
     protected boolean isFromValidator(Signature sig) {
-        return validators.contains(Hex.encode(Hash.h160(sig.getPublicKey())));
+        return validatorSet.contains(Hash.h160(sig.getPublicKey()));
     }
 
     /**
@@ -735,8 +794,10 @@ public class SemuxBFT implements Consensus {
      */
     protected boolean validateBlock(Block block) {
         long t1 = System.currentTimeMillis();
+        validationQueueDepth = validationPool.getQueueDepth();
+
         // [1] check block integrity and signature
-        if (!block.validate()) {
+        if (!block.validate(validationPool)) {
             logger.debug("Invalid block/transaction format");
             return false;
         }
@@ -754,7 +815,7 @@ public class SemuxBFT implements Consensus {
 
         // [3] check transactions
         List<Transaction> txs = block.getTransactions();
-        List<TransactionResult> results = exec.execute(txs, as, ds);
+        List<TransactionResult> results = exec.executeParallel(txs, as, ds);
         for (int i = 0; i < results.size(); i++) {
             if (!results.get(i).isValid()) {
                 logger.debug("Invalid transaction #{}", i);
@@ -763,8 +824,14 @@ public class SemuxBFT implements Consensus {
         }
 
         long t2 = System.currentTimeMillis();
+        validatedCount.incrementAndGet();
+        validationTime = t2 - t1;
+        validationUtilization = validationPool.getUtilization();
         logger.debug("Block validation: # txs = {}, time = {} ms", txs.size(), t2 - t1);
+        logger.debug("Validation pool: {}", validationPool);
+        logger.debug("Signature cache: {}", SignatureCache.getInstance());
 
+        validated = new ValidatedState(block.getHash(), latest.getHash(), as, ds);
         return true;
     }
 
@@ -778,17 +845,28 @@ public class SemuxBFT implements Consensus {
             throw new RuntimeException("Applying wrong block: number = " + block.getNumber());
         }
 
-        AccountState as = chain.getAccountState().track();
-        DelegateState ds = chain.getDeleteState().track();
+        AccountState as;
+        DelegateState ds;
 
-        // [1] execute all transactions
-        TransactionExecutor exec = new TransactionExecutor();
-        List<TransactionResult> results = exec.execute(block.getTransactions(), as, ds);
-        for (int i = 0; i < results.size(); i++) {
-            if (!results.get(i).isValid()) {
-                Transaction tx = block.getTransactions().get(i);
-                logger.debug("Invalid transaction: type = {}, hash = {}", tx.getType(), Hex.encode(tx.getHash()));
-                return;
+        // [1] execute all transactions, unless done on the same parent during validation
+        ValidatedState v = validated;
+        validated = null;
+        if (v != null && v.isFor(block, chain.getLatestBlock())) {
+            as = v.accountState;
+            ds = v.delegateState;
+        } else {
+            as = chain.getAccountState().track();
+            ds = chain.getDeleteState().track();
+
+            TransactionExecutor exec = new TransactionExecutor();
+            List<TransactionResult> results = exec.executeParallel(block.getTransactions(), as, ds);
+            for (int i = 0; i < results.size(); i++) {
+                if (!results.get(i).isValid()) {
+                    Transaction tx = block.getTransactions().get(i);
+                    logger.debug("Invalid transaction: type = {}, hash = {}", tx.getType(),
+                            Hex.encode(tx.getHash()));
+                    return;
+                }
             }
         }
 
@@ -809,11 +887,7 @@ public class SemuxBFT implements Consensus {
         WriteLock lock = Config.STATE_LOCK.writeLock();
         lock.lock();
         try {
-            // [4] flush state to disk
-            chain.getAccountState().commit();
-            chain.getDeleteState().commit();
-
-            // [5] add block to chain
+            // [4] flush state and add block to chain
             chain.addBlock(block);
         } finally {
             lock.unlock();
@@ -824,6 +898,32 @@ public class SemuxBFT implements Consensus {
         NEW_HEIGHT, PROPOSE, VALIDATE, PRE_COMMIT, COMMIT, FINALIZE
     }
 
+    /**
+     * The tracked states of a validated block, keyed by the block hash and the
+     * parent block it was executed on.
+     */
+    private static class ValidatedState {
+        private final byte[] blockHash;
+        private final byte[] parentHash;
+        private final AccountState accountState;
+        private final DelegateState delegateState;
+
+        ValidatedState(byte[] blockHash, byte[] parentHash, AccountState accountState, DelegateState delegateState) {
+            this.blockHash = blockHash;
+            this.parentHash = parentHash;
+            this.accountState = accountState;
+            this.delegateState = delegateState;
+        }
+
+        /**
+         * Returns whether the states can be committed for the given block on top of
+         * the given parent.
+         */
+        boolean isFor(Block block, Block parent) {
+            return Arrays.equals(blockHash, block.getHash()) && Arrays.equals(parentHash, parent.getHash());
+        }
+    }
+
     public class Timer implements Runnable {
         private long timeout;
 
@@ -9,14 +9,16 @@ package org.semux.consensus;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
@@ -32,12 +34,15 @@ import org.semux.core.Sync;
 import org.semux.core.Transaction;
 import org.semux.core.TransactionExecutor;
 import org.semux.core.TransactionResult;
+import org.semux.core.ValidationPool;
+import org.semux.core.ValidatorSet;
 import org.semux.core.state.AccountState;
 import org.semux.core.state.DelegateState;
-import org.semux.crypto.EdDSA;
+import org.semux.crypto.BatchVerifier;
 import org.semux.crypto.EdDSA.Signature;
 import org.semux.crypto.Hash;
 import org.semux.crypto.Hex;
+import org.semux.crypto.SignatureCache;
 import org.semux.net.Channel;
 import org.semux.net.ChannelManager;
 import org.semux.net.msg.Message;
@@ -67,13 +72,26 @@ public class SemuxSync implements Sync {
 
     private static final int MAX_PENDING_BLOCKS = 512;
 
+    /**
+     * Number of blocks ahead of the head whose stateless checks are started.
+     */
+    private static final int PRECHECK_AHEAD = 16;
+
     private Blockchain chain;
     private ChannelManager channelMgr;
+    private ValidationPool validationPool;
 
     private ScheduledExecutorService exec;
     private ScheduledFuture<?> download;
     private ScheduledFuture<?> process;
 
+    // import pipeline: blocks are checked ahead, executed in order, and flushed in
+    // the background
+    private Map<Block, Future<Boolean>> prechecks = new IdentityHashMap<>();
+    private ExecutorService flushExec;
+    private Future<?> flushing;
+    private Block lastExecuted;
+
     // task queues
     private TreeSet<Long> toDownload = new TreeSet<>();
     private Map<Long, Long> toComplete = new HashMap<>();
@@ -103,9 +121,10 @@ public class SemuxSync implements Sync {
     }
 
     @Override
-    public void init(Blockchain chain, ChannelManager channelMgr) {
+    public void init(Blockchain chain, ChannelManager channelMgr, ValidationPool validationPool) {
         this.chain = chain;
         this.channelMgr = channelMgr;
+        this.validationPool = validationPool;
     }
 
     @Override
@@ -128,6 +147,7 @@ public class SemuxSync implements Sync {
 
             // [2] start tasks
             exec = Executors.newSingleThreadScheduledExecutor(factory);
+            flushExec = Executors.newSingleThreadExecutor(factory);
             download = exec.scheduleAtFixedRate(() -> {
                 download();
             }, 0, 50, TimeUnit.MILLISECONDS);
@@ -148,10 +168,17 @@ public class SemuxSync implements Sync {
             download.cancel(true);
             process.cancel(false);
 
-            // [5] shutdown executor
+            // [5] shutdown executor, after the last block is flushed
             exec.shutdown();
+            flushExec.shutdown();
             try {
                 exec.awaitTermination(1, TimeUnit.MINUTES);
+                flushExec.awaitTermination(1, TimeUnit.MINUTES);
+                flushing = null;
+                lastExecuted = null;
+                synchronized (lock) {
+                    prechecks.clear();
+                }
                 logger.info("Sync manager stopped");
 
             } catch (InterruptedException e) {
@@ -253,8 +280,14 @@ public class SemuxSync implements Sync {
     }
 
     private void process() {
-        long latest = chain.getLatestBlockNumber();
-        if (latest + 1 == target) {
+        if (!isRunning()) {
+            return;
+        }
+
+        // the head of the pipeline, which may still be being flushed
+        Block latest = (lastExecuted != null) ? lastExecuted : chain.getLatestBlock();
+        if (latest.getNumber() + 1 == target) {
+            waitForFlush();
             stop();
             return; // This is important because stop() only notify
         }
@@ -265,14 +298,15 @@ public class SemuxSync implements Sync {
             while (iter.hasNext()) {
                 Block b = iter.next();
 
-                if (b.getNumber() <= latest) {
+                if (b.getNumber() <= latest.getNumber()) {
                     iter.remove();
-                } else if (b.getNumber() == latest + 1) {
+                    prechecks.remove(b);
+                } else if (b.getNumber() == latest.getNumber() + 1) {
                     iter.remove();
                     block = b;
-                    break;
+                } else if (b.getNumber() <= latest.getNumber() + PRECHECK_AHEAD) {
+                    precheck(b);
                 } else {
-                    toProcess.add(b);
                     break;
                 }
             }
@@ -281,12 +315,12 @@ public class SemuxSync implements Sync {
         if (block != null) {
             logger.info("{}", block);
 
-            if (validateApplyBlock(block)) {
+            if (validateApplyBlock(latest, block)) {
                 synchronized (lock) {
                     toDownload.remove(block.getNumber());
                     toComplete.remove(block.getNumber());
                 }
-            } else {
+            } else if (isRunning()) {
                 logger.info("Invalid block");
                 synchronized (lock) {
                     toDownload.add(block.getNumber());
@@ -304,53 +338,117 @@ public class SemuxSync implements Sync {
     }
 
     /**
-     * Check if a block is valid, and apply to the chain if yes.
+     * Starts the stateless checks of a block on the validation pool, if not yet
+     * started. Must be called with the lock held.
+     * 
+     * @param block
+     * @return
+     */
+    private Future<Boolean> precheck(Block block) {
+        Future<Boolean> f = prechecks.get(block);
+        if (f == null) {
+            f = validationPool.submit(() -> validateBlockAndVotes(block));
+            prechecks.put(block, f);
+        }
+        return f;
+    }
+
+    /**
+     * Checks the block format and signatures, along with the vote signatures. The
+     * verified signatures are cached, so they're not checked again when the block
+     * is applied.
      * 
      * @param block
      * @return
      */
-    private boolean validateApplyBlock(Block block) {
+    private boolean validateBlockAndVotes(Block block) {
+        if (!block.validate(validationPool)) {
+            logger.debug("Invalid block/transaction format");
+            return false;
+        }
+
+        Vote vote = new Vote(VoteType.PRECOMMIT, Vote.VALUE_APPROVE, block.getNumber(), block.getView(),
+                block.getHash());
+        byte[] encoded = vote.getEncoded();
+        BatchVerifier verifier = new BatchVerifier(SignatureCache.getInstance());
+        for (Signature sig : block.getVotes()) {
+            verifier.add(encoded, sig);
+        }
+        if (!verifier.verify()) {
+            logger.debug("Invalid BFT vote signature");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if a block is valid, and apply to the chain if yes. The block is
+     * executed while its parent may still be being flushed, and is flushed in the
+     * background.
+     * 
+     * @param latest
+     *            the last block executed
+     * @param block
+     * @return
+     */
+    private boolean validateApplyBlock(Block latest, Block block) {
         try {
-            // [1] check block integrity and signature
-            if (!block.validate()) {
-                logger.debug("Invalid block/transaction format");
+            long t1 = System.nanoTime();
+
+            // [1] check block integrity and signature, done ahead
+            Future<Boolean> f;
+            synchronized (lock) {
+                f = precheck(block);
+                prechecks.remove(block);
+            }
+            if (!f.get()) {
                 return false;
             }
 
+            long t2 = System.nanoTime();
+
             // [2] check number and prevHash
-            Block latest = chain.getLatestBlock();
             if (block.getNumber() != latest.getNumber() + 1 || !Arrays.equals(block.getPrevHash(), latest.getHash())) {
                 logger.debug("Invalid block number or prevHash");
                 return false;
             }
 
-            AccountState as = chain.getAccountState().track();
-            DelegateState ds = chain.getDeleteState().track();
-
-            // [3] check votes
-            List<String> validators = chain.getValidators();
+            // [3] check votes; the validator set is updated by the last block of a term
+            if (latest.getNumber() % Config.VALIDATOR_TERM == 0) {
+                waitForFlush();
+            }
+            ValidatorSet validators = chain.getValidatorSet();
             int twoThirds = (int) Math.ceil(validators.size() * 2.0 / 3.0);
             if (block.getVotes().size() < twoThirds) {
                 logger.debug("Invalid BFT votes: {} < {}", block.getVotes().size(), twoThirds);
                 return false;
             }
 
-            Set<String> set = new HashSet<>(validators);
             Vote vote = new Vote(VoteType.PRECOMMIT, Vote.VALUE_APPROVE, block.getNumber(), block.getView(),
                     block.getHash());
             byte[] encoded = vote.getEncoded();
+            BatchVerifier verifier = new BatchVerifier(SignatureCache.getInstance());
             for (Signature sig : block.getVotes()) {
-                String addr = Hex.encode(Hash.h160(sig.getPublicKey()));
+                byte[] addr = Hash.h160(sig.getPublicKey());
 
-                if (!set.contains(addr) || !EdDSA.verify(encoded, sig)) {
-                    logger.debug("Invalid BFT vote: signer = {}", addr);
+                if (!validators.contains(addr)) {
+                    logger.debug("Invalid BFT vote: signer = {}", Hex.encode(addr));
                     return false;
                 }
+                verifier.add(encoded, sig);
+            }
+            if (!verifier.verify()) {
+                logger.debug("Invalid BFT vote signature");
+                return false;
             }
 
             // [4] check transactions
+            AccountState as = chain.getAccountState().track();
+            DelegateState ds = chain.getDeleteState().track();
+
             TransactionExecutor exec = new TransactionExecutor();
-            List<TransactionResult> results = exec.execute(block.getTransactions(), as, ds);
+            List<TransactionResult> results = exec.executeParallel(block.getTransactions(), as, ds);
             for (int i = 0; i < results.size(); i++) {
                 if (!results.get(i).isValid()) {
                     Transaction tx = block.getTransactions().get(i);
@@ -369,22 +467,40 @@ public class SemuxSync implements Sync {
                 acc.setBalance(acc.getBalance() + reward);
             }
 
-            // [6] commit the updates
-            as.commit();
-            ds.commit();
+            long t3 = System.nanoTime();
 
-            WriteLock lock = Config.STATE_LOCK.writeLock();
-            lock.lock();
+            // [6] commit the updates, once the parent is flushed and the listeners
+            // of the chain have seen its state
+            if (!waitForFlush()) {
+                return false;
+            }
+            WriteLock stateLock = Config.STATE_LOCK.writeLock();
+            stateLock.lock();
             try {
-                // [7] flush state to disk
-                chain.getAccountState().commit();
-                chain.getDeleteState().commit();
-
-                // [8] add block to chain
-                chain.addBlock(block);
+                as.commit();
+                ds.commit();
             } finally {
-                lock.unlock();
+                stateLock.unlock();
             }
+
+            long t4 = System.nanoTime();
+
+            // [7] flush state and add block to chain, in the background
+            lastExecuted = block;
+            flushing = flushExec.submit(() -> {
+                long t5 = System.nanoTime();
+                WriteLock lock = Config.STATE_LOCK.writeLock();
+                lock.lock();
+                try {
+                    chain.addBlock(block);
+                } finally {
+                    lock.unlock();
+                }
+                logger.debug("Block #{} flushed: {} ms", block.getNumber(), (System.nanoTime() - t5) / 1_000_000);
+            });
+
+            logger.debug("Block #{} imported: precheck wait = {} ms, execute = {} ms, flush wait = {} ms",
+                    block.getNumber(), (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000, (t4 - t3) / 1_000_000);
         } catch (Exception e) {
             logger.info("Exception in block validation", e);
             return false;
@@ -392,4 +508,33 @@ public class SemuxSync implements Sync {
 
         return true;
     }
+
+    /**
+     * Waits until the last executed block is added to the chain.
+     * 
+     * @return true if the block was added, otherwise false
+     */
+    private boolean waitForFlush() {
+        if (flushing == null) {
+            return true;
+        }
+
+        try {
+            flushing.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // the state of the block is already in memory, so the import can't go on
+            logger.error("Failed to add block #{}, stopping sync", lastExecuted.getNumber(), e.getCause());
+            stop();
+            return false;
+        } finally {
+            if (flushing.isDone()) {
+                flushing = null;
+                lastExecuted = null;
+            }
+        }
+    }
 }
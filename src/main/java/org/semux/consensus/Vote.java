@@ -9,8 +9,9 @@ package org.semux.consensus;
 import org.semux.crypto.EdDSA;
 import org.semux.crypto.EdDSA.Signature;
 import org.semux.crypto.Hash;
+import org.semux.crypto.SignatureCache;
+import org.semux.utils.BufferEncoder;
 import org.semux.utils.SimpleDecoder;
-import org.semux.utils.SimpleEncoder;
 
 public class Vote {
     public static final boolean VALUE_APPROVE = true;
@@ -33,7 +34,8 @@ public class Vote {
         this.view = view;
         this.blockHash = blockHash;
 
-        SimpleEncoder enc = new SimpleEncoder();
+        BufferEncoder enc = new BufferEncoder(BufferEncoder.SIZE_BYTE + BufferEncoder.SIZE_BOOLEAN
+                + BufferEncoder.SIZE_LONG + BufferEncoder.SIZE_INT + BufferEncoder.sizeOf(blockHash));
         enc.writeByte(type.toByte());
         enc.writeBoolean(value);
         enc.writeLong(height);
@@ -86,7 +88,7 @@ public class Vote {
                 && view >= 0 //
                 && blockHash != null && blockHash.length == 32 //
                 && encoded != null //
-                && signature != null && EdDSA.verify(encoded, signature);
+                && signature != null && SignatureCache.getInstance().verify(encoded, signature);
     }
 
     public VoteType getType() {
@@ -118,9 +120,11 @@ public class Vote {
     }
 
     public byte[] toBytes() {
-        SimpleEncoder enc = new SimpleEncoder();
+        byte[] sig = signature.toBytes();
+
+        BufferEncoder enc = new BufferEncoder(BufferEncoder.sizeOf(encoded) + BufferEncoder.sizeOf(sig));
         enc.writeBytes(encoded);
-        enc.writeBytes(signature.toBytes());
+        enc.writeBytes(sig);
 
         return enc.toBytes();
     }
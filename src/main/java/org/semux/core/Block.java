@@ -6,23 +6,21 @@
  */
 package org.semux.core;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.commons.lang3.tuple.Pair;
+import org.semux.crypto.BatchVerifier;
 import org.semux.crypto.EdDSA.Signature;
 import org.semux.crypto.Hash;
 import org.semux.crypto.Hex;
+import org.semux.crypto.SignatureCache;
+import org.semux.utils.BufferEncoder;
 import org.semux.utils.MerkleUtil;
 import org.semux.utils.SimpleDecoder;
-import org.semux.utils.SimpleEncoder;
 
 /**
  * Represents a block in the blockchain.
@@ -30,15 +28,6 @@ import org.semux.utils.SimpleEncoder;
  */
 public class Block implements Comparable<Block> {
 
-    private static final ThreadFactory factory = new ThreadFactory() {
-        AtomicInteger cnt = new AtomicInteger(0);
-
-        @Override
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "block-validator-" + cnt.getAndIncrement());
-        }
-    };
-
     /**
      * The block header.
      */
@@ -64,14 +53,27 @@ public class Block implements Comparable<Block> {
     // Auxiliary data
     // =========================
     /**
-     * Encoding of header and transactions.
+     * Encoding of header and transactions, or null if not yet copied out of the
+     * original encoding.
      */
     protected byte[] encodedWithoutBFT;
 
     /**
-     * Transaction indexes
+     * The original encoding, which is returned by {@link #toBytes()} as long as
+     * the BFT view and votes are unchanged; null if the block was not decoded.
+     */
+    private byte[] encoded;
+
+    /**
+     * Length of the original encoding without the BFT view and votes.
      */
-    protected List<Pair<Integer, Integer>> indexes = new ArrayList<>();
+    private int encodedWithoutBFTLength;
+
+    /**
+     * Transaction indexes, i.e. the offsets of the encoded transactions
+     */
+    protected int[] txStarts;
+    protected int[] txEnds;
 
     /**
      * Indicate whether this is the Genesis block
@@ -116,74 +118,141 @@ public class Block implements Comparable<Block> {
         this.view = view;
         this.votes = votes;
 
-        SimpleEncoder enc = new SimpleEncoder();
-        enc.writeBytes(header.toBytes());
-        enc.writeInt(transactions.size());
-        for (Transaction t : transactions) {
-            int idx = enc.getWriteIndex() + 4 /* length code */;
-            byte[] bytes = t.toBytes();
-            enc.writeBytes(bytes);
-            indexes.add(Pair.of(idx, idx + bytes.length));
+        this.txStarts = new int[transactions.size()];
+        this.txEnds = new int[transactions.size()];
+
+        byte[] h = header.toBytes();
+        byte[][] txs = new byte[transactions.size()][];
+        byte[][] res = new byte[results.size()][];
+        int size = BufferEncoder.sizeOf(h) + 2 * BufferEncoder.SIZE_INT;
+        for (int i = 0; i < txs.length; i++) {
+            txs[i] = transactions.get(i).toBytes();
+            size += BufferEncoder.sizeOf(txs[i]);
+        }
+        for (int i = 0; i < res.length; i++) {
+            res[i] = results.get(i).toBytes();
+            size += BufferEncoder.sizeOf(res[i]);
         }
-        enc.writeInt(results.size());
-        for (TransactionResult r : results) {
-            enc.writeBytes(r.toBytes());
+
+        BufferEncoder enc = new BufferEncoder(size);
+        enc.writeBytes(h);
+        enc.writeInt(txs.length);
+        for (int i = 0; i < txs.length; i++) {
+            int idx = enc.getWriteIndex() + BufferEncoder.SIZE_INT /* length code */;
+            enc.writeBytes(txs[i]);
+            txStarts[i] = idx;
+            txEnds[i] = idx + txs[i].length;
+        }
+        enc.writeInt(res.length);
+        for (byte[] r : res) {
+            enc.writeBytes(r);
         }
         this.encodedWithoutBFT = enc.toBytes();
     }
 
+    /**
+     * Create a read-only view of an encoded block. The transactions, results and
+     * votes are decoded on first access.
+     * 
+     * @param header
+     * @param encoded
+     * @param txs
+     *            offsets of the encoded transactions, as [starts, ends]
+     * @param results
+     *            offsets of the encoded results
+     * @param encodedWithoutBFTLength
+     * @param view
+     * @param votes
+     *            offsets of the encoded votes
+     */
+    private Block(BlockHeader header, byte[] encoded, int[][] txs, int[][] results, int encodedWithoutBFTLength,
+            int view, int[][] votes) {
+        this.header = header;
+
+        this.transactions = new LazyList<>(encoded, txs, Transaction::fromBytes);
+        this.results = new LazyList<>(encoded, results, TransactionResult::fromBytes);
+
+        this.view = view;
+        this.votes = new LazyList<>(encoded, votes,
+                (in, from, to) -> Signature.fromBytes(Arrays.copyOfRange(in, from, to)));
+
+        this.encoded = encoded;
+        this.encodedWithoutBFTLength = encodedWithoutBFTLength;
+        this.txStarts = txs[0];
+        this.txEnds = txs[1];
+    }
+
     /**
      * Validate block format and signature, and also validate the contained
-     * transactions by calling {@link Transaction#validate()}.
+     * transactions, whose signatures are verified in batches.
      *
-     * @param nThreads
+     * @param pool
+     *            the pool to validate transactions with, or null to validate them
+     *            in the calling thread
      * @return true if valid, otherwise false
      */
-    public boolean validate(int nThreads) {
-        if (header != null && header.validate()) {
-            // validate transactions
-            ExecutorService exec = Executors.newFixedThreadPool(nThreads, factory);
-            try {
-                List<Future<Boolean>> list = exec.invokeAll(transactions);
-                for (Future<Boolean> f : list) {
-                    if (!f.get()) {
-                        return false;
-                    }
-                }
-            } catch (InterruptedException | ExecutionException e) {
-                return false;
-            } finally {
-                exec.shutdownNow();
-            }
+    public boolean validate(ValidationPool pool) {
+        try {
+            return header != null && header.validate() && validateBody(pool);
+        } catch (RuntimeException e) {
+            // a lazily decoded transaction or result may be malformed
+            return false;
+        }
+    }
 
-            // validate transactions root
-            byte[] transactionsRoot = MerkleUtil.computeTransactionsRoot(transactions);
-            if (!Arrays.equals(transactionsRoot, header.getTransactionsRoot())) {
-                return false;
-            }
+    private boolean validateBody(ValidationPool pool) {
+        // validate transactions
+        boolean cofactored = BatchVerifier.isCofactored(header.getNumber());
+        if (!(pool == null ? validateTransactions(transactions, cofactored)
+                : pool.validate(transactions, cofactored))) {
+            return false;
+        }
 
-            // validate results root
-            byte[] resultsRoot = MerkleUtil.computeResultsRoot(results);
-            if (!Arrays.equals(resultsRoot, header.getResultsRoot())) {
-                return false;
-            }
+        // validate transactions root
+        byte[] transactionsRoot = MerkleUtil.computeTransactionsRoot(transactions);
+        if (!Arrays.equals(transactionsRoot, header.getTransactionsRoot())) {
+            return false;
+        }
 
-            // validate state root
-            return Arrays.equals(Hash.EMPTY_H256, header.getStateRoot());
+        // validate results root
+        byte[] resultsRoot = MerkleUtil.computeResultsRoot(results);
+        if (!Arrays.equals(resultsRoot, header.getResultsRoot())) {
+            return false;
         }
 
-        return false;
+        // validate state root
+        return Arrays.equals(Hash.EMPTY_H256, header.getStateRoot());
     }
 
     /**
-     * Validate block format and signature, along with transaction validation, using
-     * half the available CPU cores.
+     * Validate block format and signature, along with transaction validation, in
+     * the calling thread.
      * 
      * @return
      */
     public boolean validate() {
-        int cores = Runtime.getRuntime().availableProcessors();
-        return validate(cores > 2 ? cores / 2 : 1);
+        return validate(null);
+    }
+
+    /**
+     * Validate the format of the given transactions, and verify their signatures
+     * in a batch if the rule allows.
+     * 
+     * @param txs
+     * @param cofactored
+     *            whether the signatures are verified with the cofactored equation
+     * @return true if all valid, otherwise false
+     */
+    protected static boolean validateTransactions(List<Transaction> txs, boolean cofactored) {
+        BatchVerifier verifier = new BatchVerifier(SignatureCache.getInstance(), cofactored);
+        for (Transaction tx : txs) {
+            if (!tx.validateFormat()) {
+                return false;
+            }
+            verifier.add(tx.getHash(), tx.getSignature());
+        }
+
+        return verifier.verify();
     }
 
     /**
@@ -228,6 +297,7 @@ public class Block implements Comparable<Block> {
      * @param view
      */
     public void setView(int view) {
+        detach();
         this.view = view;
     }
 
@@ -246,6 +316,7 @@ public class Block implements Comparable<Block> {
      * @param votes
      */
     public void setVotes(List<Signature> votes) {
+        detach();
         this.votes = votes;
     }
 
@@ -255,7 +326,20 @@ public class Block implements Comparable<Block> {
      * @return
      */
     public List<Pair<Integer, Integer>> getTransacitonIndexes() {
-        return new ArrayList<>(indexes);
+        List<Pair<Integer, Integer>> list = new ArrayList<>(txStarts.length);
+        for (int i = 0; i < txStarts.length; i++) {
+            list.add(Pair.of(txStarts[i], txEnds[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Get the number of transactions, without decoding them.
+     * 
+     * @return
+     */
+    public int getTransactionCount() {
+        return transactions.size();
     }
 
     /**
@@ -307,41 +391,97 @@ public class Block implements Comparable<Block> {
         return header.getSignature();
     }
 
+    /**
+     * Returns the encoding of this block. For a decoded block, this is the array
+     * it was decoded from, which its transactions, results and votes are still
+     * read from, so it must be treated as read-only; callers which need to modify
+     * it have to copy it first. All the current callers only write it out, to the
+     * block store or a message encoder, which make their own copies.
+     * 
+     * @return
+     */
     public byte[] toBytes() {
-        SimpleEncoder enc = new SimpleEncoder(encodedWithoutBFT);
+        if (encoded != null) {
+            return encoded;
+        }
+
+        byte[][] sigs = new byte[votes.size()][];
+        int size = encodedWithoutBFT.length + 2 * BufferEncoder.SIZE_INT;
+        for (int i = 0; i < sigs.length; i++) {
+            sigs[i] = votes.get(i).toBytes();
+            size += BufferEncoder.sizeOf(sigs[i]);
+        }
+
+        BufferEncoder enc = new BufferEncoder(size);
+        enc.writeRaw(encodedWithoutBFT);
         enc.writeInt(view);
-        enc.writeInt(votes.size());
-        for (Signature vote : votes) {
-            enc.writeBytes(vote.toBytes());
+        enc.writeInt(sigs.length);
+        for (byte[] sig : sigs) {
+            enc.writeBytes(sig);
         }
 
         return enc.toBytes();
     }
 
+    /**
+     * Parse a block from its encoding, without copying or decoding the
+     * transactions, results and votes. The array is kept by the block, and must
+     * not be modified afterwards.
+     * 
+     * @param bytes
+     * @return
+     */
     public static Block fromBytes(byte[] bytes) {
         SimpleDecoder dec = new SimpleDecoder(bytes);
         BlockHeader header = BlockHeader.fromBytes(dec.readBytes());
 
-        List<Transaction> transactions = new ArrayList<>();
-        int n = dec.readInt();
-        for (int i = 0; i < n; i++) {
-            transactions.add(Transaction.fromBytes(dec.readBytes()));
+        int[][] transactions = scan(dec);
+        int[][] results = scan(dec);
+        int encodedWithoutBFTLength = dec.getReadIndex();
+
+        int view = dec.readInt();
+        int[][] votes = scan(dec);
+
+        Block block = new Block(header, bytes, transactions, results, encodedWithoutBFTLength, view, votes);
+        if (dec.getReadIndex() != bytes.length) {
+            // not the canonical encoding, so don't hand it out
+            block.detach();
         }
+        return block;
+    }
 
-        List<TransactionResult> results = new ArrayList<>();
-        n = dec.readInt();
-        for (int i = 0; i < n; i++) {
-            results.add(TransactionResult.fromBytes(dec.readBytes()));
+    /**
+     * Reads the offsets of a list of length-prefixed items.
+     * 
+     * @param dec
+     * @return [starts, ends]
+     */
+    private static int[][] scan(SimpleDecoder dec) {
+        int n = dec.readInt();
+        if (n < 0) {
+            throw new IndexOutOfBoundsException("Negative number of items: " + n);
         }
 
-        int view = dec.readInt();
-        List<Signature> votes = new ArrayList<>();
-        n = dec.readInt();
+        int[] starts = new int[n];
+        int[] ends = new int[n];
         for (int i = 0; i < n; i++) {
-            votes.add(Signature.fromBytes(dec.readBytes()));
+            int len = dec.readInt();
+            starts[i] = dec.getReadIndex();
+            dec.skip(len);
+            ends[i] = dec.getReadIndex();
         }
+        return new int[][] { starts, ends };
+    }
 
-        return new Block(header, transactions, results, view, votes);
+    /**
+     * Stops handing out the original encoding, before the BFT view or votes
+     * change.
+     */
+    private void detach() {
+        if (encoded != null) {
+            encodedWithoutBFT = Arrays.copyOf(encoded, encodedWithoutBFTLength);
+            encoded = null;
+        }
     }
 
     @Override
@@ -354,4 +494,50 @@ public class Block implements Comparable<Block> {
         return "Block [number = " + getNumber() + ", view = " + getView() + ", hash = " + Hex.encode(getHash())
                 + ", # txs = " + transactions.size() + ", # votes = " + votes.size() + "]";
     }
+
+    /**
+     * Decodes an item from a range of a byte array.
+     */
+    private interface Decoder<T> {
+        T decode(byte[] in, int from, int to);
+    }
+
+    /**
+     * An immutable list over encoded items, which are decoded on first access and
+     * then kept. Blocks are shared across threads, so the decoded items are
+     * published through an atomic array; concurrent first accesses may decode an
+     * item twice, but all callers get the instance published first.
+     */
+    private static class LazyList<T> extends AbstractList<T> {
+        private final byte[] in;
+        private final int[] starts;
+        private final int[] ends;
+        private final Decoder<T> decoder;
+        private final AtomicReferenceArray<T> items;
+
+        LazyList(byte[] in, int[][] offsets, Decoder<T> decoder) {
+            this.in = in;
+            this.starts = offsets[0];
+            this.ends = offsets[1];
+            this.decoder = decoder;
+            this.items = new AtomicReferenceArray<>(starts.length);
+        }
+
+        @Override
+        public T get(int index) {
+            T item = items.get(index);
+            if (item == null) {
+                item = decoder.decode(in, starts[index], ends[index]);
+                if (!items.compareAndSet(index, null, item)) {
+                    item = items.get(index);
+                }
+            }
+            return item;
+        }
+
+        @Override
+        public int size() {
+            return starts.length;
+        }
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.semux.utils.ByteArray;
+
+/**
+ * LRU cache of decoded blocks and block headers, indexed by both number and
+ * hash. Each section is bounded by the total encoded size of its entries,
+ * rather than the number of entries, since block sizes vary a lot.
+ *
+ * This class is thread-safe.
+ */
+public class BlockCache {
+
+    private final Section<Block> blocks;
+    private final Section<BlockHeader> headers;
+
+    /**
+     * Create a block cache.
+     *
+     * @param blocksCapacity
+     *            max total size of cached blocks, in bytes
+     * @param headersCapacity
+     *            max total size of cached headers, in bytes
+     */
+    public BlockCache(long blocksCapacity, long headersCapacity) {
+        this.blocks = new Section<>(blocksCapacity);
+        this.headers = new Section<>(headersCapacity);
+    }
+
+    /**
+     * Get a block by number.
+     *
+     * @param number
+     * @return the cached block, or null if absent
+     */
+    public synchronized Block getBlock(long number) {
+        return blocks.record(blocks.get(number));
+    }
+
+    /**
+     * Get a block by hash.
+     *
+     * @param hash
+     * @return the cached block, or null if absent
+     */
+    public synchronized Block getBlock(byte[] hash) {
+        return blocks.record(blocks.get(ByteArray.of(hash)));
+    }
+
+    /**
+     * Get a block header by number. The header of a cached block is also
+     * returned.
+     *
+     * @param number
+     * @return the cached header, or null if absent
+     */
+    public synchronized BlockHeader getBlockHeader(long number) {
+        BlockHeader header = headers.get(number);
+        if (header == null) {
+            Block block = blocks.get(number);
+            header = (block == null) ? null : block.getHeader();
+        }
+        return headers.record(header);
+    }
+
+    /**
+     * Get a block header by hash. The header of a cached block is also returned.
+     *
+     * @param hash
+     * @return the cached header, or null if absent
+     */
+    public synchronized BlockHeader getBlockHeader(byte[] hash) {
+        ByteArray key = ByteArray.of(hash);
+        BlockHeader header = headers.get(key);
+        if (header == null) {
+            Block block = blocks.get(key);
+            header = (block == null) ? null : block.getHeader();
+        }
+        return headers.record(header);
+    }
+
+    /**
+     * Add a block, along with its header, into the cache.
+     *
+     * @param block
+     * @param size
+     *            the encoded size of the block
+     */
+    public synchronized void putBlock(Block block, int size) {
+        blocks.put(ByteArray.of(block.getHash()), block.getNumber(), block, size);
+    }
+
+    /**
+     * Add a block header into the cache.
+     *
+     * @param header
+     * @param size
+     *            the encoded size of the header
+     */
+    public synchronized void putBlockHeader(BlockHeader header, int size) {
+        headers.put(ByteArray.of(header.getHash()), header.getNumber(), header, size);
+    }
+
+    /**
+     * Returns the number of block lookups served from the cache.
+     *
+     * @return
+     */
+    public synchronized long getBlockHits() {
+        return blocks.hitCount;
+    }
+
+    /**
+     * Returns the number of block lookups not served from the cache.
+     *
+     * @return
+     */
+    public synchronized long getBlockMisses() {
+        return blocks.missCount;
+    }
+
+    /**
+     * Returns the number of header lookups served from the cache.
+     *
+     * @return
+     */
+    public synchronized long getHeaderHits() {
+        return headers.hitCount;
+    }
+
+    /**
+     * Returns the number of header lookups not served from the cache.
+     *
+     * @return
+     */
+    public synchronized long getHeaderMisses() {
+        return headers.missCount;
+    }
+
+    /**
+     * Returns the total encoded size of the cached blocks.
+     *
+     * @return
+     */
+    public synchronized long getBlocksSize() {
+        return blocks.size;
+    }
+
+    /**
+     * Returns the total encoded size of the cached headers.
+     *
+     * @return
+     */
+    public synchronized long getHeadersSize() {
+        return headers.size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BlockCache [blocks = " + blocks + ", headers = " + headers + "]";
+    }
+
+    /**
+     * A size-bounded LRU map, with a secondary number index.
+     */
+    private static class Section<T> {
+        private final long capacity;
+
+        private final LinkedHashMap<ByteArray, Item<T>> items = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<Long, ByteArray> numbers = new HashMap<>();
+        private long size;
+
+        private long hitCount;
+        private long missCount;
+
+        Section(long capacity) {
+            this.capacity = capacity;
+        }
+
+        T get(long number) {
+            ByteArray hash = numbers.get(number);
+            return (hash == null) ? null : get(hash);
+        }
+
+        T get(ByteArray hash) {
+            Item<T> item = items.get(hash);
+            return (item == null) ? null : item.value;
+        }
+
+        T record(T value) {
+            if (value == null) {
+                missCount++;
+            } else {
+                hitCount++;
+            }
+            return value;
+        }
+
+        void put(ByteArray hash, long number, T value, int bytes) {
+            if (bytes > capacity) {
+                return;
+            }
+
+            Item<T> old = items.put(hash, new Item<>(number, value, bytes));
+            if (old != null) {
+                size -= old.size;
+            }
+            numbers.put(number, hash);
+            size += bytes;
+
+            Iterator<Map.Entry<ByteArray, Item<T>>> itr = items.entrySet().iterator();
+            while (size > capacity && itr.hasNext()) {
+                Map.Entry<ByteArray, Item<T>> eldest = itr.next();
+                Item<T> item = eldest.getValue();
+
+                itr.remove();
+                size -= item.size;
+                if (eldest.getKey().equals(numbers.get(item.number))) {
+                    numbers.remove(item.number);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "[# items = " + items.size() + ", size = " + size + ", hits = " + hitCount + ", misses = "
+                    + missCount + "]";
+        }
+    }
+
+    private static class Item<T> {
+        private final long number;
+        private final T value;
+        private final int size;
+
+        Item(long number, T value, int size) {
+            this.number = number;
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
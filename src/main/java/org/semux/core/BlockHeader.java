@@ -12,6 +12,7 @@ import org.semux.crypto.EdDSA;
 import org.semux.crypto.EdDSA.Signature;
 import org.semux.crypto.Hash;
 import org.semux.crypto.Hex;
+import org.semux.crypto.SignatureCache;
 import org.semux.utils.Bytes;
 import org.semux.utils.SimpleDecoder;
 import org.semux.utils.SimpleEncoder;
@@ -128,7 +129,7 @@ public class BlockHeader {
                 && encoded != null //
                 && (number == 0 || signature != null) //
                 && Arrays.equals(Hash.h256(encoded), hash) //
-                && (number == 0 || EdDSA.verify(hash, signature));
+                && (number == 0 || SignatureCache.getInstance().verify(hash, signature));
     }
 
     public byte[] getHash() {
@@ -120,7 +120,8 @@ public interface Blockchain {
     public List<Transaction> getTransactions(byte[] address, int from, int to);
 
     /**
-     * Add a block to the chain.
+     * Add a block to the chain. Pending updates of the account state and delegate
+     * state are flushed along with the block.
      * 
      * @param block
      */
@@ -147,6 +148,13 @@ public interface Blockchain {
      */
     public List<String> getValidators();
 
+    /**
+     * Get the validator set based on current state.
+     * 
+     * @return the validator set
+     */
+    public ValidatorSet getValidatorSet();
+
     /**
      * Returns the number of blocks forged by the given delegate
      * 
@@ -6,9 +6,15 @@
  */
 package org.semux.core;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.lang3.tuple.Pair;
@@ -19,11 +25,14 @@ import org.semux.core.state.DelegateState;
 import org.semux.core.state.DelegateStateImpl;
 import org.semux.crypto.EdDSA;
 import org.semux.crypto.Hex;
+import org.semux.db.AppendDB;
 import org.semux.db.DBFactory;
 import org.semux.db.DBName;
 import org.semux.db.KVDB;
+import org.semux.db.StagingDB;
 import org.semux.utils.ByteArray;
 import org.semux.utils.Bytes;
+import org.semux.utils.ClosableIterator;
 import org.semux.utils.SimpleDecoder;
 import org.semux.utils.SimpleEncoder;
 import org.slf4j.Logger;
@@ -36,6 +45,7 @@ import org.slf4j.LoggerFactory;
  * index DB structure:
  * 
  * ["latest_block_hash"] => [block_hash]
+ * ["import_journal"] => [block_number, encode(batches)]
  * ["validators"] => [encode(validator_list)]
  * ["forged", address] => [number_of_blocks_forged]
  * ["hit", address] => [number_of_turns_hit]
@@ -43,15 +53,28 @@ import org.slf4j.LoggerFactory;
  * 
  * [block_number] => [block_hash]
  * [transaciton_hash] => [block_number, from, to]
- * [address, n] => [transaction] OR [transaction_hash]
+ * [address, n] => [block_number, from, to] OR [transaction] OR [transaction_hash]
  * </pre>
  *
  * <pre>
- * block DB structure:
+ * block DB structure (append-only):
+ * 
+ * [block_number] => [block]
+ * </pre>
+ * 
+ * <pre>
+ * legacy block DB structure, for blocks imported before the append-only store
+ * was introduced:
  * 
  * [block_hash] => [block]
  * </pre>
  * 
+ * <pre>
+ * header DB structure:
+ * 
+ * [block_hash] => [block_header]
+ * </pre>
+ * 
  */
 public class BlockchainImpl implements Blockchain {
 
@@ -59,18 +82,43 @@ public class BlockchainImpl implements Blockchain {
 
     private static byte[] KEY_LATEST_BLOCK_HASH = Bytes.of("latest_block_hash");
     private static byte[] KEY_VALIDATORS = Bytes.of("validators");
+    private static byte[] KEY_IMPORT_JOURNAL = Bytes.of("import_journal");
     private static byte[] FORGED = Bytes.of("forged");
     private static byte[] HIT = Bytes.of("hit");
     private static byte[] MISSED = Bytes.of("missed");
 
     private KVDB indexDB;
-    private KVDB blockDB;
+    private AppendDB blockDB;
+    private KVDB legacyBlockDB;
+    private KVDB headerDB;
+    private StagingDB accountDB;
+    private StagingDB delegateDB;
+    private StagingDB voteDB;
+
+    private BlockCache blockCache = new BlockCache(Config.BLOCK_CACHE_SIZE, Config.BLOCK_HEADER_CACHE_SIZE);
+
+    /**
+     * Cache of the per-account transaction counters and validator statistics, by
+     * index key. It only holds values that have been written to the index DB;
+     * counters updated by a block are staged and put back once the block's batch
+     * is written. Only the importing thread fills it.
+     */
+    private Map<ByteArray, byte[]> counterCache = Collections
+            .synchronizedMap(new LinkedHashMap<ByteArray, byte[]>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteArray, byte[]> eldest) {
+                    return size() > Config.COUNTER_CACHE_SIZE;
+                }
+            });
 
     private AccountState accountState;
     private DelegateState delegateState;
 
     private Genesis genesis;
     private Block latestBlock;
+    private volatile ValidatorSet validatorSet;
 
     private List<BlockchainListener> listeners = new ArrayList<>();
 
@@ -81,10 +129,21 @@ public class BlockchainImpl implements Blockchain {
      */
     public BlockchainImpl(DBFactory factory) {
         this.indexDB = factory.getDB(DBName.INDEX);
-        this.blockDB = factory.getDB(DBName.BLOCK);
+        this.blockDB = factory.getAppendDB(DBName.BLOCK);
+        this.legacyBlockDB = factory.getDB(DBName.BLOCK);
+        this.headerDB = factory.getDB(DBName.HEADER);
+        this.accountDB = new StagingDB(factory.getDB(DBName.ACCOUNT));
+        this.delegateDB = new StagingDB(factory.getDB(DBName.DELEGATE));
+        this.voteDB = new StagingDB(factory.getDB(DBName.VOTE));
+
+        // complete the import interrupted by a crash, if any
+        byte[] journal = indexDB.get(KEY_IMPORT_JOURNAL);
+        if (journal != null) {
+            replayJournal(journal);
+        }
 
-        this.accountState = new AccountStateImpl(factory.getDB(DBName.ACCOUNT));
-        this.delegateState = new DelegateStateImpl(this, factory.getDB(DBName.DELEGATE), factory.getDB(DBName.VOTE));
+        this.accountState = new AccountStateImpl(accountDB);
+        this.delegateState = new DelegateStateImpl(this, delegateDB, voteDB);
 
         this.genesis = Genesis.getInstance();
 
@@ -109,6 +168,14 @@ public class BlockchainImpl implements Blockchain {
             latestBlock = genesis;
         } else {
             latestBlock = getBlock(hash);
+            validatorSet = readValidators();
+        }
+
+        // drop the blocks appended after the last complete import
+        long size = latestBlock.getNumber() + 1;
+        if (blockDB.size() > size) {
+            logger.info("Removing incomplete blocks from #{}", size);
+            blockDB.truncate(size);
         }
     }
 
@@ -152,8 +219,18 @@ public class BlockchainImpl implements Blockchain {
             return genesis;
         }
 
-        byte[] bytes = indexDB.get(Bytes.of(number));
-        return bytes == null ? null : getBlock(bytes);
+        Block block = blockCache.getBlock(number);
+        if (block != null) {
+            return block;
+        }
+
+        ByteBuffer buf = blockDB.get(number);
+        if (buf != null) {
+            return readBlock(buf);
+        }
+
+        byte[] hash = indexDB.get(Bytes.of(number));
+        return hash == null ? null : readLegacyBlock(hash);
     }
 
     @Override
@@ -162,8 +239,18 @@ public class BlockchainImpl implements Blockchain {
             return genesis;
         }
 
-        byte[] bytes = blockDB.get(hash);
-        return bytes == null ? null : Block.fromBytes(bytes);
+        Block block = blockCache.getBlock(hash);
+        if (block != null) {
+            return block;
+        }
+
+        BlockHeader header = getBlockHeader(hash);
+        if (header == null) {
+            return null;
+        }
+
+        ByteBuffer buf = blockDB.get(header.getNumber());
+        return buf != null ? readBlock(buf) : readLegacyBlock(hash);
     }
 
     @Override
@@ -172,8 +259,14 @@ public class BlockchainImpl implements Blockchain {
             return genesis.getHeader();
         }
 
-        byte[] bytes = indexDB.get(Bytes.of(number));
-        return bytes == null ? null : getBlockHeader(bytes);
+        BlockHeader header = blockCache.getBlockHeader(number);
+        if (header != null) {
+            return header;
+        }
+
+        // read past the cache, which has just been looked up
+        byte[] hash = indexDB.get(Bytes.of(number));
+        return hash == null ? null : readBlockHeader(hash);
     }
 
     @Override
@@ -182,30 +275,36 @@ public class BlockchainImpl implements Blockchain {
             return genesis.getHeader();
         }
 
-        byte[] bytes = blockDB.get(hash);
-        return bytes == null ? null : BlockHeader.fromBytes(new SimpleDecoder(bytes).readBytes());
+        BlockHeader header = blockCache.getBlockHeader(hash);
+        return header != null ? header : readBlockHeader(hash);
     }
 
-    @Override
-    public Transaction getTransaction(byte[] hash) {
-        byte[] bytes = indexDB.get(hash);
-        if (bytes != null) {
-            // coinbase transaction
-            if (bytes.length > 64) {
-                return Transaction.fromBytes(bytes);
+    /**
+     * Reads a block header from the database, and puts it into the cache.
+     * 
+     * @param hash
+     * @return the header, or null if not exist
+     */
+    protected BlockHeader readBlockHeader(byte[] hash) {
+        byte[] encoded = headerDB.get(hash);
+        if (encoded == null) {
+            // blocks imported before the header store was introduced
+            byte[] bytes = legacyBlockDB.get(hash);
+            if (bytes == null) {
+                return null;
             }
-
-            SimpleDecoder dec = new SimpleDecoder(bytes);
-            long blockNumber = dec.readLong();
-            int from = dec.readInt();
-            int to = dec.readInt();
-
-            // number => block_hash => block_data
-            byte[] block = blockDB.get(indexDB.get(Bytes.of(blockNumber)));
-            return Transaction.fromBytes(Arrays.copyOfRange(block, from, to));
+            encoded = new SimpleDecoder(bytes).readBytes();
         }
 
-        return null;
+        BlockHeader header = BlockHeader.fromBytes(encoded);
+        blockCache.putBlockHeader(header, encoded.length);
+        return header;
+    }
+
+    @Override
+    public Transaction getTransaction(byte[] hash) {
+        byte[] bytes = indexDB.get(hash);
+        return (bytes == null) ? null : readTransaction(new HashMap<>(), bytes);
     }
 
     @Override
@@ -234,12 +333,19 @@ public class BlockchainImpl implements Blockchain {
             throw new RuntimeException("Blocks can only be added sequentially");
         }
 
+        /*
+         * All index updates of this block are staged here and written in one batch,
+         * along with the latest block hash, so that a crash can't leave a partially
+         * indexed block.
+         */
+        Map<ByteArray, byte[]> indexUpdates = new HashMap<>();
+        Map<ByteArray, byte[]> counterUpdates = new HashMap<>();
+
         List<Pair<Integer, Integer>> txIndices = block.getTransacitonIndexes();
         byte[] bytes = block.toBytes();
 
         // [1] update block
-        blockDB.put(hash, bytes);
-        indexDB.put(Bytes.of(number), hash);
+        indexUpdates.put(ByteArray.of(Bytes.of(number)), hash);
 
         // [2] update transaction indices
         List<Transaction> txs = block.getTransactions();
@@ -253,12 +359,13 @@ public class BlockchainImpl implements Blockchain {
             enc.writeInt(txIndices.get(i).getLeft());
             enc.writeInt(txIndices.get(i).getRight());
 
-            indexDB.put(tx.getHash(), enc.toBytes());
+            byte[] location = enc.toBytes();
+            indexUpdates.put(ByteArray.of(tx.getHash()), location);
 
             // [3] update transaction_by_account index
-            addTransactionToAccount(tx, tx.getFrom());
+            addTransactionToAccount(indexUpdates, counterUpdates, tx.getFrom(), location);
             if (!Arrays.equals(tx.getFrom(), tx.getTo())) {
-                addTransactionToAccount(tx, tx.getTo());
+                addTransactionToAccount(indexUpdates, counterUpdates, tx.getTo(), location);
             }
         }
 
@@ -266,33 +373,254 @@ public class BlockchainImpl implements Blockchain {
         Transaction tx = new Transaction(TransactionType.COINBASE, Bytes.EMPTY_ADDRESS, block.getCoinbase(), reward,
                 Config.MIN_TRANSACTION_FEE_HARD, block.getNumber(), block.getTimestamp(), Bytes.EMPY_BYTES);
         tx.sign(new EdDSA()); // signed by random account
-        indexDB.put(tx.getHash(), tx.toBytes());
-        addTransactionToAccount(tx, block.getCoinbase());
+        byte[] encoded = tx.toBytes();
+        indexUpdates.put(ByteArray.of(tx.getHash()), encoded);
+        addTransactionToAccount(indexUpdates, counterUpdates, block.getCoinbase(), encoded);
 
         // [5] update validator statistics
-        List<String> validators = getValidators();
-        String primary = validators.get((int) ((number - 1) % validators.size()));
-        updateValidatorStats(block.getCoinbase(), FORGED, 1);
-        if (primary.equals(Hex.encode(block.getCoinbase()))) {
-            updateValidatorStats(Hex.decode(primary), HIT, 1);
+        ValidatorSet validators = validatorSet;
+        byte[] primary = validators.get((int) ((number - 1) % validators.size()));
+        updateValidatorStats(counterUpdates, block.getCoinbase(), FORGED, 1);
+        if (Arrays.equals(primary, block.getCoinbase())) {
+            updateValidatorStats(counterUpdates, primary, HIT, 1);
         } else {
-            updateValidatorStats(Hex.decode(primary), MISSED, 1);
+            updateValidatorStats(counterUpdates, primary, MISSED, 1);
         }
 
         // [6] update validator set
         if (number % Config.VALIDATOR_TERM == 0) {
-            updateValidators(block.getNumber());
+            validators = updateValidators(indexUpdates, block.getNumber());
         }
 
-        // [7] update latest_block
+        // [7] update latest_block, and delete the journal written below
+        indexUpdates.put(ByteArray.of(KEY_LATEST_BLOCK_HASH), hash);
+        indexUpdates.put(ByteArray.of(KEY_IMPORT_JOURNAL), null);
+        indexUpdates.putAll(counterUpdates);
+
+        // [8] collect the state updates, and write the batches of all databases as
+        // one journal entry before applying them. The journal entry is the commit
+        // point: an import interrupted after it is completed on restart, as the
+        // batches can be applied again, and one interrupted before it leaves no
+        // trace but the block body, which is truncated.
+        Map<DBName, List<Pair<byte[], byte[]>>> batches = new EnumMap<>(DBName.class);
+        try {
+            accountDB.stage();
+            delegateDB.stage();
+            voteDB.stage();
+            accountState.commit();
+            delegateState.commit();
+
+            batches.put(DBName.ACCOUNT, accountDB.getStaged());
+            batches.put(DBName.DELEGATE, delegateDB.getStaged());
+            batches.put(DBName.VOTE, voteDB.getStaged());
+            batches.put(DBName.HEADER, Collections.singletonList(Pair.of(hash, block.getHeader().toBytes())));
+            batches.put(DBName.INDEX, toPairs(indexUpdates));
+
+            blockDB.append(number, bytes);
+            indexDB.put(KEY_IMPORT_JOURNAL, encodeJournal(number, batches));
+            applyBatches(batches);
+        } finally {
+            accountDB.reset();
+            delegateDB.reset();
+            voteDB.reset();
+        }
+        counterCache.putAll(counterUpdates);
+
         latestBlock = block;
-        indexDB.put(KEY_LATEST_BLOCK_HASH, hash);
+        validatorSet = validators;
+        blockCache.putBlock(block, bytes.length);
 
         for (BlockchainListener listener : listeners) {
             listener.onBlockAdded(block);
         }
     }
 
+    /**
+     * Encodes the batches of a block import as a journal entry.
+     * 
+     * @param number
+     * @param batches
+     * @return
+     */
+    protected byte[] encodeJournal(long number, Map<DBName, List<Pair<byte[], byte[]>>> batches) {
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeLong(number);
+        enc.writeInt(batches.size());
+        for (Entry<DBName, List<Pair<byte[], byte[]>>> e : batches.entrySet()) {
+            enc.writeString(e.getKey().name());
+            enc.writeInt(e.getValue().size());
+            for (Pair<byte[], byte[]> p : e.getValue()) {
+                enc.writeBytes(p.getLeft());
+                enc.writeBoolean(p.getRight() != null);
+                if (p.getRight() != null) {
+                    enc.writeBytes(p.getRight());
+                }
+            }
+        }
+        return enc.toBytes();
+    }
+
+    /**
+     * Applies the batches of a journal entry left by an interrupted import.
+     * 
+     * @param journal
+     */
+    protected void replayJournal(byte[] journal) {
+        SimpleDecoder dec = new SimpleDecoder(journal);
+        long number = dec.readLong();
+
+        Map<DBName, List<Pair<byte[], byte[]>>> batches = new EnumMap<>(DBName.class);
+        int n = dec.readInt();
+        for (int i = 0; i < n; i++) {
+            DBName name = DBName.valueOf(dec.readString());
+            int size = dec.readInt();
+            List<Pair<byte[], byte[]>> pairs = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                byte[] key = dec.readBytes();
+                pairs.add(Pair.of(key, dec.readBoolean() ? dec.readBytes() : null));
+            }
+            batches.put(name, pairs);
+        }
+
+        logger.info("Completing the interrupted import of block #{}", number);
+        applyBatches(batches);
+    }
+
+    /**
+     * Writes the batches of a block import, one per database. The index batch
+     * goes last, as it contains the latest block hash and deletes the journal.
+     * 
+     * @param batches
+     */
+    protected void applyBatches(Map<DBName, List<Pair<byte[], byte[]>>> batches) {
+        for (Entry<DBName, List<Pair<byte[], byte[]>>> e : batches.entrySet()) {
+            if (e.getKey() != DBName.INDEX) {
+                getBatchDB(e.getKey()).updateBatch(e.getValue());
+            }
+        }
+        if (batches.containsKey(DBName.INDEX)) {
+            indexDB.updateBatch(batches.get(DBName.INDEX));
+        }
+    }
+
+    /**
+     * Returns the database which a batch of a block import is written to.
+     * 
+     * @param name
+     * @return
+     */
+    private KVDB getBatchDB(DBName name) {
+        switch (name) {
+        case INDEX:
+            return indexDB;
+        case HEADER:
+            return headerDB;
+        case ACCOUNT:
+            return accountDB.getDB();
+        case DELEGATE:
+            return delegateDB.getDB();
+        case VOTE:
+            return voteDB.getDB();
+        default:
+            throw new RuntimeException("Unexpected database: " + name);
+        }
+    }
+
+    /**
+     * Reads a transaction from a transaction index entry.
+     * 
+     * @param blocks
+     *            the block data read so far, by block number
+     * @param entry
+     *            [block_number, from, to] OR [transaction] OR [transaction_hash]
+     * @return
+     */
+    protected Transaction readTransaction(Map<Long, ByteBuffer> blocks, byte[] entry) {
+        // account index entries written by older versions
+        if (entry.length == 32) {
+            entry = indexDB.get(entry);
+        }
+
+        // coinbase transaction
+        if (entry.length > 64) {
+            return Transaction.fromBytes(entry);
+        }
+
+        SimpleDecoder dec = new SimpleDecoder(entry);
+        long number = dec.readLong();
+        int from = dec.readInt();
+        int to = dec.readInt();
+
+        ByteBuffer buf = blocks.get(number);
+        if (buf == null) {
+            buf = getBlockData(number);
+            blocks.put(number, buf);
+        }
+
+        // copy only the transaction out of the block
+        ByteBuffer slice = buf.duplicate();
+        slice.position(from);
+        byte[] tx = new byte[to - from];
+        slice.get(tx);
+        return Transaction.fromBytes(tx);
+    }
+
+    /**
+     * Returns the encoded block of the given number, from either the append-only
+     * store or the legacy block DB.
+     * 
+     * @param number
+     * @return
+     */
+    protected ByteBuffer getBlockData(long number) {
+        ByteBuffer buf = blockDB.get(number);
+        return (buf != null) ? buf : ByteBuffer.wrap(legacyBlockDB.get(indexDB.get(Bytes.of(number))));
+    }
+
+    /**
+     * Decodes a block from the append-only store, and caches it. The record is
+     * copied out of the mapped segment once, as decoded blocks and the network
+     * messages built from them keep their encoding in a byte array; only
+     * transaction lookups read the mapped slice directly.
+     * 
+     * @param buf
+     * @return
+     */
+    protected Block readBlock(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+
+        Block block = Block.fromBytes(bytes);
+        blockCache.putBlock(block, bytes.length);
+        return block;
+    }
+
+    /**
+     * Reads a block from the legacy block DB, and caches it.
+     * 
+     * @param hash
+     * @return
+     */
+    protected Block readLegacyBlock(byte[] hash) {
+        byte[] bytes = legacyBlockDB.get(hash);
+        if (bytes == null) {
+            return null;
+        }
+
+        Block block = Block.fromBytes(bytes);
+        blockCache.putBlock(block, bytes.length);
+        return block;
+    }
+
+    /**
+     * Returns the cache of decoded blocks and headers.
+     * 
+     * @return
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
     @Override
     public Genesis getGenesis() {
         return genesis;
@@ -305,19 +633,38 @@ public class BlockchainImpl implements Blockchain {
 
     @Override
     public int getTotalTransactions(byte[] address) {
-        byte[] cnt = indexDB.get(address);
+        byte[] cnt = getCounter(address);
         return (cnt == null) ? 0 : Bytes.toInt(cnt);
     }
 
     @Override
     public List<Transaction> getTransactions(byte[] address, int from, int to) {
         List<Transaction> list = new ArrayList<>();
+        if (from >= to) {
+            return list;
+        }
 
-        int total = getTotalTransactions(address);
-        for (int i = from; i < total && i < to; i++) {
-            byte[] key = getNthTransactionIndexKey(address, i);
-            byte[] value = indexDB.get(key);
-            list.add(getTransaction(value));
+        // [address, n] keys are sorted by n, so a page is one range scan
+        List<byte[]> entries = new ArrayList<>();
+        ClosableIterator<Entry<byte[], byte[]>> itr = indexDB.iterator(getNthTransactionIndexKey(address, from));
+        try {
+            while (itr.hasNext() && entries.size() < to - from) {
+                Entry<byte[], byte[]> e = itr.next();
+                byte[] key = e.getKey();
+                if (key.length != address.length + 4
+                        || !Arrays.equals(address, Arrays.copyOf(key, address.length))) {
+                    break;
+                }
+                entries.add(e.getValue());
+            }
+        } finally {
+            itr.close();
+        }
+
+        // each block is read at most once
+        Map<Long, ByteBuffer> blocks = new HashMap<>();
+        for (byte[] e : entries) {
+            list.add(readTransaction(blocks, e));
         }
 
         return list;
@@ -325,18 +672,32 @@ public class BlockchainImpl implements Blockchain {
 
     @Override
     public List<String> getValidators() {
-        List<String> validators = new ArrayList<>();
+        return validatorSet.getPeerIds();
+    }
+
+    @Override
+    public ValidatorSet getValidatorSet() {
+        return validatorSet;
+    }
+
+    /**
+     * Reads the validator set from the index DB.
+     * 
+     * @return
+     */
+    protected ValidatorSet readValidators() {
+        List<byte[]> validators = new ArrayList<>();
 
         byte[] v = indexDB.get(KEY_VALIDATORS);
         if (v != null) {
             SimpleDecoder dec = new SimpleDecoder(v);
             int n = dec.readInt();
             for (int i = 0; i < n; i++) {
-                validators.add(dec.readString());
+                validators.add(Hex.decode(dec.readString()));
             }
         }
 
-        return validators;
+        return new ValidatorSet(validators);
     }
 
     /**
@@ -345,27 +706,42 @@ public class BlockchainImpl implements Blockchain {
      * @param number
      */
     protected void updateValidators(long number) {
-        List<String> validators = new ArrayList<>();
+        Map<ByteArray, byte[]> updates = new HashMap<>();
+        ValidatorSet validators = updateValidators(updates, number);
+        writeBatch(indexDB, updates);
+        validatorSet = validators;
+    }
 
-        List<Delegate> delegates = delegateState.getDelegates();
-        int max = Math.min(delegates.size(), Config.getNumberOfValidators(number));
-        for (int i = 0; i < max; i++) {
-            Delegate d = delegates.get(i);
-            validators.add(Hex.encode(d.getAddress()));
+    /**
+     * Computes the validator set, staging the index updates in the given map. The
+     * returned set is supposed to be published once the updates are written.
+     * 
+     * @param updates
+     * @param number
+     * @return the new validator set
+     */
+    protected ValidatorSet updateValidators(Map<ByteArray, byte[]> updates, long number) {
+        List<byte[]> validators = new ArrayList<>();
+
+        List<Delegate> delegates = delegateState.getDelegates(0, Config.getNumberOfValidators(number));
+        for (Delegate d : delegates) {
+            validators.add(d.getAddress());
         }
 
         SimpleEncoder enc = new SimpleEncoder();
         enc.writeInt(validators.size());
-        for (String v : validators) {
-            enc.writeString(v);
+        for (byte[] v : validators) {
+            enc.writeString(Hex.encode(v));
         }
-        indexDB.put(KEY_VALIDATORS, enc.toBytes());
+        updates.put(ByteArray.of(KEY_VALIDATORS), enc.toBytes());
+
+        return new ValidatorSet(validators);
     }
 
     @Override
     public long getNumberOfBlocksForged(byte[] address) {
         byte[] key = Bytes.merge(FORGED, address);
-        byte[] value = indexDB.get(key);
+        byte[] value = getCounter(key);
 
         return (value == null) ? 0 : Bytes.toLong(value);
     }
@@ -373,7 +749,7 @@ public class BlockchainImpl implements Blockchain {
     @Override
     public long getNumberOfTurnsHit(byte[] address) {
         byte[] key = Bytes.merge(HIT, address);
-        byte[] value = indexDB.get(key);
+        byte[] value = getCounter(key);
 
         return value != null ? Bytes.toLong(value) : 0;
     }
@@ -381,7 +757,7 @@ public class BlockchainImpl implements Blockchain {
     @Override
     public long getNumberOfTurnsMissed(byte[] address) {
         byte[] key = Bytes.merge(MISSED, address);
-        byte[] value = indexDB.get(key);
+        byte[] value = getCounter(key);
 
         return value != null ? Bytes.toLong(value) : 0;
     }
@@ -394,33 +770,120 @@ public class BlockchainImpl implements Blockchain {
      * @param forged
      *            forged or missed a block
      */
-    protected void updateValidatorStats(byte[] address, byte[] type, long delta) {
+    protected synchronized void updateValidatorStats(byte[] address, byte[] type, long delta) {
+        Map<ByteArray, byte[]> counterUpdates = new HashMap<>();
+        updateValidatorStats(counterUpdates, address, type, delta);
+        writeIndex(new HashMap<>(), counterUpdates);
+    }
+
+    /**
+     * Updates validator statistics, staging the counter updates in the given map.
+     * 
+     * @param counterUpdates
+     * @param address
+     * @param type
+     * @param delta
+     */
+    protected void updateValidatorStats(Map<ByteArray, byte[]> counterUpdates, byte[] address, byte[] type,
+            long delta) {
         byte[] key = Bytes.merge(type, address);
-        byte[] value = indexDB.get(key);
+        byte[] value = getCounter(counterUpdates, key);
 
-        indexDB.put(key, (value == null) ? Bytes.of(delta) : Bytes.of(Bytes.toLong(value) + delta));
+        long total = (value == null) ? delta : Bytes.toLong(value) + delta;
+        counterUpdates.put(ByteArray.of(key), Bytes.of(total));
     }
 
     /**
-     * Adds a transaction to an account.
+     * Adds a transaction to an account, staging the index and counter updates in
+     * the given maps.
      * 
-     * @param tx
+     * @param updates
+     * @param counterUpdates
      * @param address
+     * @param location
+     *            the encoded transaction location, or the encoded transaction if
+     *            it's not included in the block body
      */
-    protected void addTransactionToAccount(Transaction tx, byte[] address) {
-        int total = getTotalTransactions(address);
-        indexDB.put(getNthTransactionIndexKey(address, total), tx.getHash());
-        setTotalTransactions(address, total + 1);
+    protected void addTransactionToAccount(Map<ByteArray, byte[]> updates, Map<ByteArray, byte[]> counterUpdates,
+            byte[] address, byte[] location) {
+        byte[] cnt = getCounter(counterUpdates, address);
+        int total = (cnt == null) ? 0 : Bytes.toInt(cnt);
+
+        updates.put(ByteArray.of(getNthTransactionIndexKey(address, total)), location);
+        counterUpdates.put(ByteArray.of(address), Bytes.of(total + 1));
     }
 
     /**
-     * Sets the total number of transaction of an account.
+     * Reads a counter, taking the staged updates into account. Values read from
+     * the index DB are cached, so this should only be called by the importing
+     * thread.
      * 
-     * @param address
-     * @param total
+     * @param counterUpdates
+     * @param key
+     * @return
+     */
+    protected byte[] getCounter(Map<ByteArray, byte[]> counterUpdates, byte[] key) {
+        ByteArray k = ByteArray.of(key);
+        if (counterUpdates.containsKey(k)) {
+            return counterUpdates.get(k);
+        }
+
+        byte[] value = counterCache.get(k);
+        if (value == null) {
+            value = indexDB.get(key);
+            if (value != null) {
+                counterCache.put(k, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reads a counter, from the cache if present.
+     * 
+     * @param key
+     * @return
+     */
+    protected byte[] getCounter(byte[] key) {
+        byte[] value = counterCache.get(ByteArray.of(key));
+        return (value != null) ? value : indexDB.get(key);
+    }
+
+    /**
+     * Writes the staged index and counter updates into the index DB, in one
+     * batch, and then refreshes the counter cache.
+     * 
+     * @param updates
+     * @param counterUpdates
+     */
+    protected void writeIndex(Map<ByteArray, byte[]> updates, Map<ByteArray, byte[]> counterUpdates) {
+        updates.putAll(counterUpdates);
+        writeBatch(indexDB, updates);
+        counterCache.putAll(counterUpdates);
+    }
+
+    /**
+     * Writes the staged updates into the database, in one batch.
+     * 
+     * @param db
+     * @param updates
      */
-    protected void setTotalTransactions(byte[] address, int total) {
-        indexDB.put(address, Bytes.of(total));
+    protected void writeBatch(KVDB db, Map<ByteArray, byte[]> updates) {
+        db.updateBatch(toPairs(updates));
+    }
+
+    /**
+     * Converts the staged updates into key value pairs, for batch update.
+     * 
+     * @param updates
+     * @return
+     */
+    protected List<Pair<byte[], byte[]>> toPairs(Map<ByteArray, byte[]> updates) {
+        List<Pair<byte[], byte[]>> pairs = new ArrayList<>(updates.size());
+        for (Entry<ByteArray, byte[]> e : updates.entrySet()) {
+            pairs.add(Pair.of(e.getKey().getData(), e.getValue()));
+        }
+        return pairs;
     }
 
     /**
@@ -19,9 +19,11 @@ public interface Consensus {
      * @param chain
      * @param channelMgr
      * @param pendingMgr
+     * @param validationPool
      * @param coinbase
      */
-    void init(Blockchain chain, ChannelManager channelMgr, PendingManager pendingMgr, EdDSA coinbase);
+    void init(Blockchain chain, ChannelManager channelMgr, PendingManager pendingMgr, ValidationPool validationPool,
+            EdDSA coinbase);
 
     /**
      * Start consensus.
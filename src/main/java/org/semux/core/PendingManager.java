@@ -7,24 +7,36 @@
 package org.semux.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.collections4.map.LRUMap;
 import org.apache.commons.lang3.tuple.Pair;
 import org.semux.Config;
 import org.semux.core.state.AccountState;
 import org.semux.core.state.DelegateState;
+import org.semux.crypto.BatchVerifier;
 import org.semux.net.Channel;
 import org.semux.net.ChannelManager;
+import org.semux.net.Peer;
+import org.semux.net.msg.p2p.TransactionHashesMessage;
 import org.semux.net.msg.p2p.TransactionMessage;
 import org.semux.utils.ArrayUtil;
 import org.semux.utils.ByteArray;
@@ -36,7 +48,21 @@ import org.slf4j.LoggerFactory;
  * Pending manager maintains all unconfirmed transactions, either from kernel or
  * network. All transactions are evaluated and propagated to peers if valid.
  * 
- * TODO: sort transaction queue by fee, and other metrics
+ * Queued transactions are admitted in stages: the cheap checks and the
+ * signature verification run without holding the manager lock, the latter in
+ * parallel on the validation pool, and then everything verified is applied to
+ * the pending state in one go.
+ * 
+ * The pool keeps each sender's transactions in nonce order; blocks are filled
+ * by fee, and the cheapest transactions are evicted when the pool is full.
+ * 
+ * On a new block, only the pooled transactions depending on the state the
+ * block changed are validated again, by the background worker.
+ * 
+ * Transactions are relayed by announcing their hashes, in batches, to the peers
+ * advertising {@link Config#P2P_CAPABILITY_TX_HASHES}; the peers request the
+ * ones they don't know, so each transaction is sent in full about once per node
+ * rather than once per link. Other peers are sent the transactions in full.
  *
  */
 public class PendingManager implements Runnable, BlockchainListener {
@@ -53,42 +79,126 @@ public class PendingManager implements Runnable, BlockchainListener {
         }
     };
 
-    private static final int CACHE_SIZE = 128 * 1024;
+    /**
+     * Estimated memory of a processed transaction hash in the cache, in bytes.
+     */
+    private static final int PROCESSED_ENTRY_SIZE = 128;
+
+    /**
+     * Estimated memory of a queue node, besides the transaction.
+     */
+    private static final int QUEUE_ENTRY_OVERHEAD = 32;
+
+    /**
+     * Interval between the checks for expired transactions in the pool.
+     */
+    private static final long EXPIRY_CHECK_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Max number of queued transactions admitted in one run.
+     */
+    private static final int ADMISSION_BATCH_SIZE = 4096;
+
+    /**
+     * Time constant of the admission rate average, in seconds.
+     */
+    private static final int RATE_WINDOW = 10;
+
+    /**
+     * Time after which an announced transaction which hasn't arrived is requested
+     * again, from another peer.
+     */
+    private static final long REQUEST_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
 
     private Blockchain chain;
     private ChannelManager channelMgr;
+    private ValidationPool validationPool;
     private AccountState pendingAS;
     private DelegateState pendingDS;
 
     /**
-     * Transaction queue.
+     * Transaction queue, which is not guarded by the manager lock.
+     */
+    private ConcurrentLinkedQueue<Transaction> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Transactions taken from the queue, whose signatures have been verified.
+     * Only accessed by the background worker.
+     */
+    private LinkedList<Transaction> verified = new LinkedList<>();
+
+    /**
+     * Transactions added to the pool and yet to be relayed.
      */
-    private LinkedList<Transaction> queue = new LinkedList<>();
+    private LinkedList<Transaction> relayQueue = new LinkedList<>();
 
     /**
      * Transaction pool.
      */
-    private Map<ByteArray, Transaction> poolMap = new HashMap<>();
-    private List<Transaction> transactions = new ArrayList<>();
-    private List<TransactionResult> results = new ArrayList<>();
+    private TransactionPool pool = new TransactionPool();
+
+    /**
+     * Whether transactions have been evicted since the pending state was built.
+     */
+    private boolean isStale;
 
     /**
-     * Transaction cache. NOTE: make sure access to the LRUMap<> are synchronized.
+     * The nonce following the last pooled transaction of each sender, readable
+     * without the manager lock.
      */
-    private Map<ByteArray, Transaction> cache = new LRUMap<>(CACHE_SIZE);
-    private Map<ByteArray, Object> processedTxs = new LRUMap<>(CACHE_SIZE);
+    private Map<ByteArray, Long> pendingNonces = new ConcurrentHashMap<>();
+
+    /**
+     * Transactions ahead of their senders' nonces, and the hashes of processed
+     * transactions, which share the cache memory budget. NOTE: make sure access
+     * to the LRUMap<> are synchronized.
+     */
+    private FutureCache cache = new FutureCache(Config.PENDING_CACHE_MEMORY / 2);
+    private Map<ByteArray, Object> processedTxs = new LRUMap<>(
+            (int) Math.max(1, Config.PENDING_CACHE_MEMORY / 2 / PROCESSED_ENTRY_SIZE));
+
+    /**
+     * When each transaction was requested from a peer or received, by hash.
+     * NOTE: make sure access to the LRUMap<> are synchronized.
+     */
+    private Map<ByteArray, Long> requestedTxs = new LRUMap<>(4 * Config.MAX_BLOCK_SIZE);
+
+    private AtomicLong queueMemory = new AtomicLong();
+    private AtomicLong droppedCount = new AtomicLong();
+    private AtomicLong evictedCount = new AtomicLong();
+    private long lastExpiryCheck = System.nanoTime();
 
     private ScheduledExecutorService exec;
     private ScheduledFuture<?> validateFuture;
 
     private volatile boolean isRunning;
 
+    private AtomicLong admittedCount = new AtomicLong();
+    private volatile double admissionRate;
+    private long rateCount;
+    private long rateUpdated = System.nanoTime();
+    private long lastRelay = System.nanoTime();
+
     /**
-     * Creates a pending manager.
+     * Creates a pending manager, which verifies signatures on its own thread.
      */
     public PendingManager(Blockchain chain, ChannelManager channelMgr) {
+        this(chain, channelMgr, null);
+    }
+
+    /**
+     * Creates a pending manager.
+     * 
+     * @param chain
+     * @param channelMgr
+     * @param validationPool
+     *            the pool to verify signatures on, or null for the background
+     *            worker
+     */
+    public PendingManager(Blockchain chain, ChannelManager channelMgr, ValidationPool validationPool) {
         this.chain = chain;
         this.channelMgr = channelMgr;
+        this.validationPool = validationPool;
         this.pendingAS = chain.getAccountState().track();
         this.pendingDS = chain.getDeleteState().track();
 
@@ -141,7 +251,7 @@ public class PendingManager implements Runnable, BlockchainListener {
      * 
      * @return
      */
-    public synchronized List<Transaction> getQueue() {
+    public List<Transaction> getQueue() {
         return new ArrayList<>(queue);
     }
 
@@ -151,8 +261,21 @@ public class PendingManager implements Runnable, BlockchainListener {
      * 
      * @param tx
      */
-    public synchronized void addTransaction(Transaction tx) {
-        queue.add(tx);
+    public void addTransaction(Transaction tx) {
+        if (tx.getHash() != null) {
+            synchronized (requestedTxs) {
+                requestedTxs.put(ByteArray.of(tx.getHash()), System.nanoTime());
+            }
+        }
+
+        int size = tx.getMemorySize() + QUEUE_ENTRY_OVERHEAD;
+        if (queueMemory.addAndGet(size) > Config.PENDING_QUEUE_MEMORY) {
+            // dropped, as the fees of queued transactions can't be trusted yet
+            queueMemory.addAndGet(-size);
+            droppedCount.incrementAndGet();
+        } else {
+            queue.add(tx);
+        }
     }
 
     /**
@@ -163,7 +286,81 @@ public class PendingManager implements Runnable, BlockchainListener {
      *         false
      */
     public synchronized boolean addTransactionSync(Transaction tx) {
-        return processTransaction(tx, true) >= 1;
+        int cnt = processTransaction(tx, true);
+        admittedCount.addAndGet(cnt);
+        if (isStale) {
+            rebuildPendingState();
+        }
+        return cnt >= 1;
+    }
+
+    /**
+     * Returns the number of transactions admitted into the pool.
+     * 
+     * @return
+     */
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    /**
+     * Returns the number of transactions admitted per second, averaged over the
+     * last {@value #RATE_WINDOW} seconds or so.
+     * 
+     * @return
+     */
+    public double getAdmissionRate() {
+        return admissionRate;
+    }
+
+    /**
+     * Returns the number of transactions dropped as the queue was full.
+     * 
+     * @return
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the number of transactions evicted from the pool for ones paying
+     * higher fees.
+     * 
+     * @return
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Returns the estimated memory taken by the queue, in bytes.
+     * 
+     * @return
+     */
+    public long getQueueMemory() {
+        return queueMemory.get();
+    }
+
+    /**
+     * Returns the estimated memory taken by the pool, in bytes.
+     * 
+     * @return
+     */
+    public synchronized long getPoolMemory() {
+        return pool.getMemorySize();
+    }
+
+    /**
+     * Returns the estimated memory taken by the caches, in bytes.
+     * 
+     * @return
+     */
+    public long getCacheMemory() {
+        long processed;
+        synchronized (processedTxs) {
+            processed = (long) processedTxs.size() * PROCESSED_ENTRY_SIZE;
+        }
+        return cache.getMemorySize() + processed;
     }
 
     /**
@@ -172,12 +369,17 @@ public class PendingManager implements Runnable, BlockchainListener {
      * @param address
      * @return
      */
-    public synchronized long getNonce(byte[] address) {
-        return pendingAS.getAccount(address).getNonce();
+    public long getNonce(byte[] address) {
+        Long pending = pendingNonces.get(ByteArray.of(address));
+        long nonce = chain.getAccountState().getAccount(address).getNonce();
+
+        return (pending == null) ? nonce : Math.max(pending, nonce);
     }
 
     /**
-     * Returns pending transactions and corresponding results.
+     * Returns pending transactions and corresponding results, for a new block.
+     * The transactions are taken by fee, and executed over the latest state since
+     * their order differs from the order they were admitted in.
      * 
      * @param limit
      * @return
@@ -186,81 +388,448 @@ public class PendingManager implements Runnable, BlockchainListener {
         List<Transaction> txs = new ArrayList<>();
         List<TransactionResult> res = new ArrayList<>();
 
-        if (transactions.size() > limit && limit != -1) {
-            txs.addAll(transactions.subList(0, limit));
-            res.addAll(results.subList(0, limit));
-        } else {
-            txs.addAll(transactions);
-            res.addAll(results);
+        AccountState as = chain.getAccountState().track();
+        DelegateState ds = chain.getDeleteState().track();
+        TransactionExecutor exec = new TransactionExecutor();
+
+        // once a transaction fails, the later ones of its sender can't succeed
+        Set<ByteArray> failed = new HashSet<>();
+        for (Transaction tx : pool.select(limit)) {
+            ByteArray sender = ByteArray.of(tx.getFrom());
+            if (failed.contains(sender)) {
+                continue;
+            }
+
+            TransactionResult result = exec.execute(tx, as, ds);
+            if (result.isValid()) {
+                txs.add(tx);
+                res.add(result);
+            } else {
+                failed.add(sender);
+            }
         }
 
         return Pair.of(txs, res);
     }
 
     /**
-     * Returns a limited number of transactions in the pool.
+     * Returns a limited number of transactions in the pool, by fee.
      * 
      * @param limit
      * @return
      */
     public synchronized List<Transaction> getTransactions(int limit) {
-        return getTransactionsAndResults(limit).getLeft();
+        return pool.select(limit);
     }
 
     /**
-     * Returns all transactions in the pool.
+     * Returns the transactions in the pool with the given hashes.
+     * 
+     * @param hashes
+     * @return the transactions found
+     */
+    public synchronized List<Transaction> getTransactions(List<byte[]> hashes) {
+        List<Transaction> txs = new ArrayList<>();
+        for (byte[] hash : hashes) {
+            Transaction tx = pool.get(hash);
+            if (tx != null) {
+                txs.add(tx);
+            }
+        }
+        return txs;
+    }
+
+    /**
+     * Selects the announced transactions to request from the peer, i.e. the ones
+     * which are unknown and not requested from another peer recently, and
+     * records them as requested.
+     * 
+     * @param hashes
+     * @return the hashes to request
+     */
+    public List<byte[]> requestTransactions(List<byte[]> hashes) {
+        long now = System.nanoTime();
+        List<byte[]> unknown = new ArrayList<>();
+        List<byte[]> expired = new ArrayList<>();
+        for (byte[] hash : hashes) {
+            ByteArray key = ByteArray.of(hash);
+            synchronized (processedTxs) {
+                if (processedTxs.containsKey(key)) {
+                    continue;
+                }
+            }
+
+            Long requested;
+            synchronized (requestedTxs) {
+                requested = requestedTxs.get(key);
+                if (requested != null && now - requested < REQUEST_TIMEOUT) {
+                    continue;
+                }
+                requestedTxs.put(key, now);
+            }
+            (requested == null ? unknown : expired).add(hash);
+        }
+
+        // transactions received a while ago are likely in the pool
+        if (!expired.isEmpty()) {
+            synchronized (this) {
+                for (byte[] hash : expired) {
+                    if (!pool.contains(hash)) {
+                        unknown.add(hash);
+                    }
+                }
+            }
+        }
+
+        return unknown;
+    }
+
+    /**
+     * Returns all transactions in the pool, by fee.
      * 
      * @return
      */
     public synchronized List<Transaction> getTransactions() {
-        return getTransactionsAndResults(-1).getLeft();
+        return pool.select(-1);
     }
 
+    /**
+     * Reconciles the pool on the thread adding the block, while the state of the
+     * chain is the one after the block; the sync manager publishes the state of
+     * the next block only once this has returned.
+     */
     @Override
-    public synchronized void onBlockAdded(Block block) {
+    public void onBlockAdded(Block block) {
         if (isRunning) {
-            long t1 = System.currentTimeMillis();
-
-            // [1] reset state
-            pendingAS = chain.getAccountState().track();
-            pendingDS = chain.getDeleteState().track();
-
-            // [2] clear transaction pool
-            List<Transaction> txs = new ArrayList<>(transactions);
-            poolMap.clear();
-            transactions.clear();
-            results.clear();
-
-            // [3] update pending state
-            long accepted = 0;
-            for (Transaction tx : txs) {
-                accepted += processTransaction(tx, false);
+            reconcile(block);
+        }
+    }
+
+    /**
+     * Updates the pool and the pending state for a new block. The included
+     * transactions are removed, and the ones touching the state changed by the
+     * block, directly or through other pooled transactions, are validated again;
+     * the pending state of the other accounts is kept.
+     * 
+     * Delegate state can't be carried over, so the transactions updating it are
+     * always validated again.
+     * 
+     * @param block
+     */
+    protected synchronized void reconcile(Block block) {
+        long t1 = System.currentTimeMillis();
+
+        // [1] remove the included transactions
+        List<Transaction> included = block.getTransactions();
+        for (Transaction tx : included) {
+            pool.remove(tx.getHash());
+        }
+
+        if (isStale) {
+            rebuildPendingState();
+            return;
+        }
+
+        // [2] find the transactions depending on the changes
+        TransactionExecutor exec = new TransactionExecutor();
+        List<Transaction> txs = pool.getTransactionsByArrival();
+        Map<ByteArray, List<Integer>> byKey = new HashMap<>();
+        for (int i = 0; i < txs.size(); i++) {
+            for (ByteArray k : exec.getTouchedKeys(txs.get(i))) {
+                byKey.computeIfAbsent(k, x -> new ArrayList<>()).add(i);
+            }
+        }
+
+        LinkedList<ByteArray> keys = new LinkedList<>();
+        for (Transaction tx : included) {
+            keys.addAll(exec.getTouchedKeys(tx));
+        }
+        keys.add(exec.getAccountKey(block.getCoinbase()));
+
+        boolean[] dirty = new boolean[txs.size()];
+        for (int i = 0; i < txs.size(); i++) {
+            if (txs.get(i).getType() != TransactionType.TRANSFER) {
+                dirty[i] = true;
+                keys.addAll(exec.getTouchedKeys(txs.get(i)));
+            }
+        }
+
+        Set<ByteArray> visited = new HashSet<>();
+        ByteArray k;
+        while ((k = keys.poll()) != null) {
+            if (visited.add(k) && byKey.containsKey(k)) {
+                for (int i : byKey.get(k)) {
+                    if (!dirty[i]) {
+                        dirty[i] = true;
+                        keys.addAll(exec.getTouchedKeys(txs.get(i)));
+                    }
+                }
+            }
+        }
+
+        // [3] carry over the pending state of the other accounts
+        AccountState as = chain.getAccountState().track();
+        DelegateState ds = chain.getDeleteState().track();
+        Set<ByteArray> copied = new HashSet<>();
+        for (int i = 0; i < txs.size(); i++) {
+            if (!dirty[i]) {
+                copyAccount(txs.get(i).getFrom(), as, copied);
+                copyAccount(txs.get(i).getTo(), as, copied);
             }
+        }
+        pendingAS = as;
+        pendingDS = ds;
 
-            long t2 = System.currentTimeMillis();
-            logger.debug("Pending tx evaluation: # txs = {} / {},  time =  {} ms", accepted, txs.size(), t2 - t1);
+        // [4] validate the dependent transactions again
+        List<Transaction> revalidate = new ArrayList<>();
+        Set<ByteArray> senders = new HashSet<>();
+        for (Transaction tx : included) {
+            senders.add(ByteArray.of(tx.getFrom()));
+        }
+        for (int i = 0; i < txs.size(); i++) {
+            if (dirty[i]) {
+                pool.remove(txs.get(i).getHash());
+                revalidate.add(txs.get(i));
+                senders.add(ByteArray.of(txs.get(i).getFrom()));
+            }
         }
+        long accepted = 0;
+        for (Transaction tx : revalidate) {
+            accepted += processTransaction(tx, false);
+        }
+
+        // [5] admit the cached transactions which became executable
+        for (ByteArray sender : senders) {
+            long nonce = pendingAS.getAccount(sender.getData()).getNonce();
+            Transaction tx = cache.remove(createKey(sender.getData(), nonce));
+            if (tx != null) {
+                admittedCount.addAndGet(processTransaction(tx, true));
+            }
+        }
+        syncNonces(senders);
+
+        long t2 = System.currentTimeMillis();
+        logger.debug("Pending tx reconciliation: # included = {}, # revalidated = {} / {}, # txs = {}, time = {} ms",
+                included.size(), accepted, revalidate.size(), pool.size(), t2 - t1);
     }
 
     @Override
-    public synchronized void run() {
+    public void run() {
+        // [1] cheap checks and signature verification, without the lock
+        if (verified.isEmpty()) {
+            List<Transaction> txs = pollQueue();
+            boolean cofactored = BatchVerifier.isCofactored(chain.getLatestBlockNumber() + 1);
+            boolean[] valid = (validationPool == null) ? ValidationPool.verifyEach(txs, cofactored)
+                    : validationPool.verify(txs, cofactored);
+            for (int i = 0; i < txs.size(); i++) {
+                if (valid[i]) {
+                    verified.add(txs.get(i));
+                } else {
+                    markProcessed(txs.get(i));
+                }
+            }
+        }
+
+        // [2] apply everything verified to the pending state
+        int admitted = 0;
+        List<Transaction> relays;
+        synchronized (this) {
+            Transaction tx;
+            while ((tx = verified.poll()) != null) {
+                int cnt = processTransaction(tx, true);
+                if (cnt == 0) {
+                    markProcessed(tx);
+                }
+                admitted += cnt;
+            }
+            if (isStale || hasExpired()) {
+                rebuildPendingState();
+            }
+            relays = pollRelays();
+        }
+        admittedCount.addAndGet(admitted);
+
+        // [3] relay, without the lock
+        relay(relays);
+
+        updateAdmissionRate(admitted);
+    }
+
+    /**
+     * Takes a batch of transactions from the queue, dropping the ones known to
+     * be processed and the ones failing the cheap checks.
+     * 
+     * @return
+     */
+    protected List<Transaction> pollQueue() {
+        List<Transaction> txs = new ArrayList<>();
         Transaction tx;
+        while (txs.size() < ADMISSION_BATCH_SIZE && (tx = queue.poll()) != null) {
+            queueMemory.addAndGet(-(tx.getMemorySize() + QUEUE_ENTRY_OVERHEAD));
+
+            if (tx.getHash() == null) {
+                continue;
+            }
 
-        while (poolMap.size() < 2 * Config.MAX_BLOCK_SIZE //
-                && (tx = queue.poll()) != null //
-                && tx.getFee() >= Config.MIN_TRANSACTION_FEE_SOFT) {
-            // filter by cache
             ByteArray key = ByteArray.of(tx.getHash());
-            if (processedTxs.containsKey(key)) {
+            synchronized (processedTxs) {
+                if (processedTxs.containsKey(key)) {
+                    continue;
+                }
+            }
+
+            if (tx.getFee() < Config.MIN_TRANSACTION_FEE_SOFT || !isTimely(tx) || !tx.validateFormat()) {
+                markProcessed(tx);
                 continue;
             }
+            txs.add(tx);
+        }
+
+        return txs;
+    }
+
+    /**
+     * Resets the pending state to the latest state, and executes the pooled
+     * transactions again in the order they were admitted.
+     */
+    private void rebuildPendingState() {
+        long t1 = System.currentTimeMillis();
+
+        // [1] reset state
+        pendingAS = chain.getAccountState().track();
+        pendingDS = chain.getDeleteState().track();
+        isStale = false;
+
+        // [2] clear transaction pool
+        List<Transaction> txs = pool.getTransactionsByArrival();
+        pool.clear();
+
+        // [3] update pending state
+        long accepted = 0;
+        for (Transaction tx : txs) {
+            accepted += processTransaction(tx, false);
+        }
+        syncNonces(new ArrayList<>(pendingNonces.keySet()));
+
+        long t2 = System.currentTimeMillis();
+        logger.debug("Pending tx evaluation: # txs = {} / {},  time =  {} ms", accepted, txs.size(), t2 - t1);
+    }
+
+    private void markProcessed(Transaction tx) {
+        synchronized (processedTxs) {
+            processedTxs.put(ByteArray.of(tx.getHash()), null);
+        }
+    }
+
+    /**
+     * Returns whether the pool holds transactions whose timestamps have become too
+     * old, checking once in a while.
+     * 
+     * @return
+     */
+    private boolean hasExpired() {
+        long now = System.nanoTime();
+        if (now - lastExpiryCheck < EXPIRY_CHECK_INTERVAL) {
+            return false;
+        }
+        lastExpiryCheck = now;
+
+        return pool.getEarliestTimestamp() < System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+    }
+
+    /**
+     * Takes the transactions to relay in this run. Peers send one message every
+     * {@link Config#NET_MAX_QUEUE_RATE} ms, so relaying is kept below that rate
+     * to keep their message queues from filling up. Hashes are announced in one
+     * message per run, so only peers without that capability, which are sent a
+     * message per transaction, limit the number of transactions.
+     * 
+     * @return
+     */
+    private List<Transaction> pollRelays() {
+        if (relayQueue.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long now = System.nanoTime();
+        long interval = TimeUnit.MILLISECONDS.toNanos(Config.NET_MAX_QUEUE_RATE * 3 / 2);
+        long budget = hasOlderPeers() ? Math.max(1, (now - lastRelay) / Math.max(1, interval))
+                : TransactionHashesMessage.MAX_HASHES;
+        budget = Math.min(budget, TransactionHashesMessage.MAX_HASHES);
+
+        List<Transaction> txs = new ArrayList<>();
+        Transaction tx;
+        while (txs.size() < budget && (tx = relayQueue.poll()) != null) {
+            txs.add(tx);
+        }
+        lastRelay = now;
+
+        return txs;
+    }
+
+    private void relay(List<Transaction> txs) {
+        if (txs.isEmpty()) {
+            return;
+        }
+
+        List<Channel> channels = channelMgr.getActiveChannels();
+        Map<Channel, List<byte[]>> announces = new HashMap<>();
+        for (Transaction tx : txs) {
+            TransactionMessage msg = null;
+            int[] indices = ArrayUtil.permutation(channels.size());
+            for (int i = 0; i < indices.length && i < Config.NET_RELAY_REDUNDANCY; i++) {
+                Channel c = channels.get(indices[i]);
+                if (!c.isActive()) {
+                    continue;
+                }
+
+                if (isAnnounceSupported(c)) {
+                    announces.computeIfAbsent(c, k -> new ArrayList<>()).add(tx.getHash());
+                } else {
+                    if (msg == null) {
+                        msg = new TransactionMessage(tx);
+                    }
+                    c.getMessageQueue().sendMessage(msg);
+                }
+            }
+        }
 
-            if (tx.validate() && processTransaction(tx, true) >= 1) {
-                // exit after one valid transaction
-                return;
+        for (Map.Entry<Channel, List<byte[]>> e : announces.entrySet()) {
+            e.getKey().getMessageQueue().sendMessage(new TransactionHashesMessage(e.getValue()));
+        }
+    }
+
+    private boolean hasOlderPeers() {
+        for (Channel c : channelMgr.getActiveChannels()) {
+            if (!isAnnounceSupported(c)) {
+                return true;
             }
+        }
+        return false;
+    }
+
+    private boolean isAnnounceSupported(Channel c) {
+        Peer peer = c.getRemotePeer();
+        return peer != null && peer.supports(Config.P2P_CAPABILITY_TX_HASHES);
+    }
 
-            processedTxs.put(key, null);
+    private void updateAdmissionRate(int admitted) {
+        rateCount += admitted;
+
+        long now = System.nanoTime();
+        double elapsed = (now - rateUpdated) / 1e9;
+        if (elapsed >= 1) {
+            double alpha = 1 - Math.exp(-elapsed / RATE_WINDOW);
+            admissionRate += alpha * (rateCount / elapsed - admissionRate);
+
+            if (rateCount > 0) {
+                logger.debug("Pending tx admission: {} tx/s, admitted = {}, dropped = {}, evicted = {}, "
+                        + "memory = [queue: {}, pool: {}, cache: {}]", String.format("%.1f", admissionRate),
+                        admittedCount.get(), droppedCount.get(), evictedCount.get(), getQueueMemory(),
+                        getPoolMemory(), getCacheMemory());
+            }
+            rateCount = 0;
+            rateUpdated = now;
         }
     }
 
@@ -276,9 +845,7 @@ public class PendingManager implements Runnable, BlockchainListener {
     protected int processTransaction(Transaction tx, boolean relay) {
 
         // check timestamp. this is not part of validation protocol
-        long now = System.currentTimeMillis();
-        long twoHours = TimeUnit.HOURS.toMillis(2);
-        if (tx.getTimestamp() < now - twoHours || tx.getTimestamp() > now + twoHours) {
+        if (!isTimely(tx)) {
             return 0;
         }
 
@@ -290,6 +857,14 @@ public class PendingManager implements Runnable, BlockchainListener {
         long nonce = acc.getNonce();
         int cnt = 0;
         while (tx != null && tx.getNonce() == nonce) {
+            // make room, evicting transactions of lower fees
+            while (pool.size() >= 2 * Config.MAX_BLOCK_SIZE
+                    || pool.getMemorySize() + TransactionPool.sizeOf(tx) > Config.PENDING_POOL_MEMORY) {
+                if (!evictFor(tx)) {
+                    return cnt;
+                }
+            }
+
             // execute transactions
             TransactionResult result = exec.execute(tx, as, ds);
 
@@ -299,20 +874,14 @@ public class PendingManager implements Runnable, BlockchainListener {
                 ds.commit();
 
                 // add transaction to pool
-                poolMap.put(createKey(tx), tx);
-                transactions.add(tx);
-                results.add(result);
+                pool.add(tx);
+                pendingNonces.merge(ByteArray.of(tx.getFrom()), tx.getNonce() + 1, Math::max);
 
-                // relay transaction
+                // relay transaction, by the background worker
                 if (relay) {
-                    List<Channel> channels = channelMgr.getActiveChannels();
-                    TransactionMessage msg = new TransactionMessage(tx);
-                    int[] indices = ArrayUtil.permutation(channels.size());
-                    for (int i = 0; i < indices.length && i < Config.NET_RELAY_REDUNDANCY; i++) {
-                        Channel c = channels.get(indices[i]);
-                        if (c.isActive()) {
-                            c.getMessageQueue().sendMessage(msg);
-                        }
+                    relayQueue.add(tx);
+                    if (relayQueue.size() > 2 * Config.MAX_BLOCK_SIZE) {
+                        relayQueue.poll();
                     }
                 }
             } else {
@@ -322,7 +891,7 @@ public class PendingManager implements Runnable, BlockchainListener {
 
             nonce++;
             cnt++;
-            tx = cache.get(createKey(tx.getFrom(), nonce));
+            tx = cache.remove(createKey(tx.getFrom(), nonce));
         }
 
         // add to cache
@@ -333,6 +902,67 @@ public class PendingManager implements Runnable, BlockchainListener {
         return cnt;
     }
 
+    /**
+     * Evicts the cheapest transaction if the given one pays more. The pending
+     * state still includes the evicted transaction, and is rebuilt afterwards.
+     * 
+     * @param tx
+     * @return true if evicted, otherwise false
+     */
+    private boolean evictFor(Transaction tx) {
+        if (pool.size() == 0 || tx.getFee() <= pool.getLowestFee()) {
+            return false;
+        }
+
+        Transaction evicted = pool.evict();
+        evictedCount.incrementAndGet();
+        syncNonces(Collections.singletonList(ByteArray.of(evicted.getFrom())));
+        isStale = true;
+
+        // the given transaction can't follow the evicted one
+        return !Arrays.equals(evicted.getFrom(), tx.getFrom());
+    }
+
+    /**
+     * Sets the pending nonces of the given senders to match the pool.
+     * 
+     * @param senders
+     */
+    private void syncNonces(Collection<ByteArray> senders) {
+        for (ByteArray sender : senders) {
+            long nonce = pool.getNextNonce(sender.getData());
+            if (nonce < 0) {
+                pendingNonces.remove(sender);
+            } else {
+                pendingNonces.put(sender, nonce);
+            }
+        }
+    }
+
+    /**
+     * Copies an account of the current pending state into the given state.
+     * 
+     * @param address
+     * @param as
+     * @param copied
+     *            the accounts copied already
+     */
+    private void copyAccount(byte[] address, AccountState as, Set<ByteArray> copied) {
+        if (copied.add(ByteArray.of(address))) {
+            Account src = pendingAS.getAccount(address);
+            Account dst = as.getAccount(address);
+            dst.setBalance(src.getBalance());
+            dst.setLocked(src.getLocked());
+            dst.setNonce(src.getNonce());
+        }
+    }
+
+    private boolean isTimely(Transaction tx) {
+        long now = System.currentTimeMillis();
+        long twoHours = TimeUnit.HOURS.toMillis(2);
+        return tx.getTimestamp() >= now - twoHours && tx.getTimestamp() <= now + twoHours;
+    }
+
     private ByteArray createKey(Transaction tx) {
         return ByteArray.of(Bytes.merge(tx.getFrom(), Bytes.of(tx.getNonce())));
     }
@@ -340,4 +970,70 @@ public class PendingManager implements Runnable, BlockchainListener {
     private ByteArray createKey(byte[] acc, long nonce) {
         return ByteArray.of(Bytes.merge(acc, Bytes.of(nonce)));
     }
+
+    /**
+     * Transactions ahead of their senders' nonces, bounded by their estimated
+     * memory. When full, the ones paying the lowest fees are evicted, the latest
+     * first among equal fees.
+     */
+    private static class FutureCache {
+        private static final int ENTRY_OVERHEAD = 160;
+
+        private final long capacity;
+
+        private final Map<ByteArray, Entry> entries = new HashMap<>();
+        private final TreeSet<Entry> byFee = new TreeSet<>((a, b) -> {
+            int c = Long.compare(a.tx.getFee(), b.tx.getFee());
+            return c != 0 ? c : Long.compare(b.seq, a.seq);
+        });
+
+        private long memory;
+        private long seq;
+
+        FutureCache(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void put(ByteArray key, Transaction tx) {
+            remove(key);
+
+            Entry e = new Entry(key, tx, seq++);
+            entries.put(key, e);
+            byFee.add(e);
+            memory += e.size;
+
+            while (memory > capacity) {
+                remove(byFee.first().key);
+            }
+        }
+
+        synchronized Transaction remove(ByteArray key) {
+            Entry e = entries.remove(key);
+            if (e == null) {
+                return null;
+            }
+
+            byFee.remove(e);
+            memory -= e.size;
+            return e.tx;
+        }
+
+        synchronized long getMemorySize() {
+            return memory;
+        }
+
+        private static class Entry {
+            final ByteArray key;
+            final Transaction tx;
+            final long seq;
+            final int size;
+
+            Entry(ByteArray key, Transaction tx, long seq) {
+                this.key = key;
+                this.tx = tx;
+                this.seq = seq;
+                this.size = tx.getMemorySize() + ENTRY_OVERHEAD;
+            }
+        }
+    }
 }
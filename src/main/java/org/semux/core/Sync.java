@@ -16,8 +16,9 @@ public interface Sync {
      * 
      * @param chain
      * @param channelMgr
+     * @param validationPool
      */
-    public void init(Blockchain chain, ChannelManager channelMgr);
+    public void init(Blockchain chain, ChannelManager channelMgr, ValidationPool validationPool);
 
     /**
      * Start sync manager, and sync blocks in [height, targetHeight).
@@ -14,11 +14,18 @@ import org.semux.crypto.EdDSA;
 import org.semux.crypto.EdDSA.Signature;
 import org.semux.crypto.Hash;
 import org.semux.crypto.Hex;
+import org.semux.crypto.SignatureCache;
+import org.semux.utils.BufferEncoder;
 import org.semux.utils.SimpleDecoder;
-import org.semux.utils.SimpleEncoder;
 
 public class Transaction implements Callable<Boolean> {
 
+    /**
+     * Estimated memory of a transaction besides its encoding and decoded fields:
+     * the hash, the signature and the object headers.
+     */
+    private static final int MEMORY_OVERHEAD = 320;
+
     private byte[] hash;
 
     private TransactionType type;
@@ -63,7 +70,9 @@ public class Transaction implements Callable<Boolean> {
         this.timestamp = timestamp;
         this.data = data;
 
-        SimpleEncoder enc = new SimpleEncoder();
+        int size = BufferEncoder.SIZE_BYTE + BufferEncoder.sizeOf(from) + BufferEncoder.sizeOf(to)
+                + 4 * BufferEncoder.SIZE_LONG + BufferEncoder.sizeOf(data);
+        BufferEncoder enc = new BufferEncoder(size);
         enc.writeByte(type.toByte());
         enc.writeBytes(from);
         enc.writeBytes(to);
@@ -116,6 +125,16 @@ public class Transaction implements Callable<Boolean> {
      * @return true if valid, otherwise false
      */
     public boolean validate() {
+        return validateFormat() && SignatureCache.getInstance().verify(hash, signature);
+    }
+
+    /**
+     * Validate transaction format and hash, but not the signature. This allows the
+     * signatures of many transactions to be verified in a batch.
+     * 
+     * @return true if valid, otherwise false
+     */
+    public boolean validateFormat() {
         return hash != null && hash.length == 32 //
                 && type != null //
                 && from != null && from.length == 20 //
@@ -128,8 +147,7 @@ public class Transaction implements Callable<Boolean> {
                 && encoded != null //
                 && signature != null //
 
-                && Arrays.equals(Hash.h256(encoded), hash) //
-                && EdDSA.verify(hash, signature);
+                && Arrays.equals(Hash.h256(encoded), hash);
     }
 
     public byte[] getHash() {
@@ -208,17 +226,42 @@ public class Transaction implements Callable<Boolean> {
         this.signature = signature;
     }
 
+    /**
+     * Returns an estimate of the memory taken by this transaction, which is its
+     * encoding, the decoded fields of about the same size, and a fixed overhead.
+     * 
+     * @return
+     */
+    public int getMemorySize() {
+        return MEMORY_OVERHEAD + 2 * (encoded == null ? 0 : encoded.length);
+    }
+
     public byte[] toBytes() {
-        SimpleEncoder enc = new SimpleEncoder();
+        byte[] sig = signature.toBytes();
+
+        BufferEncoder enc = new BufferEncoder(
+                BufferEncoder.sizeOf(hash) + BufferEncoder.sizeOf(encoded) + BufferEncoder.sizeOf(sig));
         enc.writeBytes(hash);
         enc.writeBytes(encoded);
-        enc.writeBytes(signature.toBytes());
+        enc.writeBytes(sig);
 
         return enc.toBytes();
     }
 
     public static Transaction fromBytes(byte[] bytes) {
-        SimpleDecoder dec = new SimpleDecoder(bytes);
+        return fromBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse a transaction from a range of a byte array, e.g. a block encoding.
+     * 
+     * @param bytes
+     * @param from
+     * @param to
+     * @return
+     */
+    public static Transaction fromBytes(byte[] bytes, int from, int to) {
+        SimpleDecoder dec = new SimpleDecoder(bytes, from, to);
         byte[] hash = dec.readBytes();
         byte[] encoded = dec.readBytes();
         byte[] signature = dec.readBytes();
@@ -9,11 +9,16 @@ package org.semux.core;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import org.semux.Config;
 import org.semux.core.state.AccountState;
 import org.semux.core.state.DelegateState;
+import org.semux.utils.ByteArray;
 import org.semux.utils.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,9 +31,33 @@ public class TransactionExecutor {
     private static final Logger logger = LoggerFactory.getLogger(TransactionExecutor.class);
 
     /**
-     * Create a new transaction executor.
+     * Batches smaller than this are executed on the calling thread.
+     */
+    private static final int MIN_PARALLEL_BATCH = 16;
+
+    // key prefixes of the conflict detection
+    private static final byte[] KEY_ACCOUNT = { 0 };
+    private static final byte[] KEY_DELEGATE = { 1 };
+    private static final byte[] KEY_NAME = { 2 };
+
+    private ForkJoinPool pool;
+
+    /**
+     * Create a new transaction executor, which uses the common fork-join pool for
+     * parallel execution.
      */
     public TransactionExecutor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new transaction executor.
+     * 
+     * @param pool
+     *            the pool for parallel execution
+     */
+    public TransactionExecutor(ForkJoinPool pool) {
+        this.pool = pool;
     }
 
     /**
@@ -48,83 +77,219 @@ public class TransactionExecutor {
         List<TransactionResult> results = new ArrayList<>();
 
         for (Transaction tx : txs) {
-            TransactionResult result = new TransactionResult();
-            results.add(result);
-
-            byte[] from = tx.getFrom();
-            Account fromAcc = as.getAccount(from);
-            byte[] to = tx.getTo();
-            Account toAcc = as.getAccount(to);
-            long value = tx.getValue();
-            long nonce = tx.getNonce();
-            long fee = tx.getFee();
-            byte[] data = tx.getData();
-
-            // check nonce
-            if (nonce != fromAcc.getNonce()) {
-                continue;
-            }
+            results.add(executeOne(tx, as, ds));
+        }
+
+        return results;
+    }
 
-            long balance = fromAcc.getBalance();
-            switch (tx.getType()) {
-            case TRANSFER: {
-                if (fee <= balance && value <= balance && value + fee <= balance) {
-                    // transfer balance
-                    fromAcc.setBalance(fromAcc.getBalance() - value - fee);
-                    toAcc.setBalance(toAcc.getBalance() + value);
+    /**
+     * Execute a list of transactions in parallel. Transactions are grouped into
+     * batches that touch disjoint accounts and delegates; each batch is run on
+     * the fork-join pool after the previous one has completed, with every
+     * transaction updating its own branch of the state, and the branches are
+     * committed in transaction order. The results are identical to sequential
+     * execution.
+     * 
+     * NOTE: transaction format and signature are assumed to be valid.
+     * 
+     * @param txs
+     *            transactions
+     * @param as
+     *            account state
+     * @param ds
+     *            delegate state
+     * @return
+     */
+    public List<TransactionResult> executeParallel(List<Transaction> txs, AccountState as, DelegateState ds) {
+        TransactionResult[] results = new TransactionResult[txs.size()];
 
-                    result.setValid(true);
+        for (List<Integer> batch : schedule(txs)) {
+            if (batch.size() < MIN_PARALLEL_BATCH) {
+                for (int i : batch) {
+                    results[i] = executeOne(txs.get(i), as, ds);
                 }
-                break;
-            }
-            case DELEGATE: {
-                if (fee <= balance && value <= balance && value + fee <= balance //
-                        && Arrays.equals(from, to) //
-                        && value >= Config.MIN_DELEGATE_FEE //
-                        && data.length <= 16 && Bytes.toString(data).matches("[_a-z0-9]{4,16}") //
-                        && ds.register(to, data)) {
-                    // register delegate
-                    fromAcc.setBalance(fromAcc.getBalance() - value - fee);
-
-                    result.setValid(true);
+            } else {
+                AccountState[] accountStates = new AccountState[batch.size()];
+                DelegateState[] delegateStates = new DelegateState[batch.size()];
+                for (int j = 0; j < batch.size(); j++) {
+                    accountStates[j] = as.branch();
+                    delegateStates[j] = ds.branch();
                 }
-                break;
-            }
-            case VOTE: {
-                if (fee <= balance && value <= balance && value + fee <= balance //
-                        && ds.vote(from, to, value)) {
-                    // lock balance
-                    fromAcc.setBalance(fromAcc.getBalance() - value - fee);
-                    fromAcc.setLocked(fromAcc.getLocked() + value);
-
-                    result.setValid(true);
+
+                pool.submit(() -> IntStream.range(0, batch.size()).parallel().forEach(j -> {
+                    int i = batch.get(j);
+                    results[i] = executeOne(txs.get(i), accountStates[j], delegateStates[j]);
+                })).join();
+
+                for (int j = 0; j < batch.size(); j++) {
+                    accountStates[j].commit();
+                    delegateStates[j].commit();
                 }
-                break;
             }
-            case UNVOTE: {
-                if (fee <= balance //
-                        && value <= fromAcc.getLocked() //
-                        && ds.unvote(from, to, value)) {
-                    // unlock balance
-                    fromAcc.setBalance(fromAcc.getBalance() + value - fee);
-                    fromAcc.setLocked(fromAcc.getLocked() - value);
-
-                    result.setValid(true);
+        }
+
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Groups transactions into conflict-free batches. A transaction is put into
+     * the batch after the last one which touches any of its keys, so that
+     * dependent transactions keep their order.
+     * 
+     * @param txs
+     * @return the batches, each of which is a list of transaction indices
+     */
+    protected List<List<Integer>> schedule(List<Transaction> txs) {
+        List<List<Integer>> batches = new ArrayList<>();
+        Map<ByteArray, Integer> last = new HashMap<>();
+
+        for (int i = 0; i < txs.size(); i++) {
+            List<ByteArray> keys = getTouchedKeys(txs.get(i));
+
+            int b = 0;
+            for (ByteArray k : keys) {
+                Integer n = last.get(k);
+                if (n != null) {
+                    b = Math.max(b, n + 1);
                 }
-                break;
             }
-            default:
-                logger.debug("Unsupported transaction type: {}", tx.getType());
-                break;
+
+            if (b == batches.size()) {
+                batches.add(new ArrayList<>());
+            }
+            batches.get(b).add(i);
+
+            for (ByteArray k : keys) {
+                last.put(k, b);
+            }
+        }
+
+        return batches;
+    }
+
+    /**
+     * Returns the state keys which may be read or written by a transaction.
+     * 
+     * @param tx
+     * @return
+     */
+    protected List<ByteArray> getTouchedKeys(Transaction tx) {
+        List<ByteArray> keys = new ArrayList<>();
+        keys.add(getAccountKey(tx.getFrom()));
+        keys.add(getAccountKey(tx.getTo()));
+
+        switch (tx.getType()) {
+        case DELEGATE:
+            keys.add(ByteArray.of(Bytes.merge(KEY_NAME, tx.getData())));
+            keys.add(ByteArray.of(Bytes.merge(KEY_DELEGATE, tx.getTo())));
+            break;
+        case VOTE:
+        case UNVOTE:
+            keys.add(ByteArray.of(Bytes.merge(KEY_DELEGATE, tx.getTo())));
+            break;
+        default:
+            break;
+        }
+
+        return keys;
+    }
+
+    /**
+     * Returns the state key of an account, as used by
+     * {@link #getTouchedKeys(Transaction)}.
+     * 
+     * @param address
+     * @return
+     */
+    protected ByteArray getAccountKey(byte[] address) {
+        return ByteArray.of(Bytes.merge(KEY_ACCOUNT, address));
+    }
+
+    /**
+     * Execute one transaction, without wrapping.
+     * 
+     * @param tx
+     * @param as
+     * @param ds
+     * @return
+     */
+    protected TransactionResult executeOne(Transaction tx, AccountState as, DelegateState ds) {
+        TransactionResult result = new TransactionResult();
+
+        byte[] from = tx.getFrom();
+        Account fromAcc = as.getAccount(from);
+        byte[] to = tx.getTo();
+        Account toAcc = as.getAccount(to);
+        long value = tx.getValue();
+        long nonce = tx.getNonce();
+        long fee = tx.getFee();
+        byte[] data = tx.getData();
+
+        // check nonce
+        if (nonce != fromAcc.getNonce()) {
+            return result;
+        }
+
+        long balance = fromAcc.getBalance();
+        switch (tx.getType()) {
+        case TRANSFER: {
+            if (fee <= balance && value <= balance && value + fee <= balance) {
+                // transfer balance
+                fromAcc.setBalance(fromAcc.getBalance() - value - fee);
+                toAcc.setBalance(toAcc.getBalance() + value);
+
+                result.setValid(true);
+            }
+            break;
+        }
+        case DELEGATE: {
+            if (fee <= balance && value <= balance && value + fee <= balance //
+                    && Arrays.equals(from, to) //
+                    && value >= Config.MIN_DELEGATE_FEE //
+                    && data.length <= 16 && Bytes.toString(data).matches("[_a-z0-9]{4,16}") //
+                    && ds.register(to, data)) {
+                // register delegate
+                fromAcc.setBalance(fromAcc.getBalance() - value - fee);
+
+                result.setValid(true);
             }
+            break;
+        }
+        case VOTE: {
+            if (fee <= balance && value <= balance && value + fee <= balance //
+                    && ds.vote(from, to, value)) {
+                // lock balance
+                fromAcc.setBalance(fromAcc.getBalance() - value - fee);
+                fromAcc.setLocked(fromAcc.getLocked() + value);
 
-            // increase nonce if valid
-            if (result.isValid()) {
-                fromAcc.setNonce(nonce + 1);
+                result.setValid(true);
             }
+            break;
         }
+        case UNVOTE: {
+            if (fee <= balance //
+                    && value <= fromAcc.getLocked() //
+                    && ds.unvote(from, to, value)) {
+                // unlock balance
+                fromAcc.setBalance(fromAcc.getBalance() + value - fee);
+                fromAcc.setLocked(fromAcc.getLocked() - value);
 
-        return results;
+                result.setValid(true);
+            }
+            break;
+        }
+        default:
+            logger.debug("Unsupported transaction type: {}", tx.getType());
+            break;
+        }
+
+        // increase nonce if valid
+        if (result.isValid()) {
+            fromAcc.setNonce(nonce + 1);
+        }
+
+        return result;
     }
 
     /**
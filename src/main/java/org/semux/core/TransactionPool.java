@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.semux.utils.ByteArray;
+
+/**
+ * Pool of pending transactions, kept in per-sender queues ordered by nonce.
+ * Only the head of each queue is executable; the heads are indexed by fee, so
+ * the best transactions can be taken without sorting the whole pool, and the
+ * tails are indexed by fee so the cheapest can be evicted.
+ *
+ * Transactions of the same fee are ordered by arrival.
+ *
+ * This class is not thread-safe.
+ */
+public class TransactionPool {
+
+    /**
+     * Higher fee first, then earlier arrival.
+     */
+    private static final Comparator<Entry> BY_FEE_DESC = (a, b) -> {
+        int c = Long.compare(b.tx.getFee(), a.tx.getFee());
+        return c != 0 ? c : Long.compare(a.seq, b.seq);
+    };
+
+    /**
+     * Lower fee first, then later arrival.
+     */
+    private static final Comparator<Entry> BY_FEE_ASC = BY_FEE_DESC.reversed();
+
+    /**
+     * Estimated memory of the entry and index nodes of a pooled transaction.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final Map<ByteArray, TreeMap<Long, Entry>> senders = new HashMap<>();
+    private final Map<ByteArray, Entry> hashes = new HashMap<>();
+
+    private final TreeSet<Entry> heads = new TreeSet<>(BY_FEE_DESC);
+    private final TreeSet<Entry> tails = new TreeSet<>(BY_FEE_ASC);
+
+    private long seq;
+    private long memory;
+
+    /**
+     * Adds a transaction, which must follow the last one of its sender.
+     *
+     * @param tx
+     * @return false if the transaction is already in the pool or doesn't follow
+     *         its sender's queue, otherwise true
+     */
+    public boolean add(Transaction tx) {
+        ByteArray hash = ByteArray.of(tx.getHash());
+        if (hashes.containsKey(hash)) {
+            return false;
+        }
+
+        ByteArray sender = ByteArray.of(tx.getFrom());
+        TreeMap<Long, Entry> queue = senders.get(sender);
+        if (queue != null && queue.lastKey() + 1 != tx.getNonce()) {
+            return false;
+        }
+
+        Entry e = new Entry(tx, sender, hash, seq++);
+        if (queue == null) {
+            queue = new TreeMap<>();
+            senders.put(sender, queue);
+            heads.add(e);
+        } else {
+            tails.remove(queue.lastEntry().getValue());
+        }
+        queue.put(tx.getNonce(), e);
+        tails.add(e);
+        hashes.put(hash, e);
+        memory += sizeOf(tx);
+
+        return true;
+    }
+
+    /**
+     * Removes a transaction. The later transactions of its sender stay in the
+     * pool.
+     *
+     * @param hash
+     * @return the removed transaction, or null if not found
+     */
+    public Transaction remove(byte[] hash) {
+        Entry e = hashes.get(ByteArray.of(hash));
+        if (e == null) {
+            return null;
+        }
+
+        TreeMap<Long, Entry> queue = senders.get(e.sender);
+        boolean isHead = queue.firstEntry().getValue() == e;
+        boolean isTail = queue.lastEntry().getValue() == e;
+
+        queue.remove(e.tx.getNonce());
+        hashes.remove(e.hash);
+        memory -= sizeOf(e.tx);
+        if (isHead) {
+            heads.remove(e);
+        }
+        if (isTail) {
+            tails.remove(e);
+        }
+
+        if (queue.isEmpty()) {
+            senders.remove(e.sender);
+        } else if (isHead) {
+            heads.add(queue.firstEntry().getValue());
+        } else if (isTail) {
+            tails.add(queue.lastEntry().getValue());
+        }
+
+        return e.tx;
+    }
+
+    /**
+     * Removes the last transaction of the sender whose last transaction has the
+     * lowest fee.
+     *
+     * @return the evicted transaction, or null if the pool is empty
+     */
+    public Transaction evict() {
+        return tails.isEmpty() ? null : remove(tails.first().tx.getHash());
+    }
+
+    /**
+     * Returns the lowest fee among the transactions which can be evicted.
+     *
+     * @return the fee, or -1 if the pool is empty
+     */
+    public long getLowestFee() {
+        return tails.isEmpty() ? -1 : tails.first().tx.getFee();
+    }
+
+    /**
+     * Returns whether the pool contains a transaction.
+     *
+     * @param hash
+     * @return
+     */
+    public boolean contains(byte[] hash) {
+        return hashes.containsKey(ByteArray.of(hash));
+    }
+
+    /**
+     * Returns a transaction in the pool.
+     *
+     * @param hash
+     * @return the transaction, or null if not found
+     */
+    public Transaction get(byte[] hash) {
+        Entry e = hashes.get(ByteArray.of(hash));
+        return e == null ? null : e.tx;
+    }
+
+    /**
+     * Returns the nonce following the last transaction of a sender.
+     *
+     * @param sender
+     * @return the nonce, or -1 if the sender has no transactions in the pool
+     */
+    public long getNextNonce(byte[] sender) {
+        TreeMap<Long, Entry> queue = senders.get(ByteArray.of(sender));
+        return queue == null ? -1 : queue.lastKey() + 1;
+    }
+
+    /**
+     * Returns the number of transactions in the pool.
+     *
+     * @return
+     */
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * Returns the estimated memory taken by the pool, in bytes.
+     *
+     * @return
+     */
+    public long getMemorySize() {
+        return memory;
+    }
+
+    /**
+     * Returns the estimated memory a transaction would take in the pool.
+     *
+     * @param tx
+     * @return
+     */
+    public static long sizeOf(Transaction tx) {
+        return tx.getMemorySize() + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Returns the number of senders with transactions in the pool.
+     *
+     * @return
+     */
+    public int getSenderCount() {
+        return senders.size();
+    }
+
+    /**
+     * Selects transactions by fee, taking each sender's transactions in nonce
+     * order. It takes O(k log n) time for k transactions.
+     *
+     * @param limit
+     *            max number of transactions, or -1 for all
+     * @return
+     */
+    public List<Transaction> select(int limit) {
+        int n = (limit == -1) ? size() : Math.min(limit, size());
+        List<Transaction> txs = new ArrayList<>(n);
+
+        // heads not taken yet, and the successors of the taken transactions
+        Iterator<Entry> it = heads.iterator();
+        Entry next = it.hasNext() ? it.next() : null;
+        PriorityQueue<Entry> successors = new PriorityQueue<>(BY_FEE_DESC);
+
+        while (txs.size() < n) {
+            Entry e;
+            if (next != null && (successors.isEmpty() || BY_FEE_DESC.compare(next, successors.peek()) < 0)) {
+                e = next;
+                next = it.hasNext() ? it.next() : null;
+            } else if (!successors.isEmpty()) {
+                e = successors.poll();
+            } else {
+                break;
+            }
+            txs.add(e.tx);
+
+            Map.Entry<Long, Entry> succ = senders.get(e.sender).higherEntry(e.tx.getNonce());
+            if (succ != null && succ.getKey() == e.tx.getNonce() + 1) {
+                successors.add(succ.getValue());
+            }
+        }
+
+        return txs;
+    }
+
+    /**
+     * Returns the earliest timestamp of the transactions.
+     *
+     * @return the timestamp, or Long.MAX_VALUE if the pool is empty
+     */
+    public long getEarliestTimestamp() {
+        long min = Long.MAX_VALUE;
+        for (Entry e : hashes.values()) {
+            min = Math.min(min, e.tx.getTimestamp());
+        }
+        return min;
+    }
+
+    /**
+     * Returns all the transactions in the order they were added.
+     *
+     * @return
+     */
+    public List<Transaction> getTransactionsByArrival() {
+        List<Entry> entries = new ArrayList<>(hashes.values());
+        entries.sort(Comparator.comparingLong(e -> e.seq));
+
+        List<Transaction> txs = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            txs.add(e.tx);
+        }
+        return txs;
+    }
+
+    /**
+     * Removes all the transactions.
+     */
+    public void clear() {
+        senders.clear();
+        hashes.clear();
+        heads.clear();
+        tails.clear();
+        memory = 0;
+    }
+
+    private static class Entry {
+        final Transaction tx;
+        final ByteArray sender;
+        final ByteArray hash;
+        final long seq;
+
+        Entry(Transaction tx, ByteArray sender, ByteArray hash, long seq) {
+            this.tx = tx;
+            this.sender = sender;
+            this.hash = hash;
+            this.seq = seq;
+        }
+    }
+}
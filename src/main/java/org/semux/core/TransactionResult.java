@@ -102,7 +102,19 @@ public class TransactionResult {
     }
 
     public static TransactionResult fromBytes(byte[] bytes) {
-        SimpleDecoder dec = new SimpleDecoder(bytes);
+        return fromBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parse a transaction result from a range of a byte array.
+     * 
+     * @param bytes
+     * @param from
+     * @param to
+     * @return
+     */
+    public static TransactionResult fromBytes(byte[] bytes, int from, int to) {
+        SimpleDecoder dec = new SimpleDecoder(bytes, from, to);
         boolean valid = dec.readBoolean();
         byte[] returns = dec.readBytes();
         List<byte[]> logs = new ArrayList<>();
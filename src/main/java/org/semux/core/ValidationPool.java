@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.semux.crypto.BatchVerifier;
+import org.semux.crypto.SignatureCache;
+
+/**
+ * Node-wide work-stealing pool for validating the transactions of blocks. The
+ * transactions are split into chunks, each verified as one signature batch where
+ * the rule allows, and idle workers steal the chunks of busy ones.
+ *
+ * This class is thread-safe.
+ */
+public class ValidationPool {
+
+    /**
+     * Chunks smaller than this are not split further.
+     */
+    public static final int MIN_CHUNK_SIZE = 4 * BatchVerifier.MIN_BATCH_SIZE;
+
+    /**
+     * Number of chunks per worker, so there's something to steal.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final long createdAt = System.nanoTime();
+
+    private final AtomicLong busyTime = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+
+    /**
+     * Create a validation pool.
+     *
+     * @param nThreads
+     *            number of worker threads, or 0 for the number of CPU cores
+     */
+    public ValidationPool(int nThreads) {
+        int n = nThreads > 0 ? nThreads : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger cnt = new AtomicInteger(0);
+        this.pool = new ForkJoinPool(n, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("block-validator-" + cnt.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    /**
+     * Validate the format and signatures of the given transactions.
+     *
+     * @param txs
+     * @param cofactored
+     *            whether the signatures are verified with the cofactored equation
+     * @return true if all valid, otherwise false
+     */
+    public boolean validate(List<Transaction> txs, boolean cofactored) {
+        if (txs.isEmpty()) {
+            return true;
+        }
+
+        ValidateAction action = new ValidateAction(txs, chunkSize(txs.size()), cofactored, new AtomicBoolean(false));
+
+        try {
+            pool.invoke(action);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        return !action.invalid.get();
+    }
+
+    /**
+     * Verify the signatures of the given transactions, whose formats have been
+     * validated, reporting each transaction separately.
+     *
+     * @param txs
+     * @param cofactored
+     *            whether the signatures are verified with the cofactored equation
+     * @return the validity of each transaction
+     */
+    public boolean[] verify(List<Transaction> txs, boolean cofactored) {
+        boolean[] valid = new boolean[txs.size()];
+        if (!txs.isEmpty()) {
+            pool.invoke(new VerifyAction(txs, 0, chunkSize(txs.size()), cofactored, valid));
+        }
+        return valid;
+    }
+
+    /**
+     * Verify the signatures of the given transactions, on the calling thread.
+     *
+     * @param txs
+     * @param cofactored
+     *            whether the signatures are verified with the cofactored equation
+     * @return the validity of each transaction
+     */
+    static boolean[] verifyEach(List<Transaction> txs, boolean cofactored) {
+        BatchVerifier verifier = new BatchVerifier(SignatureCache.getInstance(), cofactored);
+        for (Transaction tx : txs) {
+            verifier.add(tx.getHash(), tx.getSignature());
+        }
+        return verifier.verifyEach();
+    }
+
+    /**
+     * Submit a validation task, e.g. the stateless checks of a block, to run ahead
+     * of its use.
+     *
+     * @param task
+     * @return
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return pool.submit(task);
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Returns the number of workers currently validating.
+     *
+     * @return
+     */
+    public int getActiveCount() {
+        return pool.getActiveThreadCount();
+    }
+
+    /**
+     * Returns the number of submitted or forked tasks waiting to be executed.
+     *
+     * @return
+     */
+    public long getQueueDepth() {
+        return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+    }
+
+    /**
+     * Returns the fraction of worker time spent on validation since the pool was
+     * created.
+     *
+     * @return a number between 0 and 1
+     */
+    public double getUtilization() {
+        long elapsed = System.nanoTime() - createdAt;
+        return elapsed <= 0 ? 0 : Math.min(1.0, (double) busyTime.get() / elapsed / getParallelism());
+    }
+
+    /**
+     * Returns the number of transactions validated.
+     *
+     * @return
+     */
+    public long getTransactionCount() {
+        return transactions.get();
+    }
+
+    /**
+     * Returns the number of chunks validated.
+     *
+     * @return
+     */
+    public long getChunkCount() {
+        return chunks.get();
+    }
+
+    /**
+     * Stop the pool, waiting for the running validations to complete.
+     */
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ValidationPool [threads = " + getParallelism() + ", active = " + getActiveCount() + ", queued = "
+                + getQueueDepth() + ", utilization = " + String.format("%.2f", getUtilization())
+                + ", transactions = " + getTransactionCount() + ", chunks = " + getChunkCount() + "]";
+    }
+
+    private int chunkSize(int n) {
+        int chunks = getParallelism() * CHUNKS_PER_THREAD;
+        return Math.max(MIN_CHUNK_SIZE, (n + chunks - 1) / chunks);
+    }
+
+    /**
+     * Validates a range of transactions, splitting it in halves until it fits into
+     * one chunk.
+     */
+    private class ValidateAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Transaction> txs;
+        private final int chunk;
+        private final boolean cofactored;
+        private final AtomicBoolean invalid;
+
+        ValidateAction(List<Transaction> txs, int chunk, boolean cofactored, AtomicBoolean invalid) {
+            this.txs = txs;
+            this.chunk = chunk;
+            this.cofactored = cofactored;
+            this.invalid = invalid;
+        }
+
+        @Override
+        protected void compute() {
+            if (invalid.get()) {
+                return;
+            }
+
+            if (txs.size() > chunk) {
+                int half = txs.size() / 2;
+                invokeAll(new ValidateAction(txs.subList(0, half), chunk, cofactored, invalid),
+                        new ValidateAction(txs.subList(half, txs.size()), chunk, cofactored, invalid));
+            } else {
+                long t1 = System.nanoTime();
+                if (!Block.validateTransactions(txs, cofactored)) {
+                    invalid.set(true);
+                }
+                busyTime.addAndGet(System.nanoTime() - t1);
+                transactions.addAndGet(txs.size());
+                chunks.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Verifies the signatures of a range of transactions, writing the results
+     * into the shared array.
+     */
+    private class VerifyAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Transaction> txs;
+        private final int offset;
+        private final int chunk;
+        private final boolean cofactored;
+        private final boolean[] valid;
+
+        VerifyAction(List<Transaction> txs, int offset, int chunk, boolean cofactored, boolean[] valid) {
+            this.txs = txs;
+            this.offset = offset;
+            this.chunk = chunk;
+            this.cofactored = cofactored;
+            this.valid = valid;
+        }
+
+        @Override
+        protected void compute() {
+            if (txs.size() > chunk) {
+                int half = txs.size() / 2;
+                invokeAll(new VerifyAction(txs.subList(0, half), offset, chunk, cofactored, valid),
+                        new VerifyAction(txs.subList(half, txs.size()), offset + half, chunk, cofactored, valid));
+            } else {
+                long t1 = System.nanoTime();
+                boolean[] result = verifyEach(txs, cofactored);
+                System.arraycopy(result, 0, valid, offset, result.length);
+                busyTime.addAndGet(System.nanoTime() - t1);
+                transactions.addAndGet(txs.size());
+                chunks.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semux.crypto.Hex;
+import org.semux.utils.ByteArray;
+
+/**
+ * An immutable, ordered set of validators, with constant-time membership and
+ * index lookup by address.
+ */
+public class ValidatorSet {
+
+    private final List<ByteArray> addresses;
+    private final Map<ByteArray, Integer> indexes = new HashMap<>();
+
+    private final List<String> peerIds;
+    private final Map<String, Integer> peerIdIndexes = new HashMap<>();
+
+    /**
+     * Create a validator set.
+     * 
+     * @param addresses
+     *            the validator addresses, in order
+     */
+    public ValidatorSet(List<byte[]> addresses) {
+        List<ByteArray> list = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (byte[] address : addresses) {
+            ByteArray a = ByteArray.of(address.clone());
+            String id = Hex.encode(address);
+
+            indexes.put(a, list.size());
+            peerIdIndexes.put(id, ids.size());
+            list.add(a);
+            ids.add(id);
+        }
+
+        this.addresses = Collections.unmodifiableList(list);
+        this.peerIds = Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Returns the number of validators.
+     * 
+     * @return
+     */
+    public int size() {
+        return addresses.size();
+    }
+
+    /**
+     * Returns the address of the i-th validator.
+     * 
+     * @param i
+     * @return
+     */
+    public byte[] get(int i) {
+        return addresses.get(i).getData().clone();
+    }
+
+    /**
+     * Returns whether the given address is a validator.
+     * 
+     * @param address
+     * @return
+     */
+    public boolean contains(byte[] address) {
+        return indexes.containsKey(ByteArray.of(address));
+    }
+
+    /**
+     * Returns whether the given peer id is a validator.
+     * 
+     * @param peerId
+     *            the address in hex
+     * @return
+     */
+    public boolean contains(String peerId) {
+        return peerIdIndexes.containsKey(peerId);
+    }
+
+    /**
+     * Returns the position of the given address in this set.
+     * 
+     * @param address
+     * @return the index, or -1 if not a validator
+     */
+    public int indexOf(byte[] address) {
+        Integer idx = indexes.get(ByteArray.of(address));
+        return (idx == null) ? -1 : idx;
+    }
+
+    /**
+     * Returns the position of the given peer id in this set.
+     * 
+     * @param peerId
+     *            the address in hex
+     * @return the index, or -1 if not a validator
+     */
+    public int indexOf(String peerId) {
+        Integer idx = peerIdIndexes.get(peerId);
+        return (idx == null) ? -1 : idx;
+    }
+
+    /**
+     * Returns the validators as peer ids, i.e. addresses in hex.
+     * 
+     * @return an unmodifiable list
+     */
+    public List<String> getPeerIds() {
+        return peerIds;
+    }
+
+    @Override
+    public String toString() {
+        return "ValidatorSet " + peerIds;
+    }
+}
@@ -22,6 +22,13 @@ public interface AccountState {
      */
     public AccountState track();
 
+    /**
+     * Make an overlay with its own updates, which reads through to this state
+     * until committed into it. Unlike snapshots, branches of the same state can
+     * be updated concurrently, as long as this state is not.
+     */
+    public AccountState branch();
+
     /**
      * Commit all updates since last snapshot.
      */
@@ -6,208 +6,321 @@
  */
 package org.semux.core.state;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.semux.core.Account;
+import org.semux.crypto.Hash;
 import org.semux.db.KVDB;
 import org.semux.utils.ByteArray;
 import org.semux.utils.Bytes;
+import org.semux.utils.ClosableIterator;
+import org.semux.utils.SimpleDecoder;
+import org.semux.utils.SimpleEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Account state implementation.
- * 
+ *
  * <pre>
  * account DB structure:
- * 
- * [address, 0] => [balance]
- * [address, 1] => [locked]
- * [address, 2] => [nonce]
- * [address, 3] => [code]
- * [address, 4, storage_key] = [storage_value]
+ *
+ * ["account_version"] => [version]
+ * [address] => [balance, locked, nonce, code_hash]
+ * [address, 4, key] => [storage_value]
+ * [code_hash] => [code]
  * </pre>
+ *
+ * Tracking the database-backed state creates an overlay, which keeps the
+ * accessed accounts and the updates in flat maps. Tracking an overlay again
+ * does not add a layer; the nested state shares the maps of the overlay and
+ * only remembers an offset into its {@link Journal}, so lookups take constant
+ * time regardless of nesting depth. Nested snapshots must be committed or
+ * rolled back in reverse order of creation.
+ *
+ * A branch, in contrast, is an overlay with its own maps and journal stacked on
+ * another state, so that several of them can be updated concurrently.
  */
 public class AccountStateImpl implements AccountState {
 
+    private static final Logger logger = LoggerFactory.getLogger(AccountStateImpl.class);
+
+    private static final byte[] KEY_VERSION = Bytes.of("account_version");
+    private static final int VERSION = 1;
+
+    // legacy account keys, [address, type]
     private static byte BALANCE = 0;
     private static byte LOCKED = 1;
     private static byte NONCE = 2;
     private static byte CODE = 3;
+
     private static byte STORAGE = 4;
 
+    static final int MAX_CACHED_ACCOUNTS = 64 * 1024;
+
     private KVDB accountDB;
-    private AccountStateImpl prev;
 
     /**
-     * All updates, or deletes if the value is null.
+     * The state this overlay reads through to and commits into, which is the
+     * database-backed state unless this is a branch; null for the root.
+     */
+    private AccountStateImpl parent;
+
+    /**
+     * Undo log, shared by an overlay and its nested states; null for the root.
+     */
+    private Journal journal;
+
+    /**
+     * Journal offset of the last snapshot, or -1 for the overlay itself.
+     */
+    private int checkpoint = -1;
+
+    /**
+     * All updates of code and storage, or deletes if the value is null.
+     */
+    protected Map<ByteArray, byte[]> updates;
+
+    /**
+     * Decoded accounts. Accounts of an overlay read through to the root until
+     * updated; the root keeps them across commits, up to
+     * {@link #MAX_CACHED_ACCOUNTS}, after which they are evicted and the overlays
+     * look them up again.
      */
-    protected Map<ByteArray, byte[]> updates = new ConcurrentHashMap<>();
+    protected Map<ByteArray, AccountImpl> accounts;
 
     /**
      * Create an AcccountState that work directly on a database.
-     * 
+     *
      * @param accountDB
      */
     public AccountStateImpl(KVDB accountDB) {
         this.accountDB = accountDB;
+        this.updates = new ConcurrentHashMap<>();
+        this.accounts = new ConcurrentHashMap<>();
+
+        byte[] version = accountDB.get(KEY_VERSION);
+        if (version == null || Bytes.toInt(version) < VERSION) {
+            migrate();
+        }
     }
 
     /**
      * Create an AcccountState based on a previous AccountState.
-     * 
+     *
      * @param prev
      */
     public AccountStateImpl(AccountStateImpl prev) {
-        this.prev = prev;
+        if (prev.parent == null) {
+            this.parent = prev;
+            this.journal = new Journal();
+            this.updates = new ConcurrentHashMap<>();
+            this.accounts = new ConcurrentHashMap<>();
+        } else {
+            this.parent = prev.parent;
+            this.journal = prev.journal;
+            this.checkpoint = journal.size();
+            this.updates = prev.updates;
+            this.accounts = prev.accounts;
+        }
     }
 
     @Override
     public Account getAccount(byte[] addr) {
-        return new Account() {
-            private ByteArray keyBalance = getKey(addr, BALANCE);
-            private ByteArray keyLocked = getKey(addr, LOCKED);
-            private ByteArray keyNonce = getKey(addr, NONCE);
-            private ByteArray keyCode = getKey(addr, CODE);
-
-            private Account acc = (prev == null) ? null : prev.getAccount(addr);
+        return getAccountImpl(addr);
+    }
 
-            @Override
-            public byte[] getAddress() {
-                return addr;
-            }
+    /**
+     * Create an overlay with its own updates and journal, based on another
+     * state.
+     *
+     * @param parent
+     * @param journal
+     */
+    private AccountStateImpl(AccountStateImpl parent, Journal journal) {
+        this.parent = parent;
+        this.journal = journal;
+        this.updates = new ConcurrentHashMap<>();
+        this.accounts = new ConcurrentHashMap<>();
+    }
 
-            @Override
-            public long getBalance() {
-                if (updates.containsKey(keyBalance)) {
-                    return Bytes.toLong(updates.get(keyBalance));
-                } else if (acc != null) {
-                    return acc.getBalance();
-                } else {
-                    byte[] bytes = accountDB.get(keyBalance.getData());
-                    return bytes == null ? 0 : Bytes.toLong(bytes);
-                }
-            }
+    @Override
+    public AccountState track() {
+        return new AccountStateImpl(this);
+    }
 
-            @Override
-            public void setBalance(long balance) {
-                updates.put(keyBalance, Bytes.of(balance));
-            }
+    @Override
+    public AccountState branch() {
+        return new AccountStateImpl(this, new Journal());
+    }
 
-            @Override
-            public long getLocked() {
-                if (updates.containsKey(keyLocked)) {
-                    return Bytes.toLong(updates.get(keyLocked));
-                } else if (acc != null) {
-                    return acc.getLocked();
-                } else {
-                    byte[] bytes = accountDB.get(keyLocked.getData());
-                    return bytes == null ? 0 : Bytes.toLong(bytes);
+    @Override
+    public void commit() {
+        synchronized (updates) {
+            if (parent == null) {
+                List<Pair<byte[], byte[]>> pairs = new ArrayList<>(updates.size() + accounts.size());
+                for (Entry<ByteArray, byte[]> e : updates.entrySet()) {
+                    pairs.add(Pair.of(e.getKey().getData(), e.getValue()));
                 }
-            }
-
-            @Override
-            public void setLocked(long locked) {
-                updates.put(keyLocked, Bytes.of(locked));
-            }
-
-            @Override
-            public long getNonce() {
-                if (updates.containsKey(keyNonce)) {
-                    return Bytes.toLong(updates.get(keyNonce));
-                } else if (acc != null) {
-                    return acc.getNonce();
-                } else {
-                    byte[] bytes = accountDB.get(keyNonce.getData());
-                    return bytes == null ? 0 : Bytes.toLong(bytes);
+                for (AccountImpl acc : accounts.values()) {
+                    if (acc.updated != 0) {
+                        pairs.add(Pair.of(acc.address, acc.toBytes()));
+                        acc.updated = 0;
+                    }
                 }
-            }
+                accountDB.updateBatch(pairs);
+                updates.clear();
 
-            @Override
-            public void setNonce(long nonce) {
-                updates.put(keyNonce, Bytes.of(nonce));
+                // the decoded accounts are kept, as overlays refer to them; evicted
+                // ones are marked, so the overlays don't read them after updates
+                // have gone to their replacements
+                if (accounts.size() > MAX_CACHED_ACCOUNTS) {
+                    List<AccountImpl> evicted = new ArrayList<>(accounts.values());
+                    accounts.clear();
+                    for (AccountImpl acc : evicted) {
+                        acc.evicted = true;
+                    }
+                }
+            } else if (checkpoint < 0) {
+                for (Entry<ByteArray, byte[]> e : updates.entrySet()) {
+                    parent.putUpdate(e.getKey(), e.getValue());
+                }
+                for (Entry<ByteArray, AccountImpl> e : accounts.entrySet()) {
+                    if (e.getValue().updated != 0) {
+                        // update in place, as the account may be held by callers
+                        parent.getAccountImpl(e.getKey().getData()).update(e.getValue());
+                    }
+                }
+                updates.clear();
+                accounts.clear();
+                journal.clear();
+            } else {
+                // the updates are already in the overlay
+                checkpoint = journal.size();
             }
+        }
+    }
 
-            @Override
-            public byte[] getCode() {
-                if (updates.containsKey(keyCode)) {
-                    return updates.get(keyCode);
-                } else if (acc != null) {
-                    return acc.getCode();
-                } else {
-                    return accountDB.get(keyCode.getData());
+    @Override
+    public void rollback() {
+        synchronized (updates) {
+            if (checkpoint < 0) {
+                updates.clear();
+                accounts.clear();
+                if (journal != null) {
+                    journal.clear();
                 }
+            } else {
+                journal.revert(checkpoint);
             }
+        }
+    }
 
-            @Override
-            public void setCode(byte[] code) {
-                updates.put(keyCode, code);
-            }
+    /**
+     * Returns the account of this state, which is decoded or created on first
+     * access.
+     *
+     * @param addr
+     * @return
+     */
+    protected AccountImpl getAccountImpl(byte[] addr) {
+        ByteArray k = ByteArray.of(addr);
 
-            @Override
-            public byte[] getStorage(byte[] key) {
-                ByteArray k = getStorageKey(addr, key);
-                if (updates.containsKey(k)) {
-                    return updates.get(k);
-                } else if (acc != null) {
-                    return acc.getStorage(key);
-                } else {
-                    return accountDB.get(k.getData());
+        AccountImpl acc = accounts.get(k);
+        if (acc == null) {
+            if (parent != null) {
+                // atomic, as transactions touching distinct accounts may run concurrently
+                acc = accounts.computeIfAbsent(k, key -> new AccountImpl(addr, parent.getAccountImpl(addr)));
+            } else {
+                // the root layer may be read concurrently with commit
+                synchronized (updates) {
+                    acc = accounts.get(k);
+                    if (acc == null) {
+                        acc = new AccountImpl(addr, accountDB.get(addr));
+                        accounts.put(k, acc);
+                    }
                 }
             }
+        }
 
-            @Override
-            public void putStorage(byte[] key, byte[] value) {
-                ByteArray k = getStorageKey(addr, key);
-                updates.put(k, value);
-            }
+        return acc;
+    }
 
-            @Override
-            public void removeStorage(byte[] key) {
-                ByteArray k = getStorageKey(addr, key);
-                updates.put(k, null);
+    /**
+     * Reads a code or storage entry, from the overlay or the parent.
+     *
+     * @param key
+     * @return
+     */
+    protected byte[] read(ByteArray key) {
+        if (parent == null) {
+            // the root layer may be read concurrently with commit
+            synchronized (updates) {
+                return updates.containsKey(key) ? updates.get(key) : accountDB.get(key.getData());
             }
-        };
+        } else if (updates.containsKey(key)) {
+            return updates.get(key);
+        } else {
+            return parent.read(key);
+        }
     }
 
-    @Override
-    public AccountState track() {
-        return new AccountStateImpl(this);
-    }
+    /**
+     * Converts the accounts stored in the legacy format, one key per field, into
+     * packed records.
+     */
+    protected void migrate() {
+        Map<ByteArray, AccountImpl> legacy = new HashMap<>();
+        List<Pair<byte[], byte[]>> pairs = new ArrayList<>();
 
-    @Override
-    public void commit() {
-        synchronized (updates) {
-            if (prev == null) {
-                for (ByteArray k : updates.keySet()) {
-                    byte[] v = updates.get(k);
-                    if (v == null) {
-                        accountDB.delete(k.getData());
-                    } else {
-                        accountDB.put(k.getData(), v);
-                    }
-                }
+        ClosableIterator<Entry<byte[], byte[]>> itr = accountDB.iterator();
+        while (itr.hasNext()) {
+            Entry<byte[], byte[]> e = itr.next();
+            byte[] key = e.getKey();
+            if (key.length != 21 || key[20] > CODE) {
+                continue;
+            }
+
+            byte[] addr = Arrays.copyOf(key, 20);
+            AccountImpl acc = legacy.computeIfAbsent(ByteArray.of(addr), k -> new AccountImpl(addr, (byte[]) null));
+            if (key[20] == BALANCE) {
+                acc.balance = Bytes.toLong(e.getValue());
+            } else if (key[20] == LOCKED) {
+                acc.locked = Bytes.toLong(e.getValue());
+            } else if (key[20] == NONCE) {
+                acc.nonce = Bytes.toLong(e.getValue());
             } else {
-                for (Entry<ByteArray, byte[]> e : updates.entrySet()) {
-                    prev.updates.put(e.getKey(), e.getValue());
-                }
+                acc.codeHash = Hash.h256(e.getValue());
+                pairs.add(Pair.of(acc.codeHash, e.getValue()));
             }
+            pairs.add(Pair.of(key, null));
+        }
+        itr.close();
 
-            updates.clear();
+        for (AccountImpl acc : legacy.values()) {
+            pairs.add(Pair.of(acc.address, acc.toBytes()));
         }
-    }
+        pairs.add(Pair.of(KEY_VERSION, Bytes.of(VERSION)));
+        accountDB.updateBatch(pairs);
 
-    @Override
-    public void rollback() {
-        updates.clear();
+        if (!legacy.isEmpty()) {
+            logger.info("Migrated {} accounts to the packed format", legacy.size());
+        }
     }
 
-    private ByteArray getKey(byte[] addr, byte type) {
-        byte[] k = Arrays.copyOf(addr, addr.length + 1);
-        k[addr.length] = type;
-
-        return ByteArray.of(k);
+    private void putUpdate(ByteArray key, byte[] value) {
+        if (journal != null) {
+            journal.put(updates, key, value);
+        } else {
+            updates.put(key, value);
+        }
     }
 
     private ByteArray getStorageKey(byte[] addr, byte[] key) {
@@ -217,4 +330,217 @@ public class AccountStateImpl implements AccountState {
 
         return ByteArray.of(k);
     }
+
+    /**
+     * A decoded account, which belongs to either the root or an overlay.
+     */
+    protected class AccountImpl implements Account {
+        private static final int F_BALANCE = 1;
+        private static final int F_LOCKED = 2;
+        private static final int F_NONCE = 4;
+        private static final int F_CODE = 8;
+
+        private byte[] address;
+        private long balance;
+        private long locked;
+        private long nonce;
+        private byte[] codeHash = Bytes.EMPY_BYTES;
+
+        /**
+         * The account of the parent, or null if this is the root.
+         */
+        private volatile AccountImpl base;
+
+        /**
+         * Whether the root no longer holds this account.
+         */
+        private volatile boolean evicted;
+
+        /**
+         * The fields updated in this state; the others are read from the base.
+         */
+        private int updated;
+
+        /**
+         * Decodes an account.
+         *
+         * @param address
+         * @param bytes
+         *            the encoded account, or null if not exist
+         */
+        protected AccountImpl(byte[] address, byte[] bytes) {
+            this.address = address;
+
+            if (bytes != null) {
+                SimpleDecoder dec = new SimpleDecoder(bytes);
+                this.balance = dec.readLong();
+                this.locked = dec.readLong();
+                this.nonce = dec.readLong();
+                this.codeHash = dec.readBytes();
+            }
+        }
+
+        /**
+         * Creates an account which reads through to the account of the parent,
+         * until updated.
+         *
+         * @param address
+         * @param base
+         */
+        protected AccountImpl(byte[] address, AccountImpl base) {
+            this.address = address;
+            this.base = base;
+        }
+
+        /**
+         * Updates this account with the updated fields of another account.
+         *
+         * @param acc
+         */
+        protected void update(AccountImpl acc) {
+            if ((acc.updated & F_BALANCE) != 0) {
+                setBalance(acc.balance);
+            }
+            if ((acc.updated & F_LOCKED) != 0) {
+                setLocked(acc.locked);
+            }
+            if ((acc.updated & F_NONCE) != 0) {
+                setNonce(acc.nonce);
+            }
+            if ((acc.updated & F_CODE) != 0) {
+                setCodeHash(acc.codeHash);
+            }
+        }
+
+        /**
+         * Encodes this account.
+         *
+         * @return
+         */
+        protected byte[] toBytes() {
+            SimpleEncoder enc = new SimpleEncoder();
+            enc.writeLong(getBalance());
+            enc.writeLong(getLocked());
+            enc.writeLong(getNonce());
+            enc.writeBytes(getCodeHash());
+
+            return enc.toBytes();
+        }
+
+        @Override
+        public byte[] getAddress() {
+            return address;
+        }
+
+        @Override
+        public long getBalance() {
+            return (base == null || (updated & F_BALANCE) != 0) ? balance : getBase().getBalance();
+        }
+
+        @Override
+        public void setBalance(long balance) {
+            beforeUpdate();
+            this.balance = balance;
+            markUpdated(F_BALANCE);
+        }
+
+        @Override
+        public long getLocked() {
+            return (base == null || (updated & F_LOCKED) != 0) ? locked : getBase().getLocked();
+        }
+
+        @Override
+        public void setLocked(long locked) {
+            beforeUpdate();
+            this.locked = locked;
+            markUpdated(F_LOCKED);
+        }
+
+        @Override
+        public long getNonce() {
+            return (base == null || (updated & F_NONCE) != 0) ? nonce : getBase().getNonce();
+        }
+
+        @Override
+        public void setNonce(long nonce) {
+            beforeUpdate();
+            this.nonce = nonce;
+            markUpdated(F_NONCE);
+        }
+
+        @Override
+        public byte[] getCode() {
+            byte[] hash = getCodeHash();
+            return (hash.length == 0) ? null : read(ByteArray.of(hash));
+        }
+
+        @Override
+        public void setCode(byte[] code) {
+            byte[] hash = Hash.h256(code);
+            putUpdate(ByteArray.of(hash), code);
+            setCodeHash(hash);
+        }
+
+        @Override
+        public byte[] getStorage(byte[] key) {
+            return read(getStorageKey(address, key));
+        }
+
+        @Override
+        public void putStorage(byte[] key, byte[] value) {
+            putUpdate(getStorageKey(address, key), value);
+        }
+
+        @Override
+        public void removeStorage(byte[] key) {
+            putUpdate(getStorageKey(address, key), null);
+        }
+
+        private byte[] getCodeHash() {
+            return (base == null || (updated & F_CODE) != 0) ? codeHash : getBase().getCodeHash();
+        }
+
+        /**
+         * Returns the account of the parent, looking it up again if it has been
+         * evicted.
+         */
+        private AccountImpl getBase() {
+            AccountImpl b = base;
+            if (b.evicted) {
+                b = parent.getAccountImpl(address);
+                base = b;
+            }
+            return b;
+        }
+
+        private void setCodeHash(byte[] codeHash) {
+            beforeUpdate();
+            this.codeHash = codeHash;
+            markUpdated(F_CODE);
+        }
+
+        private void beforeUpdate() {
+            if (journal != null) {
+                int u = updated;
+                long b = balance;
+                long l = locked;
+                long n = nonce;
+                byte[] c = codeHash;
+                journal.record(() -> {
+                    updated = u;
+                    balance = b;
+                    locked = l;
+                    nonce = n;
+                    codeHash = c;
+                });
+            }
+        }
+
+        private void markUpdated(int field) {
+            updated |= field;
+
+            // in case the state has been committed or rolled back since
+            accounts.put(ByteArray.of(address), this);
+        }
+    }
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core.state;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.semux.core.Delegate;
+import org.semux.utils.ByteArray;
+
+/**
+ * In-memory ranking of delegates, ordered by votes (descending) and then by
+ * name. It's a treap with subtree sizes, so updates, rank lookups and the k-th
+ * delegate take O(log n) time.
+ *
+ * This class is thread-safe.
+ */
+class DelegateRanking {
+
+    private final Map<ByteArray, Node> nodes = new HashMap<>();
+    private final Random random = new Random();
+    private Node root;
+
+    /**
+     * Adds or updates a delegate.
+     *
+     * @param d
+     */
+    public synchronized void put(Delegate d) {
+        remove(d.getAddress());
+
+        Node n = new Node(d, random.nextInt());
+        Node[] parts = split(root, n);
+        root = merge(merge(parts[0], n), parts[1]);
+        nodes.put(ByteArray.of(d.getAddress()), n);
+    }
+
+    /**
+     * Removes a delegate.
+     *
+     * @param address
+     */
+    public synchronized void remove(byte[] address) {
+        Node n = nodes.remove(ByteArray.of(address));
+        if (n != null) {
+            root = remove(root, n);
+        }
+    }
+
+    /**
+     * Returns the number of delegates.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns the rank of a delegate, starting from 0.
+     *
+     * @param address
+     * @return the rank, or -1 if the delegate is not ranked
+     */
+    public synchronized int getRank(byte[] address) {
+        Node n = nodes.get(ByteArray.of(address));
+        if (n == null) {
+            return -1;
+        }
+
+        int rank = 0;
+        Node t = root;
+        while (t != n) {
+            if (compare(n, t) < 0) {
+                t = t.left;
+            } else {
+                rank += size(t.left) + 1;
+                t = t.right;
+            }
+        }
+        return rank + size(t.left);
+    }
+
+    /**
+     * Returns the delegates ranked in [from, to).
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public synchronized List<Delegate> getDelegates(int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(size(root), to);
+
+        List<Delegate> list = new ArrayList<>(Math.max(0, to - from));
+        collect(root, from, to, list);
+        return list;
+    }
+
+    /**
+     * Appends the delegates in [from, to) of a subtree, in order.
+     */
+    private void collect(Node t, int from, int to, List<Delegate> list) {
+        if (t == null || from >= to) {
+            return;
+        }
+
+        int left = size(t.left);
+        if (from < left) {
+            collect(t.left, from, Math.min(to, left), list);
+        }
+        if (from <= left && left < to) {
+            list.add(t.toDelegate());
+        }
+        if (to > left + 1) {
+            collect(t.right, Math.max(0, from - left - 1), to - left - 1, list);
+        }
+    }
+
+    /**
+     * Splits a subtree into the nodes ordered before the given one, and the
+     * others.
+     */
+    private Node[] split(Node t, Node n) {
+        if (t == null) {
+            return new Node[] { null, null };
+        }
+
+        if (compare(t, n) < 0) {
+            Node[] parts = split(t.right, n);
+            t.right = parts[0];
+            t.update();
+            return new Node[] { t, parts[1] };
+        } else {
+            Node[] parts = split(t.left, n);
+            t.left = parts[1];
+            t.update();
+            return new Node[] { parts[0], t };
+        }
+    }
+
+    /**
+     * Merges two subtrees, where all nodes of the first are ordered before the
+     * second.
+     */
+    private Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        } else if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.update();
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            b.update();
+            return b;
+        }
+    }
+
+    private Node remove(Node t, Node n) {
+        if (t == n) {
+            return merge(t.left, t.right);
+        }
+
+        if (compare(n, t) < 0) {
+            t.left = remove(t.left, n);
+        } else {
+            t.right = remove(t.right, n);
+        }
+        t.update();
+        return t;
+    }
+
+    private static int size(Node t) {
+        return (t == null) ? 0 : t.size;
+    }
+
+    private static int compare(Node a, Node b) {
+        // names are unique, so are the nodes
+        int cmp = Long.compare(b.votes, a.votes);
+        return (cmp != 0) ? cmp : a.name.compareTo(b.name);
+    }
+
+    private static class Node {
+        private final byte[] address;
+        private final byte[] rawName;
+        private final String name;
+        private final long registeredAt;
+        private final long votes;
+        private final int priority;
+
+        private Node left;
+        private Node right;
+        private int size = 1;
+
+        Node(Delegate d, int priority) {
+            this.address = d.getAddress();
+            this.rawName = d.getName();
+            this.name = d.getNameString();
+            this.registeredAt = d.getRegisteredAt();
+            this.votes = d.getVotes();
+            this.priority = priority;
+        }
+
+        void update() {
+            size = 1 + DelegateRanking.size(left) + DelegateRanking.size(right);
+        }
+
+        Delegate toDelegate() {
+            return new Delegate(address, rawName, registeredAt, votes);
+        }
+    }
+}
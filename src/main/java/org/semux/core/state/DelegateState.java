@@ -95,11 +95,36 @@ public interface DelegateState {
      */
     public List<Delegate> getDelegates();
 
+    /**
+     * Returns the delegates ranked in [from, to), ordered by votes (descending)
+     * and then by name.
+     * 
+     * @param from
+     * @param to
+     * @return
+     */
+    public List<Delegate> getDelegates(int from, int to);
+
+    /**
+     * Returns the rank of a delegate, starting from 0.
+     * 
+     * @param address
+     * @return the rank, or -1 if the delegate does not exist
+     */
+    public int getRank(byte[] address);
+
     /**
      * Returns a snapshot and starts tracking updates.
      */
     public DelegateState track();
 
+    /**
+     * Returns an overlay with its own updates, which reads through to this state
+     * until committed into it. Unlike snapshots, branches of the same state can
+     * be updated concurrently, as long as this state is not.
+     */
+    public DelegateState branch();
+
     /**
      * Commits all updates since last snapshot.
      */
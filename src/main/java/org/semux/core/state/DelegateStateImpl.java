@@ -14,6 +14,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.semux.core.Blockchain;
 import org.semux.core.Delegate;
 import org.semux.db.KVDB;
@@ -41,6 +42,14 @@ import org.slf4j.LoggerFactory;
  * [delegate, voter] => vote
  * </pre>
  *
+ * Like {@link AccountStateImpl}, tracking the database-backed state creates a
+ * flat overlay, and tracking an overlay again creates a nested snapshot which
+ * shares its maps and is reverted through the journal, while a branch is an
+ * overlay of its own stacked on another state.
+ *
+ * The database-backed state maintains a {@link DelegateRanking}, which is
+ * built on first use and updated as delegate records change, so ranking
+ * queries don't scan the database.
  */
 public class DelegateStateImpl implements DelegateState {
 
@@ -51,17 +60,37 @@ public class DelegateStateImpl implements DelegateState {
     private Blockchain chain;
     private KVDB delegateDB;
     private KVDB voteDB;
-    private DelegateStateImpl prev;
+
+    /**
+     * The state this overlay reads through to and commits into, which is the
+     * database-backed state unless this is a branch; null for the root.
+     */
+    private DelegateStateImpl parent;
+
+    /**
+     * Undo log, shared by an overlay and its nested states; null for the root.
+     */
+    private Journal journal;
+
+    /**
+     * Journal offset of the last snapshot, or -1 for the overlay itself.
+     */
+    private int checkpoint = -1;
+
+    /**
+     * Delegate ranking of the root, or null if not built yet.
+     */
+    private DelegateRanking ranking;
 
     /**
      * Delegate updates
      */
-    protected Map<ByteArray, byte[]> delegateUpdates = new ConcurrentHashMap<>();
+    protected Map<ByteArray, byte[]> delegateUpdates;
 
     /**
      * Vote updates
      */
-    protected Map<ByteArray, byte[]> voteUpdates = new ConcurrentHashMap<>();
+    protected Map<ByteArray, byte[]> voteUpdates;
 
     /**
      * Create a DelegateState that work directly on a database.
@@ -73,6 +102,8 @@ public class DelegateStateImpl implements DelegateState {
         this.chain = chain;
         this.delegateDB = delegateDB;
         this.voteDB = voteDB;
+        this.delegateUpdates = new ConcurrentHashMap<>();
+        this.voteUpdates = new ConcurrentHashMap<>();
     }
 
     /**
@@ -82,7 +113,19 @@ public class DelegateStateImpl implements DelegateState {
      */
     public DelegateStateImpl(DelegateStateImpl prev) {
         this.chain = prev.chain;
-        this.prev = prev;
+
+        if (prev.parent == null) {
+            this.parent = prev;
+            this.journal = new Journal();
+            this.delegateUpdates = new ConcurrentHashMap<>();
+            this.voteUpdates = new ConcurrentHashMap<>();
+        } else {
+            this.parent = prev.parent;
+            this.journal = prev.journal;
+            this.checkpoint = journal.size();
+            this.delegateUpdates = prev.delegateUpdates;
+            this.voteUpdates = prev.voteUpdates;
+        }
     }
 
     @Override
@@ -92,8 +135,8 @@ public class DelegateStateImpl implements DelegateState {
         } else {
             Delegate d = new Delegate(address, name, registeredAt, 0);
 
-            delegateUpdates.put(ByteArray.of(name), address);
-            delegateUpdates.put(ByteArray.of(address), encode(d));
+            put(delegateUpdates, ByteArray.of(name), address);
+            put(delegateUpdates, ByteArray.of(address), encode(d));
 
             return true;
         }
@@ -113,9 +156,9 @@ public class DelegateStateImpl implements DelegateState {
         if (d == null) {
             return false;
         } else {
-            voteUpdates.put(key, Bytes.of(value + v));
+            put(voteUpdates, key, Bytes.of(value + v));
             d.setVotes(d.getVotes() + v);
-            delegateUpdates.put(ByteArray.of(delegate), encode(d));
+            put(delegateUpdates, ByteArray.of(delegate), encode(d));
             return true;
         }
     }
@@ -128,11 +171,11 @@ public class DelegateStateImpl implements DelegateState {
         if (v > value) {
             return false;
         } else {
-            voteUpdates.put(key, Bytes.of(value - v));
+            put(voteUpdates, key, Bytes.of(value - v));
 
             Delegate d = getDelegateByAddress(delegate);
             d.setVotes(d.getVotes() - v);
-            delegateUpdates.put(ByteArray.of(delegate), encode(d));
+            put(delegateUpdates, ByteArray.of(delegate), encode(d));
 
             return true;
         }
@@ -147,14 +190,14 @@ public class DelegateStateImpl implements DelegateState {
     public Delegate getDelegateByName(byte[] name) {
         ByteArray k = ByteArray.of(name);
 
-        if (delegateUpdates.containsKey(k)) {
+        if (parent == null) {
+            byte[] v = readRoot(delegateUpdates, delegateDB, k);
+            return v == null ? null : getDelegateByAddress(v);
+        } else if (delegateUpdates.containsKey(k)) {
             byte[] v = delegateUpdates.get(k);
             return v == null ? null : getDelegateByAddress(v);
-        } else if (prev != null) {
-            return prev.getDelegateByName(name);
         } else {
-            byte[] v = delegateDB.get(k.getData());
-            return v == null ? null : getDelegateByAddress(v);
+            return parent.getDelegateByName(name);
         }
     }
 
@@ -162,22 +205,26 @@ public class DelegateStateImpl implements DelegateState {
     public Delegate getDelegateByAddress(byte[] addr) {
         ByteArray k = ByteArray.of(addr);
 
-        if (delegateUpdates.containsKey(k)) {
+        if (parent == null) {
+            byte[] v = readRoot(delegateUpdates, delegateDB, k);
+            return v == null ? null : decode(k.getData(), v);
+        } else if (delegateUpdates.containsKey(k)) {
             byte[] v = delegateUpdates.get(k);
             return v == null ? null : decode(k.getData(), v);
-        } else if (prev != null) {
-            return prev.getDelegateByAddress(addr);
         } else {
-            byte[] v = delegateDB.get(k.getData());
-            return v == null ? null : decode(k.getData(), v);
+            return parent.getDelegateByAddress(addr);
         }
     }
 
     @Override
     public List<Delegate> getDelegates() {
+        if (parent == null) {
+            return getRanking().getDelegates(0, Integer.MAX_VALUE);
+        }
+
         long t1 = System.nanoTime();
 
-        // traverse all cached update, all the way to database.
+        // merge the overlay into the ranking of the root
         Map<ByteArray, Delegate> map = new HashMap<>();
         getDelegates(map);
 
@@ -193,56 +240,179 @@ public class DelegateStateImpl implements DelegateState {
         return list;
     }
 
+    @Override
+    public List<Delegate> getDelegates(int from, int to) {
+        if (parent == null) {
+            return getRanking().getDelegates(from, to);
+        }
+
+        List<Delegate> list = getDelegates();
+        from = Math.max(0, from);
+        to = Math.min(list.size(), to);
+        return (from < to) ? list.subList(from, to) : new ArrayList<>();
+    }
+
+    @Override
+    public int getRank(byte[] address) {
+        if (parent == null) {
+            return getRanking().getRank(address);
+        }
+
+        List<Delegate> list = getDelegates();
+        for (int i = 0; i < list.size(); i++) {
+            if (Arrays.equals(address, list.get(i).getAddress())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Create an overlay with its own updates and journal, based on another
+     * DelegateState.
+     * 
+     * @param parent
+     * @param journal
+     */
+    private DelegateStateImpl(DelegateStateImpl parent, Journal journal) {
+        this.chain = parent.chain;
+        this.parent = parent;
+        this.journal = journal;
+        this.delegateUpdates = new ConcurrentHashMap<>();
+        this.voteUpdates = new ConcurrentHashMap<>();
+    }
+
     @Override
     public DelegateState track() {
         return new DelegateStateImpl(this);
     }
 
+    @Override
+    public DelegateState branch() {
+        return new DelegateStateImpl(this, new Journal());
+    }
+
     @Override
     public void commit() {
         synchronized (delegateUpdates) {
-            if (prev == null) {
-                for (ByteArray k : delegateUpdates.keySet()) {
-                    byte[] v = delegateUpdates.get(k);
-                    if (v == null) {
-                        delegateDB.delete(k.getData());
-                    } else {
-                        delegateDB.put(k.getData(), v);
-                    }
-                }
-            } else {
+            if (parent == null) {
+                delegateDB.updateBatch(toPairs(delegateUpdates));
+                voteDB.updateBatch(toPairs(voteUpdates));
+            } else if (checkpoint < 0) {
                 for (Entry<ByteArray, byte[]> e : delegateUpdates.entrySet()) {
-                    prev.delegateUpdates.put(e.getKey(), e.getValue());
+                    parent.put(parent.delegateUpdates, e.getKey(), e.getValue());
+                }
+                for (Entry<ByteArray, byte[]> e : voteUpdates.entrySet()) {
+                    parent.put(parent.voteUpdates, e.getKey(), e.getValue());
                 }
+                journal.clear();
+            } else {
+                // the updates are already in the overlay
+                checkpoint = journal.size();
+                return;
             }
 
             delegateUpdates.clear();
+            voteUpdates.clear();
         }
+    }
 
-        synchronized (voteUpdates) {
-            if (prev == null) {
-                for (ByteArray k : voteUpdates.keySet()) {
-                    byte[] v = voteUpdates.get(k);
-                    if (v == null) {
-                        voteDB.delete(k.getData());
-                    } else {
-                        voteDB.put(k.getData(), v);
-                    }
+    @Override
+    public void rollback() {
+        synchronized (delegateUpdates) {
+            if (checkpoint < 0) {
+                delegateUpdates.clear();
+                voteUpdates.clear();
+                if (journal != null) {
+                    journal.clear();
+                } else {
+                    // rebuilt from the database on next use
+                    ranking = null;
                 }
             } else {
-                for (Entry<ByteArray, byte[]> e : voteUpdates.entrySet()) {
-                    prev.voteUpdates.put(e.getKey(), e.getValue());
+                journal.revert(checkpoint);
+            }
+        }
+    }
+
+    /**
+     * Puts an update, recording it in the journal if any.
+     *
+     * @param updates
+     * @param key
+     * @param value
+     */
+    private void put(Map<ByteArray, byte[]> updates, ByteArray key, byte[] value) {
+        if (journal != null) {
+            journal.put(updates, key, value);
+        } else if (updates == delegateUpdates) {
+            putDelegate(key, value);
+        } else {
+            updates.put(key, value);
+        }
+    }
+
+    /**
+     * Puts a delegate update into the root, keeping the ranking in sync.
+     *
+     * @param key
+     * @param value
+     */
+    private void putDelegate(ByteArray key, byte[] value) {
+        synchronized (delegateUpdates) {
+            delegateUpdates.put(key, value);
+
+            if (ranking != null && key.length() == ADDRESS_LEN) {
+                if (value == null) {
+                    ranking.remove(key.getData());
+                } else {
+                    ranking.put(decode(key.getData(), value));
                 }
             }
+        }
+    }
 
-            voteUpdates.clear();
+    /**
+     * Returns the ranking of the root, building it from the database if
+     * necessary.
+     *
+     * @return
+     */
+    private DelegateRanking getRanking() {
+        synchronized (delegateUpdates) {
+            if (ranking == null) {
+                long t1 = System.nanoTime();
+
+                Map<ByteArray, Delegate> map = new HashMap<>();
+                getDelegates(map);
+
+                ranking = new DelegateRanking();
+                for (Delegate d : map.values()) {
+                    if (d != null) {
+                        ranking.put(d);
+                    }
+                }
+
+                long t2 = System.nanoTime();
+                logger.debug("Delegate ranking built: # delegates = {}, time = {} μs", ranking.size(),
+                        (t2 - t1) / 1000L);
+            }
+            return ranking;
         }
     }
 
-    @Override
-    public void rollback() {
-        delegateUpdates.clear();
-        voteUpdates.clear();
+    /**
+     * Converts the updates into key value pairs, for batch update.
+     * 
+     * @param updates
+     * @return
+     */
+    private List<Pair<byte[], byte[]>> toPairs(Map<ByteArray, byte[]> updates) {
+        List<Pair<byte[], byte[]>> pairs = new ArrayList<>(updates.size());
+        for (Entry<ByteArray, byte[]> e : updates.entrySet()) {
+            pairs.add(Pair.of(e.getKey().getData(), e.getValue()));
+        }
+        return pairs;
     }
 
     /**
@@ -277,7 +447,7 @@ public class DelegateStateImpl implements DelegateState {
     }
 
     /**
-     * Recursively compute the delegates.
+     * Computes the delegates, from the overlay down to the database.
      * 
      * @param map
      */
@@ -295,8 +465,13 @@ public class DelegateStateImpl implements DelegateState {
             }
         }
 
-        if (prev != null) {
-            prev.getDelegates(map);
+        if (parent != null) {
+            for (Delegate d : parent.getDelegates()) {
+                ByteArray k = ByteArray.of(d.getAddress());
+                if (!map.containsKey(k)) {
+                    map.put(k, d);
+                }
+            }
         } else {
             ClosableIterator<Entry<byte[], byte[]>> itr = delegateDB.iterator();
             while (itr.hasNext()) {
@@ -321,16 +496,30 @@ public class DelegateStateImpl implements DelegateState {
      * @return
      */
     private long getVote(ByteArray key) {
-        if (voteUpdates.containsKey(key)) {
+        if (parent == null) {
+            byte[] bytes = readRoot(voteUpdates, voteDB, key);
+            return (bytes == null) ? 0 : Bytes.toLong(bytes);
+        } else if (voteUpdates.containsKey(key)) {
             byte[] bytes = voteUpdates.get(key);
             return (bytes == null) ? 0 : Bytes.toLong(bytes);
+        } else {
+            return parent.getVote(key);
         }
+    }
 
-        if (prev != null) {
-            return prev.getVote(key);
-        } else {
-            byte[] bytes = voteDB.get(key.getData());
-            return (bytes == null) ? 0 : Bytes.toLong(bytes);
+    /**
+     * Reads a value of the root, from its pending updates or the database.
+     * Overlays may read the root while it's being committed, so the lookup is
+     * done under the commit lock.
+     *
+     * @param updates
+     * @param db
+     * @param key
+     * @return
+     */
+    private byte[] readRoot(Map<ByteArray, byte[]> updates, KVDB db, ByteArray key) {
+        synchronized (delegateUpdates) {
+            return updates.containsKey(key) ? updates.get(key) : db.get(key.getData());
         }
     }
 
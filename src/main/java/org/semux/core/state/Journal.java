@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core.state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.semux.utils.ByteArray;
+
+/**
+ * Undo log of a state overlay. Nested snapshots are offsets into the journal,
+ * and are reverted by undoing the entries recorded after the offset, in reverse
+ * order.
+ */
+class Journal {
+
+    private final List<Runnable> entries = new ArrayList<>();
+
+    /**
+     * Returns the current offset.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Records an undo action.
+     *
+     * @param undo
+     */
+    public synchronized void record(Runnable undo) {
+        entries.add(undo);
+    }
+
+    /**
+     * Puts a key value pair into an update map, recording the previous value.
+     *
+     * @param map
+     * @param key
+     * @param value
+     */
+    public synchronized void put(Map<ByteArray, byte[]> map, ByteArray key, byte[] value) {
+        if (map.containsKey(key)) {
+            byte[] old = map.get(key);
+            entries.add(() -> map.put(key, old));
+        } else {
+            entries.add(() -> map.remove(key));
+        }
+        map.put(key, value);
+    }
+
+    /**
+     * Undoes all the entries after the given offset.
+     *
+     * @param offset
+     */
+    public synchronized void revert(int offset) {
+        for (int i = entries.size() - 1; i >= offset; i--) {
+            entries.remove(i).run();
+        }
+    }
+
+    /**
+     * Discards all the entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
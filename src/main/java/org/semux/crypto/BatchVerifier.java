@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.semux.Config;
+import org.semux.crypto.EdDSA.Signature;
+
+import net.i2p.crypto.eddsa.math.Curve;
+import net.i2p.crypto.eddsa.math.GroupElement;
+import net.i2p.crypto.eddsa.math.ScalarOps;
+import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
+import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
+
+/**
+ * Verifies a batch of ED25519 signatures at once, using the randomized batch
+ * verification equation:
+ *
+ * <pre>
+ * [8] (sum(z_i * R_i) + sum(z_i * h_i * A_i) - sum(z_i * s_i) * B) = 0
+ * </pre>
+ *
+ * where z_i are random 128-bit scalars. The left side is computed with one
+ * multi-scalar multiplication (Pippenger's bucket method), which is much
+ * cheaper than verifying the signatures one by one. If the equation doesn't
+ * hold, the batch is split in halves until the invalid signatures are found;
+ * small batches are checked with {@link EdDSA#verify(byte[], Signature)}.
+ *
+ * The batch equation is cofactored, so a signature crafted with small-order
+ * components may pass it while failing {@link EdDSA#verify(byte[], Signature)},
+ * which is cofactorless. Telling such signatures apart takes a scalar
+ * multiplication per signature, which costs as much as verifying it alone.
+ * Batches are therefore only used under the cofactored rule, see
+ * {@link #isCofactored(long)}, where single signatures are checked with
+ * {@link EdDSA#verifyCofactored(byte[], Signature)}. Otherwise the signatures
+ * are verified one by one, so the result never depends on the batch size.
+ *
+ * Signatures which the single verification rejects for their encoding, i.e.
+ * non-canonical R or S, or invalid R, are rejected before batching.
+ *
+ * If a {@link SignatureCache} is given, the signatures found in it are not
+ * verified again, and the ones verified are added to it.
+ *
+ * This class is not thread-safe.
+ */
+public class BatchVerifier {
+
+    /**
+     * Batches smaller than this are verified one by one.
+     */
+    public static final int MIN_BATCH_SIZE = 32;
+
+    private static final EdDSAParameterSpec SPEC = EdDSANamedCurveTable.getByName("Ed25519");
+    private static final Curve CURVE = SPEC.getCurve();
+    private static final ScalarOps SCALAR_OPS = SPEC.getScalarOps();
+    private static final GroupElement NEGATIVE_B = SPEC.getB().negate();
+
+    private static final byte[] X509_PREFIX = Hex.parse("302a300506032b6570032100");
+    private static final byte[] ZERO = new byte[32];
+    private static final SecureRandom random = new SecureRandom();
+
+    private SignatureCache cache;
+    private boolean cofactored;
+    private List<Item> items = new ArrayList<>();
+
+    /**
+     * Create a verifier which verifies the signatures one by one, with the
+     * cofactorless check.
+     */
+    public BatchVerifier() {
+        this(null);
+    }
+
+    /**
+     * Create a verifier which verifies the signatures one by one, with the
+     * cofactorless check, and consults a signature cache.
+     *
+     * @param cache
+     *            the cache of verified signatures, or null
+     */
+    public BatchVerifier(SignatureCache cache) {
+        this(cache, false);
+    }
+
+    /**
+     * Create a verifier which consults a signature cache.
+     *
+     * @param cache
+     *            the cache of verified signatures, or null
+     * @param cofactored
+     *            whether to verify with the cofactored equation, in batches
+     */
+    public BatchVerifier(SignatureCache cache, boolean cofactored) {
+        this.cache = cache;
+        this.cofactored = cofactored;
+    }
+
+    /**
+     * Returns whether the signatures of a block are verified with the cofactored
+     * equation, and thus in batches.
+     *
+     * @param number
+     *            block number
+     * @return
+     */
+    public static boolean isCofactored(long number) {
+        return number >= Config.CRYPTO_BATCH_VERIFY_HEIGHT;
+    }
+
+    /**
+     * Adds a signature to verify.
+     *
+     * @param msgHash
+     *            message hash
+     * @param signature
+     *            signature, or null which is always invalid
+     */
+    public void add(byte[] msgHash, Signature signature) {
+        items.add(new Item(msgHash, signature));
+    }
+
+    /**
+     * Returns the number of signatures added.
+     *
+     * @return
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Verifies all the signatures added.
+     *
+     * @return true if all the signatures are valid, otherwise false
+     */
+    public boolean verify() {
+        List<Item> batch = prepare();
+        for (Item item : items) {
+            if (item.state == Item.INVALID) {
+                return false;
+            }
+        }
+
+        if (batch.size() >= MIN_BATCH_SIZE) {
+            // a signature failing the batch equation also fails the single one
+            if (!verifyBatch(batch)) {
+                return false;
+            }
+            for (Item item : batch) {
+                setValid(item);
+            }
+        }
+
+        for (Item item : items) {
+            if (item.state != Item.VALID) {
+                if (!verifySingle(item)) {
+                    return false;
+                }
+                setValid(item);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verifies each of the signatures added.
+     *
+     * @return the validity of the signatures, in the order they were added
+     */
+    public boolean[] verifyEach() {
+        verifyRecursively(prepare());
+
+        boolean[] results = new boolean[items.size()];
+        for (int i = 0; i < results.length; i++) {
+            Item item = items.get(i);
+            if (item.state != Item.VALID && item.state != Item.INVALID && verifySingle(item)) {
+                setValid(item);
+            }
+            results[i] = (item.state == Item.VALID);
+        }
+        return results;
+    }
+
+    /**
+     * Decodes the signatures, and returns the ones that can be batched.
+     *
+     * @return
+     */
+    private List<Item> prepare() {
+        List<Item> batch = new ArrayList<>();
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(SPEC.getHashAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (Item item : items) {
+            if (item.state != Item.UNKNOWN) {
+                continue;
+            }
+            if (cache != null && cache.contains(item.msgHash, item.signature, cofactored)) {
+                item.state = Item.VALID;
+            } else if (cofactored && item.decode(digest)) {
+                batch.add(item);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Verifies a batch, splitting it on failure.
+     *
+     * @param batch
+     */
+    private void verifyRecursively(List<Item> batch) {
+        if (batch.size() < MIN_BATCH_SIZE) {
+            return; // checked one by one
+        }
+
+        if (verifyBatch(batch)) {
+            for (Item item : batch) {
+                setValid(item);
+            }
+        } else {
+            int half = batch.size() / 2;
+            verifyRecursively(batch.subList(0, half));
+            verifyRecursively(batch.subList(half, batch.size()));
+        }
+    }
+
+    /**
+     * Evaluates the batch verification equation.
+     *
+     * @param batch
+     * @return
+     */
+    private boolean verifyBatch(List<Item> batch) {
+        int n = batch.size();
+        GroupElement[] points = new GroupElement[2 * n + 1];
+        byte[][] scalars = new byte[2 * n + 1][];
+
+        byte[] rand = new byte[16 * n];
+        random.nextBytes(rand);
+
+        byte[] sum = ZERO;
+        for (int i = 0; i < n; i++) {
+            Item item = batch.get(i);
+            byte[] z = Arrays.copyOf(Arrays.copyOfRange(rand, 16 * i, 16 * i + 16), 32);
+
+            points[2 * i] = item.r;
+            scalars[2 * i] = z;
+            points[2 * i + 1] = item.a;
+            scalars[2 * i + 1] = SCALAR_OPS.multiplyAndAdd(z, item.h, ZERO);
+            sum = SCALAR_OPS.multiplyAndAdd(z, item.s, sum);
+        }
+        points[2 * n] = NEGATIVE_B;
+        scalars[2 * n] = sum;
+
+        GroupElement p = multiply(points, scalars);
+        for (int i = 0; i < 3; i++) {
+            p = p.dbl().toP3();
+        }
+        return !p.getX().isNonZero() && !p.getY().subtract(p.getZ()).isNonZero();
+    }
+
+    /**
+     * Computes sum(scalars[i] * points[i]) with Pippenger's bucket method.
+     *
+     * @param points
+     *            points in P3 representation
+     * @param scalars
+     *            32-byte little-endian scalars, less than 2^253
+     * @return the sum in P3 representation
+     */
+    private static GroupElement multiply(GroupElement[] points, byte[][] scalars) {
+        int c = window(points.length);
+
+        GroupElement[] cached = new GroupElement[points.length];
+        for (int i = 0; i < points.length; i++) {
+            cached[i] = points[i].toCached();
+        }
+
+        GroupElement acc = null;
+        GroupElement[] buckets = new GroupElement[1 << c];
+        for (int offset = (253 / c) * c; offset >= 0; offset -= c) {
+            if (acc != null) {
+                for (int i = 0; i < c; i++) {
+                    acc = acc.dbl().toP3();
+                }
+            }
+
+            Arrays.fill(buckets, null);
+            for (int i = 0; i < points.length; i++) {
+                int d = digit(scalars[i], offset, c);
+                if (d != 0) {
+                    buckets[d] = (buckets[d] == null) ? points[i] : buckets[d].add(cached[i]).toP3();
+                }
+            }
+
+            // sum(k * buckets[k]) with running sums
+            GroupElement running = null;
+            GroupElement total = null;
+            for (int k = buckets.length - 1; k > 0; k--) {
+                if (buckets[k] != null) {
+                    running = (running == null) ? buckets[k] : running.add(buckets[k].toCached()).toP3();
+                }
+                if (running != null) {
+                    total = (total == null) ? running : total.add(running.toCached()).toP3();
+                }
+            }
+            if (total != null) {
+                acc = (acc == null) ? total : acc.add(total.toCached()).toP3();
+            }
+        }
+
+        return (acc == null) ? CURVE.getZero(GroupElement.Representation.P3) : acc;
+    }
+
+    private static int window(int n) {
+        if (n < 32) {
+            return 3;
+        }
+        int log = 31 - Integer.numberOfLeadingZeros(n);
+        return Math.min(log - 2, 12);
+    }
+
+    private static int digit(byte[] scalar, int offset, int c) {
+        int d = 0;
+        for (int i = 0; i < c; i++) {
+            int bit = offset + i;
+            if (bit < 256 && ((scalar[bit >> 3] >> (bit & 7)) & 1) != 0) {
+                d |= 1 << i;
+            }
+        }
+        return d;
+    }
+
+    private void setValid(Item item) {
+        item.state = Item.VALID;
+        if (cache != null) {
+            cache.add(item.msgHash, item.signature, cofactored);
+        }
+    }
+
+    private boolean verifySingle(Item item) {
+        if (item.signature == null) {
+            return false;
+        }
+        return cofactored ? EdDSA.verifyCofactored(item.msgHash, item.signature)
+                : EdDSA.verify(item.msgHash, item.signature);
+    }
+
+    private static class Item {
+        static final int UNKNOWN = 0;
+        static final int VALID = 1;
+        static final int INVALID = 2;
+        static final int SINGLE = 3;
+
+        final byte[] msgHash;
+        final Signature signature;
+        int state = UNKNOWN;
+
+        GroupElement r;
+        GroupElement a;
+        byte[] h;
+        byte[] s;
+
+        Item(byte[] msgHash, Signature signature) {
+            this.msgHash = msgHash;
+            this.signature = signature;
+        }
+
+        /**
+         * Decodes the signature for batching, or sets the state if it can't be
+         * batched.
+         *
+         * @param digest
+         * @return true if the signature can be batched
+         */
+        boolean decode(MessageDigest digest) {
+            byte[] sig = (signature == null) ? null : signature.getSignature();
+            if (msgHash == null || sig == null || sig.length != 64) {
+                state = INVALID;
+                return false;
+            }
+
+            // decoding the key directly saves the precomputation of EdDSAPublicKey
+            byte[] pub = signature.getPublicKey();
+            if (pub == null || pub.length != X509_PREFIX.length + 32
+                    || !Arrays.equals(X509_PREFIX, Arrays.copyOf(pub, X509_PREFIX.length))) {
+                state = SINGLE;
+                return false;
+            }
+            byte[] encodedA = Arrays.copyOfRange(pub, X509_PREFIX.length, pub.length);
+            if (!EdDSA.isCanonical(encodedA)) {
+                // the key is hashed in its canonical encoding
+                state = SINGLE;
+                return false;
+            }
+            try {
+                a = new GroupElement(CURVE, encodedA);
+            } catch (IllegalArgumentException e) {
+                state = INVALID;
+                return false;
+            }
+            if ((encodedA[31] & 0x80) != 0 && !a.getX().isNonZero()) {
+                state = SINGLE;
+                return false;
+            }
+
+            // the single verification rejects S >= L
+            if (!EdDSA.isReduced(sig, 32)) {
+                state = INVALID;
+                return false;
+            }
+            s = Arrays.copyOfRange(sig, 32, 64);
+
+            // the single verification requires R to be canonically encoded
+            byte[] encodedR = Arrays.copyOf(sig, 32);
+            if (!EdDSA.isCanonical(encodedR)) {
+                state = INVALID;
+                return false;
+            }
+            try {
+                r = new GroupElement(CURVE, encodedR);
+            } catch (IllegalArgumentException e) {
+                state = INVALID;
+                return false;
+            }
+            if ((encodedR[31] & 0x80) != 0 && !r.getX().isNonZero()) {
+                state = INVALID;
+                return false;
+            }
+
+            digest.reset();
+            digest.update(encodedR);
+            digest.update(encodedA);
+            h = SCALAR_OPS.reduce(digest.digest(msgHash));
+            return true;
+        }
+    }
+}
@@ -8,6 +8,8 @@ package org.semux.crypto;
 
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SignatureException;
@@ -15,11 +17,19 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.semux.Config;
+import org.semux.utils.ByteArray;
 
 import net.i2p.crypto.eddsa.EdDSAEngine;
 import net.i2p.crypto.eddsa.EdDSAPrivateKey;
 import net.i2p.crypto.eddsa.EdDSAPublicKey;
 import net.i2p.crypto.eddsa.KeyPairGenerator;
+import net.i2p.crypto.eddsa.math.GroupElement;
+import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
+import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
 
 /**
  * Edwards-curve Digital Signature Algorithm (EdDSA), specifically ED25519.
@@ -28,6 +38,44 @@ import net.i2p.crypto.eddsa.KeyPairGenerator;
  */
 public class EdDSA {
 
+    private static final int PUBLIC_KEY_SEGMENTS = 16;
+
+    /**
+     * Decoded public keys, whose points and tables are computed once. The cache
+     * is split into lock-striped LRU segments, as every verifying thread reads it.
+     */
+    private static final PublicKeySegment[] publicKeys = new PublicKeySegment[PUBLIC_KEY_SEGMENTS];
+    static {
+        int n = Math.max(1, (Config.CRYPTO_PUBLIC_KEY_CACHE_SIZE + PUBLIC_KEY_SEGMENTS - 1) / PUBLIC_KEY_SEGMENTS);
+        for (int i = 0; i < PUBLIC_KEY_SEGMENTS; i++) {
+            publicKeys[i] = new PublicKeySegment(n);
+        }
+    }
+
+    private static final EdDSAParameterSpec SPEC = EdDSANamedCurveTable.getByName("Ed25519");
+
+    /**
+     * The group order, 2^252 + 27742317777372353535851937790883648493, in
+     * little-endian.
+     */
+    private static final byte[] L = Hex.parse("edd3f55c1a631258d69cf7a2def9de1400000000000000000000000000000010");
+
+    /**
+     * Verification engines, reused by each thread.
+     */
+    private static final ThreadLocal<EdDSAEngine> engines = ThreadLocal.withInitial(EdDSAEngine::new);
+
+    /**
+     * Digests of the cofactored verification, reused by each thread.
+     */
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(SPEC.getHashAlgorithm());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
     private PublicKey pub;
     private PrivateKey priv;
 
@@ -113,15 +161,64 @@ public class EdDSA {
      */
     public static boolean verify(byte[] msgHash, Signature signature) {
         try {
-            X509EncodedKeySpec spec = new X509EncodedKeySpec(signature.getPublicKey());
-            EdDSAPublicKey publicKey = new EdDSAPublicKey(spec);
+            EdDSAPublicKey publicKey = getPublicKey(signature.getPublicKey());
 
-            EdDSAEngine engine = new EdDSAEngine();
+            // reject non-canonical S, as S + L would verify as well
+            byte[] sig = signature.getSignature();
+            if (sig.length != 64 || !isReduced(sig, 32)) {
+                return false;
+            }
+
+            EdDSAEngine engine = engines.get();
             engine.initVerify(publicKey);
 
-            // TODO: reject non-canonical signature
+            return engine.verifyOneShot(msgHash, sig);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Verify a signature with the cofactored equation, [8]R = [8](sB - hA), which
+     * also holds for some signatures with small-order components that
+     * {@link #verify(byte[], Signature)} rejects. It's the rule under which
+     * signatures can be verified in batches, see {@link BatchVerifier}.
+     * 
+     * @param msgHash
+     *            message hash
+     * @param signature
+     *            signature
+     * @return
+     */
+    public static boolean verifyCofactored(byte[] msgHash, Signature signature) {
+        try {
+            EdDSAPublicKey publicKey = getPublicKey(signature.getPublicKey());
+
+            byte[] sig = signature.getSignature();
+            if (msgHash == null || sig.length != 64 || !isReduced(sig, 32)) {
+                return false;
+            }
 
-            return engine.verifyOneShot(msgHash, signature.getSignature());
+            // R must be canonically encoded, as the cofactorless check compares
+            // with the canonical encoding
+            byte[] encodedR = Arrays.copyOf(sig, 32);
+            if (!isCanonical(encodedR)) {
+                return false;
+            }
+            GroupElement r = new GroupElement(SPEC.getCurve(), encodedR);
+            if ((encodedR[31] & 0x80) != 0 && !r.getX().isNonZero()) {
+                return false;
+            }
+
+            MessageDigest digest = digests.get();
+            digest.reset();
+            digest.update(encodedR);
+            digest.update(publicKey.getAbyte());
+            byte[] h = SPEC.getScalarOps().reduce(digest.digest(msgHash));
+
+            GroupElement p = SPEC.getB().doubleScalarMultiplyVariableTime(publicKey.getNegativeA(), h,
+                    Arrays.copyOfRange(sig, 32, 64));
+            return equals(multiplyByCofactor(p), multiplyByCofactor(r));
         } catch (Exception e) {
             return false;
         }
@@ -146,6 +243,85 @@ public class EdDSA {
         }
     }
 
+    /**
+     * Returns whether an encoded point has its y coordinate less than 2^255 - 19.
+     * 
+     * @param encoded
+     * @return
+     */
+    static boolean isCanonical(byte[] encoded) {
+        if ((encoded[31] & 0x7f) != 0x7f || (encoded[0] & 0xff) < 0xed) {
+            return true;
+        }
+        for (int i = 1; i < 31; i++) {
+            if (encoded[i] != (byte) 0xff) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the 32-byte little-endian scalar at the given offset is less
+     * than the group order L.
+     * 
+     * @param bytes
+     * @param offset
+     * @return
+     */
+    static boolean isReduced(byte[] bytes, int offset) {
+        for (int i = 31; i >= 0; i--) {
+            int a = bytes[offset + i] & 0xff;
+            int b = L[i] & 0xff;
+            if (a != b) {
+                return a < b;
+            }
+        }
+        return false;
+    }
+
+    private static GroupElement multiplyByCofactor(GroupElement p) {
+        for (int i = 0; i < 3; i++) {
+            p = p.dbl().toP2();
+        }
+        return p;
+    }
+
+    /**
+     * Compares two points in projective representation, without inverting Z.
+     */
+    private static boolean equals(GroupElement p, GroupElement q) {
+        return !p.getX().multiply(q.getZ()).subtract(q.getX().multiply(p.getZ())).isNonZero()
+                && !p.getY().multiply(q.getZ()).subtract(q.getY().multiply(p.getZ())).isNonZero();
+    }
+
+    /**
+     * Returns the decoded public key, from the cache if possible.
+     * 
+     * @param encoded
+     *            public key in "X.509"
+     * @return
+     * @throws InvalidKeySpecException
+     */
+    private static EdDSAPublicKey getPublicKey(byte[] encoded) throws InvalidKeySpecException {
+        ByteArray k = ByteArray.of(encoded);
+        PublicKeySegment s = publicKeys[(k.hashCode() & 0x7fffffff) % PUBLIC_KEY_SEGMENTS];
+
+        EdDSAPublicKey key;
+        synchronized (s) {
+            key = s.get(k);
+        }
+
+        if (key == null) {
+            // decoded outside the lock; a concurrent miss just decodes twice
+            key = new EdDSAPublicKey(new X509EncodedKeySpec(encoded));
+            synchronized (s) {
+                s.put(ByteArray.of(encoded.clone()), key);
+            }
+        }
+        return key;
+    }
+
     /**
      * Get a string representation of this key.
      * 
@@ -227,4 +403,24 @@ public class EdDSA {
             return new Signature(sig, pub);
         }
     }
+
+    /**
+     * An access-ordered map of decoded public keys, which removes its eldest
+     * entry when full.
+     */
+    private static class PublicKeySegment extends LinkedHashMap<ByteArray, EdDSAPublicKey> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        PublicKeySegment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteArray, EdDSAPublicKey> eldest) {
+            return size() > capacity;
+        }
+    }
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.crypto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.semux.Config;
+import org.semux.crypto.EdDSA.Signature;
+import org.semux.utils.ByteArray;
+import org.semux.utils.SimpleEncoder;
+
+/**
+ * A bounded cache of the (message, signature, public key) triples which have
+ * been verified, so that a signature seen by the pending manager, consensus and
+ * sync is only checked once.
+ *
+ * Only valid signatures are cached. Entries are keyed by the hash of the
+ * triple, and evicted in LRU order within each of the lock-striped segments.
+ * Signatures verified with the cofactored equation only are marked, so they
+ * don't pass for signatures verified with the cofactorless check.
+ *
+ * This class is thread-safe.
+ */
+public class SignatureCache {
+
+    private static final int SEGMENTS = 16;
+
+    private static SignatureCache instance;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Get the node-wide cache instance.
+     *
+     * @return
+     */
+    public static synchronized SignatureCache getInstance() {
+        if (instance == null) {
+            instance = new SignatureCache(Config.SIGNATURE_CACHE_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Create a signature cache.
+     *
+     * @param capacity
+     *            max number of entries
+     */
+    public SignatureCache(int capacity) {
+        int n = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(n);
+        }
+    }
+
+    /**
+     * Verify a signature, consulting the cache first.
+     *
+     * @param msg
+     *            message or message hash
+     * @param signature
+     * @return true if valid, otherwise false
+     */
+    public boolean verify(byte[] msg, Signature signature) {
+        ByteArray key = keyOf(msg, signature);
+        if (key == null) {
+            return false;
+        } else if (contains(key, false)) {
+            return true;
+        } else if (EdDSA.verify(msg, signature)) {
+            add(key, false);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a signature is known to be valid, and counts the lookup as
+     * a hit or miss.
+     *
+     * @param msg
+     * @param signature
+     * @return
+     */
+    public boolean contains(byte[] msg, Signature signature) {
+        return contains(msg, signature, false);
+    }
+
+    /**
+     * Returns whether a signature is known to be valid under the given rule, and
+     * counts the lookup as a hit or miss.
+     *
+     * @param msg
+     * @param signature
+     * @param cofactored
+     *            whether the cofactored equation is enough
+     * @return
+     */
+    public boolean contains(byte[] msg, Signature signature, boolean cofactored) {
+        ByteArray key = keyOf(msg, signature);
+        return key != null && contains(key, cofactored);
+    }
+
+    /**
+     * Adds a signature which has been verified.
+     *
+     * @param msg
+     * @param signature
+     */
+    public void add(byte[] msg, Signature signature) {
+        add(msg, signature, false);
+    }
+
+    /**
+     * Adds a signature which has been verified under the given rule.
+     *
+     * @param msg
+     * @param signature
+     * @param cofactored
+     *            whether it was verified with the cofactored equation
+     */
+    public void add(byte[] msg, Signature signature, boolean cofactored) {
+        ByteArray key = keyOf(msg, signature);
+        if (key != null) {
+            add(key, cofactored);
+        }
+    }
+
+    /**
+     * Returns the number of cached signatures.
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all the cached signatures.
+     */
+    public void clear() {
+        for (Segment s : segments) {
+            synchronized (s) {
+                s.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups which found the signature.
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups which didn't find the signature.
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the fraction of lookups which found the signature.
+     *
+     * @return
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "SignatureCache [size = " + size() + ", hits = " + getHitCount() + ", misses = " + getMissCount()
+                + ", hit rate = " + String.format("%.2f", getHitRate()) + "]";
+    }
+
+    private boolean contains(ByteArray key, boolean cofactored) {
+        Segment s = segmentOf(key);
+        boolean found;
+        synchronized (s) {
+            Boolean strict = s.get(key);
+            found = strict != null && (strict || cofactored);
+        }
+
+        (found ? hitCount : missCount).incrementAndGet();
+        return found;
+    }
+
+    private void add(ByteArray key, boolean cofactored) {
+        Segment s = segmentOf(key);
+        synchronized (s) {
+            // the value tells whether the cofactorless check passed
+            if (!cofactored || s.get(key) == null) {
+                s.put(key, !cofactored);
+            }
+        }
+    }
+
+    private Segment segmentOf(ByteArray key) {
+        return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    /**
+     * Returns the cache key of a signature, or null if it's incomplete.
+     */
+    private static ByteArray keyOf(byte[] msg, Signature signature) {
+        if (msg == null || signature == null || signature.getSignature() == null
+                || signature.getPublicKey() == null) {
+            return null;
+        }
+
+        // length prefixed, so different triples never share an encoding
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeBytes(msg);
+        enc.writeBytes(signature.getSignature());
+        enc.writeBytes(signature.getPublicKey());
+        return ByteArray.of(Hash.h256(enc.toBytes()));
+    }
+
+    /**
+     * An access-ordered map which removes its eldest entry when full.
+     */
+    private static class Segment extends LinkedHashMap<ByteArray, Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteArray, Boolean> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An append-only database of immutable records, indexed by sequence number.
+ */
+public interface AppendDB {
+
+    /**
+     * Append a record. Numbers that are skipped over are left empty.
+     * 
+     * @param number
+     *            the sequence number, must not be less than {@link #size()}
+     * @param data
+     *            the record data
+     */
+    public void append(long number, byte[] data);
+
+    /**
+     * Get the record of the specified number.
+     * 
+     * @param number
+     * @return a read-only buffer of the record, or null if absent
+     */
+    public ByteBuffer get(long number);
+
+    /**
+     * Returns the number of the next record to append.
+     * 
+     * @return
+     */
+    public long size();
+
+    /**
+     * Remove all the records starting from the specified number.
+     * 
+     * @param size
+     */
+    public void truncate(long size);
+
+    /**
+     * Close the database.
+     */
+    public void close();
+
+    /**
+     * Destroy this DB.
+     */
+    public void destory();
+}
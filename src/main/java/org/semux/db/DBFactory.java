@@ -14,4 +14,17 @@ public interface DBFactory {
      * @return
      */
     public KVDB getDB(DBName name);
+
+    /**
+     * Get an AppendDB instance for the specified database.
+     * 
+     * @param name
+     * @return
+     */
+    public AppendDB getAppendDB(DBName name);
+
+    /**
+     * Close all the databases created by this factory.
+     */
+    public void close();
 }
@@ -18,6 +18,11 @@ public enum DBName {
      */
     BLOCK,
 
+    /**
+     * Block header data.
+     */
+    HEADER,
+
     /**
      * Account related data.
      */
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.semux.Config;
+
+/**
+ * Database factory backed by LevelDB, one instance per database. Block bodies
+ * are kept in a {@link SegmentDB}.
+ */
+public class LevelDBFactory implements DBFactory {
+
+    private static final String SEGMENTS_DIR = "database" + File.separator + "segments";
+
+    private Map<DBName, KVDB> databases = new EnumMap<>(DBName.class);
+    private Map<DBName, AppendDB> appendDatabases = new EnumMap<>(DBName.class);
+
+    /**
+     * Open all the databases.
+     */
+    public LevelDBFactory() {
+        for (DBName name : DBName.values()) {
+            if (name != DBName.TEST) {
+                databases.put(name, new LevelDB(name));
+            }
+        }
+
+        File dir = new File(Config.DATA_DIR, SEGMENTS_DIR);
+        appendDatabases.put(DBName.BLOCK, new SegmentDB(new File(dir, DBName.BLOCK.toString().toLowerCase())));
+    }
+
+    @Override
+    public KVDB getDB(DBName name) {
+        KVDB db = databases.get(name);
+        if (db == null) {
+            throw new RuntimeException("Unexpected database: " + name);
+        }
+        return db;
+    }
+
+    @Override
+    public AppendDB getAppendDB(DBName name) {
+        AppendDB db = appendDatabases.get(name);
+        if (db == null) {
+            throw new RuntimeException("Unexpected database: " + name);
+        }
+        return db;
+    }
+
+    @Override
+    public void close() {
+        for (KVDB db : databases.values()) {
+            db.close();
+        }
+        for (AppendDB db : appendDatabases.values()) {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MemoryAppendDB implements AppendDB {
+
+    private List<byte[]> records = new ArrayList<>();
+
+    @Override
+    public synchronized void append(long number, byte[] data) {
+        if (number < records.size()) {
+            throw new RuntimeException("Records can only be appended: number = " + number);
+        }
+
+        while (records.size() < number) {
+            records.add(null);
+        }
+        records.add(data.clone());
+    }
+
+    @Override
+    public synchronized ByteBuffer get(long number) {
+        byte[] data = (number < 0 || number >= records.size()) ? null : records.get((int) number);
+        return (data == null) ? null : ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized long size() {
+        return records.size();
+    }
+
+    @Override
+    public synchronized void truncate(long size) {
+        while (records.size() > size) {
+            records.remove(records.size() - 1);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void destory() {
+    }
+}
@@ -6,6 +6,7 @@
  */
 package org.semux.db;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,15 @@ public class MemoryDB implements KVDB {
         public KVDB getDB(DBName name) {
             return new MemoryDB();
         }
+
+        @Override
+        public AppendDB getAppendDB(DBName name) {
+            return new MemoryAppendDB();
+        }
+
+        @Override
+        public void close() {
+        }
     };
 
     private Map<ByteArray, byte[]> db = new ConcurrentHashMap<>();
@@ -55,9 +65,25 @@ public class MemoryDB implements KVDB {
 
     @Override
     public ClosableIterator<Entry<byte[], byte[]>> iterator() {
-        return new ClosableIterator<Entry<byte[], byte[]>>() {
+        return iterator(db.entrySet().iterator());
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator(byte[] prefix) {
+        // mimics the seek of a sorted database
+        List<Entry<ByteArray, byte[]>> list = new ArrayList<>();
+        for (Entry<ByteArray, byte[]> e : db.entrySet()) {
+            if (compare(e.getKey().getData(), prefix) >= 0) {
+                list.add(e);
+            }
+        }
+        list.sort((e1, e2) -> compare(e1.getKey().getData(), e2.getKey().getData()));
+
+        return iterator(list.iterator());
+    }
 
-            Iterator<Entry<ByteArray, byte[]>> itr = db.entrySet().iterator();
+    private ClosableIterator<Entry<byte[], byte[]>> iterator(Iterator<Entry<ByteArray, byte[]>> itr) {
+        return new ClosableIterator<Entry<byte[], byte[]>>() {
 
             @Override
             public boolean hasNext() {
@@ -92,9 +118,17 @@ public class MemoryDB implements KVDB {
         };
     }
 
-    @Override
-    public ClosableIterator<Entry<byte[], byte[]>> iterator(byte[] prefix) {
-        throw new UnsupportedOperationException("Key iterator with prefix is not supported");
+    /**
+     * Compares two byte arrays lexicographically, as unsigned bytes.
+     */
+    static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
     }
 
     @Override
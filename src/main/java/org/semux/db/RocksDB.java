@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.semux.utils.ClosableIterator;
+
+/**
+ * A {@link KVDB} stored in one column family of a RocksDB instance. Instances
+ * are created by {@link RocksDBFactory}.
+ */
+public class RocksDB implements KVDB {
+
+    private org.rocksdb.RocksDB db;
+    private ColumnFamilyHandle handle;
+    private int prefixLength;
+
+    /**
+     * Create a RocksDB column family wrapper.
+     * 
+     * @param db
+     *            the database instance
+     * @param handle
+     *            the column family
+     * @param prefixLength
+     *            length of the fixed key prefix, or 0 if not configured
+     */
+    protected RocksDB(org.rocksdb.RocksDB db, ColumnFamilyHandle handle, int prefixLength) {
+        this.db = db;
+        this.handle = handle;
+        this.prefixLength = prefixLength;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        try {
+            return db.get(handle, key);
+        } catch (RocksDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) {
+        try {
+            db.put(handle, key, value);
+        } catch (RocksDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        try {
+            db.delete(handle, key);
+        } catch (RocksDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void updateBatch(List<Pair<byte[], byte[]>> pairs) {
+        try (WriteBatch batch = new WriteBatch(); WriteOptions options = new WriteOptions()) {
+            for (Pair<byte[], byte[]> p : pairs) {
+                if (p.getValue() == null) {
+                    batch.delete(handle, p.getLeft());
+                } else {
+                    batch.put(handle, p.getLeft(), p.getRight());
+                }
+            }
+            db.write(options, batch);
+        } catch (RocksDBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator() {
+        return iterator(null);
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator(byte[] prefix) {
+        ReadOptions options = new ReadOptions();
+        if (prefix != null && prefixLength > 0 && prefix.length >= prefixLength) {
+            // use the prefix bloom filter
+            options.setPrefixSameAsStart(true);
+        } else {
+            options.setTotalOrderSeek(true);
+        }
+
+        return new ClosableIterator<Entry<byte[], byte[]>>() {
+            RocksIterator itr = db.newIterator(handle, options);
+            {
+                if (prefix != null) {
+                    itr.seek(prefix);
+                } else {
+                    itr.seekToFirst();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return itr.isValid();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                Entry<byte[], byte[]> entry = new SimpleImmutableEntry<>(itr.key(), itr.value());
+                itr.next();
+                return entry;
+            }
+
+            @Override
+            public void close() {
+                itr.close();
+                options.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        handle.close();
+    }
+
+    @Override
+    public void destory() {
+        try {
+            db.dropColumnFamily(handle);
+        } catch (RocksDBException e) {
+            throw new RuntimeException(e);
+        } finally {
+            close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.RocksDBException;
+import org.semux.Config;
+import org.semux.utils.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Database factory backed by a single RocksDB instance, where each
+ * {@link DBName} is mapped to its own column family.
+ * 
+ * <p>
+ * Databases keyed by <code>[address, ...]</code> (index and vote) are
+ * configured with a 20-byte prefix extractor and bloom filter, so that scans of
+ * one address only touch the relevant files. Compression can be configured per
+ * database with <code>db.compression.[name]</code>.
+ * </p>
+ * 
+ * <p>
+ * Block bodies are kept in a {@link SegmentDB}, outside of RocksDB. The segments
+ * are not shared with the LevelDB backend, whose index doesn't match them.
+ * </p>
+ */
+public class RocksDBFactory implements DBFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(RocksDBFactory.class);
+
+    private static final String DATABASE_DIR = "database";
+    private static final String ROCKSDB_DIR = "rocksdb";
+    private static final String SEGMENTS_DIR = "rocksdb-segments";
+
+    private static final long BLOCK_CACHE_SIZE = 128 * 1024 * 1024;
+
+    private static final int ADDRESS_LEN = 20;
+
+    private static final String DEFAULT_COMPRESSION = "lz4";
+
+    static {
+        org.rocksdb.RocksDB.loadLibrary();
+    }
+
+    private org.rocksdb.RocksDB db;
+    private DBOptions options;
+    private LRUCache cache;
+    private List<ColumnFamilyOptions> cfOptions = new ArrayList<>();
+    private ColumnFamilyHandle defaultHandle;
+
+    private Map<DBName, KVDB> databases = new EnumMap<>(DBName.class);
+    private Map<DBName, AppendDB> appendDatabases = new EnumMap<>(DBName.class);
+
+    /**
+     * Open the RocksDB instance, with all column families.
+     */
+    public RocksDBFactory() {
+        this(new File(Config.DATA_DIR, DATABASE_DIR));
+    }
+
+    /**
+     * Open the RocksDB instance under the specified database directory, with all
+     * column families.
+     * 
+     * @param dir
+     */
+    public RocksDBFactory(File dir) {
+        options = new DBOptions();
+        options.setCreateIfMissing(true);
+        options.setCreateMissingColumnFamilies(true);
+        cache = new LRUCache(BLOCK_CACHE_SIZE);
+
+        List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(new ColumnFamilyDescriptor(org.rocksdb.RocksDB.DEFAULT_COLUMN_FAMILY));
+        for (DBName name : DBName.values()) {
+            descriptors.add(new ColumnFamilyDescriptor(Bytes.of(getColumnFamilyName(name)), createOptions(name)));
+        }
+
+        try {
+            File f = new File(dir, ROCKSDB_DIR);
+            f.mkdirs();
+
+            List<ColumnFamilyHandle> handles = new ArrayList<>();
+            db = org.rocksdb.RocksDB.open(options, f.getAbsolutePath(), descriptors, handles);
+
+            // the handles are in the order of the descriptors
+            Map<String, ColumnFamilyHandle> byName = new HashMap<>();
+            for (int i = 0; i < descriptors.size(); i++) {
+                byName.put(Bytes.toString(descriptors.get(i).getName()), handles.get(i));
+            }
+
+            defaultHandle = byName.get(Bytes.toString(org.rocksdb.RocksDB.DEFAULT_COLUMN_FAMILY));
+            for (DBName name : DBName.values()) {
+                databases.put(name, new RocksDB(db, byName.get(getColumnFamilyName(name)), getPrefixLength(name)));
+            }
+        } catch (RocksDBException e) {
+            logger.error("Failed to open database", e);
+            System.exit(-1);
+        }
+
+        File segments = new File(dir, SEGMENTS_DIR);
+        appendDatabases.put(DBName.BLOCK, new SegmentDB(new File(segments, getColumnFamilyName(DBName.BLOCK))));
+    }
+
+    @Override
+    public KVDB getDB(DBName name) {
+        return databases.get(name);
+    }
+
+    @Override
+    public AppendDB getAppendDB(DBName name) {
+        AppendDB adb = appendDatabases.get(name);
+        if (adb == null) {
+            throw new RuntimeException("Unexpected database: " + name);
+        }
+        return adb;
+    }
+
+    @Override
+    public void close() {
+        for (AppendDB adb : appendDatabases.values()) {
+            adb.close();
+        }
+        for (KVDB kvdb : databases.values()) {
+            kvdb.close();
+        }
+        defaultHandle.close();
+        db.close();
+
+        for (ColumnFamilyOptions opts : cfOptions) {
+            opts.close();
+        }
+        cache.close();
+        options.close();
+    }
+
+    /**
+     * Create the options of the column family for the given database.
+     * 
+     * @param name
+     * @return
+     */
+    protected ColumnFamilyOptions createOptions(DBName name) {
+        BlockBasedTableConfig table = new BlockBasedTableConfig();
+        table.setBlockCache(cache);
+        table.setFilterPolicy(new BloomFilter(10, false));
+
+        ColumnFamilyOptions opts = new ColumnFamilyOptions();
+        opts.setTableFormatConfig(table);
+        opts.setCompressionType(getCompressionType(name));
+
+        int prefixLength = getPrefixLength(name);
+        if (prefixLength > 0) {
+            opts.useFixedLengthPrefixExtractor(prefixLength);
+        }
+
+        cfOptions.add(opts);
+        return opts;
+    }
+
+    /**
+     * Returns the configured compression type of the given database.
+     * 
+     * @param name
+     * @return
+     */
+    protected CompressionType getCompressionType(DBName name) {
+        String type = Config.DB_COMPRESSION.getOrDefault(name, DEFAULT_COMPRESSION);
+        CompressionType compression = parseCompressionType(type);
+        if (compression == null) {
+            logger.error("Unsupported compression type for {}: {}, using {}", name, type, DEFAULT_COMPRESSION);
+            compression = parseCompressionType(DEFAULT_COMPRESSION);
+        }
+        return compression;
+    }
+
+    /**
+     * Parses a compression type, as named in the config.
+     * 
+     * @param type
+     * @return the compression type, or null if unknown
+     */
+    protected static CompressionType parseCompressionType(String type) {
+        switch (type) {
+        case "none":
+            return CompressionType.NO_COMPRESSION;
+        case "snappy":
+            return CompressionType.SNAPPY_COMPRESSION;
+        case "zlib":
+            return CompressionType.ZLIB_COMPRESSION;
+        case "bzip2":
+            return CompressionType.BZLIB2_COMPRESSION;
+        case "lz4":
+            return CompressionType.LZ4_COMPRESSION;
+        case "lz4hc":
+            return CompressionType.LZ4HC_COMPRESSION;
+        case "zstd":
+            return CompressionType.ZSTD_COMPRESSION;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the length of the fixed key prefix of the given database.
+     * 
+     * @param name
+     * @return the prefix length, or 0 if keys are not prefixed
+     */
+    protected int getPrefixLength(DBName name) {
+        switch (name) {
+        case INDEX:
+        case VOTE:
+            return ADDRESS_LEN;
+        default:
+            return 0;
+        }
+    }
+
+    private String getColumnFamilyName(DBName name) {
+        return name.toString().toLowerCase();
+    }
+}
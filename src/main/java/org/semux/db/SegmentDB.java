@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.semux.utils.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link AppendDB} made of append-only segment files, which are memory
+ * mapped, so reads are served as slices of the mapped buffers without copying.
+ * Since records are never rewritten, there is no compaction.
+ *
+ * Appends are forced to disk, the record before its index entry, so an appended
+ * record survives a power loss once {@link #append(long, byte[])} returns.
+ *
+ * <pre>
+ * index file structure:
+ *
+ * [number * 12] => [segment, offset, length]
+ * </pre>
+ *
+ * An entry with zero length denotes an empty record.
+ */
+public class SegmentDB implements AppendDB {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentDB.class);
+
+    private static final String INDEX_FILE = "index";
+    private static final String SEGMENT_FILE = "segment-%05d";
+
+    private static final int ENTRY_SIZE = 12;
+
+    /**
+     * Default capacity of a segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    private File dir;
+    private int segmentSize;
+
+    private FileChannel index;
+    private List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+
+    private volatile long size;
+    private int writeSegment;
+    private int writePosition;
+
+    /**
+     * Open a segment database with the default segment size.
+     *
+     * @param dir
+     */
+    public SegmentDB(File dir) {
+        this(dir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open a segment database.
+     *
+     * @param dir
+     * @param segmentSize
+     *            capacity of a segment file; larger records get a segment on their
+     *            own
+     */
+    @SuppressWarnings("resource")
+    public SegmentDB(File dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+
+        try {
+            dir.mkdirs();
+
+            index = new RandomAccessFile(new File(dir, INDEX_FILE), "rw").getChannel();
+            for (int i = 0;; i++) {
+                File f = getSegmentFile(i);
+                if (!f.exists()) {
+                    break;
+                }
+                segments.add(map(f, f.length()));
+            }
+
+            // drop the partially written entry, if any
+            size = index.size() / ENTRY_SIZE;
+            index.truncate(size * ENTRY_SIZE);
+            seekEnd();
+            removeUnusedSegments();
+        } catch (IOException e) {
+            logger.error("Failed to open segment database: {}", dir, e);
+            System.exit(-1);
+        }
+    }
+
+    @Override
+    public synchronized void append(long number, byte[] data) {
+        if (number < size) {
+            throw new RuntimeException("Records can only be appended: number = " + number + ", size = " + size);
+        }
+
+        try {
+            int segment = 0;
+            int offset = 0;
+            if (data.length > 0) {
+                if (segments.isEmpty() || writePosition + data.length > segments.get(writeSegment).capacity()) {
+                    int n = segments.isEmpty() ? 0 : writeSegment + 1;
+                    segments.add(map(getSegmentFile(n), Math.max(segmentSize, data.length)));
+                    writeSegment = n;
+                    writePosition = 0;
+                }
+
+                MappedByteBuffer seg = segments.get(writeSegment);
+                ByteBuffer buf = seg.duplicate();
+                buf.position(writePosition);
+                buf.put(data);
+
+                // the record must be on disk before the index refers to it
+                seg.force();
+
+                segment = writeSegment;
+                offset = writePosition;
+                writePosition += data.length;
+            }
+
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.putInt(segment).putInt(offset).putInt(data.length);
+            entry.flip();
+
+            // gaps are filled with zeros, i.e. empty entries
+            index.write(entry, number * ENTRY_SIZE);
+            index.force(false);
+            size = number + 1;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public ByteBuffer get(long number) {
+        if (number < 0 || number >= size) {
+            return null;
+        }
+
+        try {
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            index.read(entry, number * ENTRY_SIZE);
+            entry.flip();
+
+            int segment = entry.getInt();
+            int offset = entry.getInt();
+            int length = entry.getInt();
+            if (length == 0) {
+                return null;
+            }
+
+            ByteBuffer buf = segments.get(segment).asReadOnlyBuffer();
+            buf.position(offset);
+            buf.limit(offset + length);
+            return buf.slice();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void truncate(long n) {
+        if (n >= size) {
+            return;
+        }
+
+        try {
+            index.truncate(n * ENTRY_SIZE);
+            size = n;
+            seekEnd();
+            removeUnusedSegments();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Flush the written records to disk.
+     */
+    public synchronized void flush() {
+        try {
+            for (MappedByteBuffer seg : segments) {
+                seg.force();
+            }
+            index.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!index.isOpen()) {
+            return;
+        }
+
+        flush();
+        try {
+            index.close();
+        } catch (IOException e) {
+            logger.error("Failed to close segment database: {}", dir, e);
+        }
+        segments.clear();
+    }
+
+    @Override
+    public void destory() {
+        close();
+        FileUtil.recursiveDelete(dir);
+    }
+
+    /**
+     * Moves the write position to the end of the last non-empty record.
+     *
+     * @throws IOException
+     */
+    private void seekEnd() throws IOException {
+        writeSegment = 0;
+        writePosition = 0;
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        for (long i = size - 1; i >= 0; i--) {
+            entry.clear();
+            index.read(entry, i * ENTRY_SIZE);
+            entry.flip();
+
+            int segment = entry.getInt();
+            int offset = entry.getInt();
+            int length = entry.getInt();
+            if (length != 0) {
+                writeSegment = segment;
+                writePosition = offset + length;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes the segments after the write position, which are not referenced by
+     * any record.
+     */
+    private void removeUnusedSegments() {
+        int used = (writePosition == 0) ? writeSegment : writeSegment + 1;
+        for (int i = segments.size() - 1; i >= used; i--) {
+            segments.remove(i);
+            getSegmentFile(i).delete();
+        }
+    }
+
+    private MappedByteBuffer map(File file, long capacity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // the mapping stays valid after the channel is closed
+            return raf.getChannel().map(MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+
+    private File getSegmentFile(int n) {
+        return new File(dir, String.format(SEGMENT_FILE, n));
+    }
+}
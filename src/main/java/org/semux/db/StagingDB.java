@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.semux.utils.ByteArray;
+import org.semux.utils.ClosableIterator;
+
+/**
+ * A KVDB which can hold its updates in memory instead of writing them, so that
+ * the updates of several databases can be collected and written together.
+ *
+ * While staging, reads and iterators see the held updates on top of the
+ * underlying database.
+ */
+public class StagingDB implements KVDB {
+
+    /**
+     * Placeholder of deleted keys, as the map can't hold nulls.
+     */
+    private static final byte[] DELETED = new byte[0];
+
+    private KVDB db;
+
+    private volatile boolean isStaging;
+    private Map<ByteArray, byte[]> staged = new ConcurrentHashMap<>();
+
+    /**
+     * Create a staging DB over a database.
+     *
+     * @param db
+     */
+    public StagingDB(KVDB db) {
+        this.db = db;
+    }
+
+    /**
+     * Starts holding the updates.
+     */
+    public synchronized void stage() {
+        isStaging = true;
+    }
+
+    /**
+     * Returns the held updates.
+     *
+     * @return key value pairs; pairs with null values are deletes
+     */
+    public synchronized List<Pair<byte[], byte[]>> getStaged() {
+        List<Pair<byte[], byte[]>> pairs = new ArrayList<>(staged.size());
+        for (Entry<ByteArray, byte[]> e : staged.entrySet()) {
+            pairs.add(Pair.of(e.getKey().getData(), e.getValue() == DELETED ? null : e.getValue()));
+        }
+        return pairs;
+    }
+
+    /**
+     * Discards the held updates, which are supposed to have been written, and
+     * stops holding updates.
+     */
+    public synchronized void reset() {
+        staged.clear();
+        isStaging = false;
+    }
+
+    /**
+     * Returns the underlying database.
+     *
+     * @return
+     */
+    public KVDB getDB() {
+        return db;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        byte[] value = staged.get(ByteArray.of(key));
+        if (value == null) {
+            return db.get(key);
+        }
+        return value == DELETED ? null : value;
+    }
+
+    @Override
+    public synchronized void put(byte[] key, byte[] value) {
+        if (isStaging) {
+            staged.put(ByteArray.of(key), value);
+        } else {
+            db.put(key, value);
+        }
+    }
+
+    @Override
+    public synchronized void delete(byte[] key) {
+        if (isStaging) {
+            staged.put(ByteArray.of(key), DELETED);
+        } else {
+            db.delete(key);
+        }
+    }
+
+    @Override
+    public synchronized void updateBatch(List<Pair<byte[], byte[]>> pairs) {
+        if (isStaging) {
+            for (Pair<byte[], byte[]> p : pairs) {
+                staged.put(ByteArray.of(p.getLeft()), p.getRight() == null ? DELETED : p.getRight());
+            }
+        } else {
+            db.updateBatch(pairs);
+        }
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator() {
+        return merge(db.iterator(), null);
+    }
+
+    @Override
+    public ClosableIterator<Entry<byte[], byte[]>> iterator(byte[] prefix) {
+        return merge(db.iterator(prefix), prefix);
+    }
+
+    @Override
+    public void close() {
+        db.close();
+    }
+
+    /**
+     * Merges the held updates into an iterator of the underlying database.
+     *
+     * @param itr
+     * @param from
+     *            the key the iterator starts at, or null for the first one
+     * @return
+     */
+    private ClosableIterator<Entry<byte[], byte[]>> merge(ClosableIterator<Entry<byte[], byte[]>> itr, byte[] from) {
+        if (staged.isEmpty()) {
+            return itr;
+        }
+
+        TreeMap<byte[], byte[]> updates = new TreeMap<>(MemoryDB::compare);
+        for (Entry<ByteArray, byte[]> e : staged.entrySet()) {
+            if (from == null || MemoryDB.compare(e.getKey().getData(), from) >= 0) {
+                updates.put(e.getKey().getData(), e.getValue());
+            }
+        }
+        Iterator<Entry<byte[], byte[]>> upd = updates.entrySet().iterator();
+
+        return new ClosableIterator<Entry<byte[], byte[]>>() {
+            private Entry<byte[], byte[]> a = itr.hasNext() ? itr.next() : null;
+            private Entry<byte[], byte[]> b = upd.hasNext() ? upd.next() : null;
+            private Entry<byte[], byte[]> next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Entry<byte[], byte[]> e = next;
+                next = advance();
+                return e;
+            }
+
+            @Override
+            public void close() {
+                itr.close();
+            }
+
+            private Entry<byte[], byte[]> advance() {
+                while (a != null || b != null) {
+                    int c = (a == null) ? 1 : (b == null) ? -1 : MemoryDB.compare(a.getKey(), b.getKey());
+                    if (c < 0) {
+                        Entry<byte[], byte[]> e = a;
+                        a = itr.hasNext() ? itr.next() : null;
+                        return e;
+                    }
+
+                    Entry<byte[], byte[]> e = b;
+                    b = upd.hasNext() ? upd.next() : null;
+                    if (c == 0) {
+                        a = itr.hasNext() ? itr.next() : null;
+                    }
+                    if (e.getValue() != DELETED) {
+                        return e;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public void destory() {
+        db.destory();
+    }
+}
@@ -13,7 +13,7 @@ import javax.swing.JTextArea;
 import javax.swing.LayoutStyle.ComponentPlacement;
 
 import org.semux.Kernel;
-import org.semux.core.Block;
+import org.semux.core.BlockHeader;
 import org.semux.core.Delegate;
 import org.semux.core.Unit;
 import org.semux.crypto.Hex;
@@ -33,7 +33,7 @@ public class DelegateDialog extends JDialog {
     }
 
     public DelegateDialog(JComponent parent, Delegate d) {
-        Block block = Kernel.getInstance().getBlockchain().getBlock(d.getRegisteredAt());
+        BlockHeader header = Kernel.getInstance().getBlockchain().getBlockHeader(d.getRegisteredAt());
 
         JLabel lblName = new JLabel("Name:");
         JLabel lblAddress = new JLabel("Address:");
@@ -48,7 +48,7 @@ public class DelegateDialog extends JDialog {
         JTextArea name = selectableText(d.getNameString());
         JTextArea address = selectableText(Hex.PREF + Hex.encode(d.getAddress()));
         JLabel registeredAt = new JLabel(
-                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(block.getTimestamp())));
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(header.getTimestamp())));
         JLabel votes = new JLabel(Long.toString(d.getVotes() / Unit.SEM));
         JLabel votesFromMe = new JLabel(Long.toString(d.getVotesFromMe() / Unit.SEM));
         JLabel numOfBlocksForged = new JLabel(Long.toString(d.getNumberOfBlocksForged()));
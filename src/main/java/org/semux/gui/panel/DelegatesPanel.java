@@ -10,7 +10,6 @@ import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 
 import javax.swing.GroupLayout;
@@ -37,6 +36,7 @@ import org.semux.core.PendingManager;
 import org.semux.core.Transaction;
 import org.semux.core.TransactionType;
 import org.semux.core.Unit;
+import org.semux.core.ValidatorSet;
 import org.semux.core.state.DelegateState;
 import org.semux.crypto.Hex;
 import org.semux.gui.Action;
@@ -287,8 +287,8 @@ public class DelegatesPanel extends JPanel implements ActionListener {
             case 4:
                 return d.getVotesFromMe() / Unit.SEM;
             case 5:
-                List<String> validators = Kernel.getInstance().getBlockchain().getValidators();
-                return new HashSet<>(validators).contains(Hex.encode(d.getAddress())) ? "V" : "S";
+                ValidatorSet validators = Kernel.getInstance().getBlockchain().getValidatorSet();
+                return validators.contains(d.getAddress()) ? "V" : "S";
             case 6:
                 return SwingUtil.formatDouble(d.getRate(), SwingUtil.DEFAULT_PERCENTAGE_FORMAT) + " %";
             default:
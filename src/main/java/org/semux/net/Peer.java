@@ -6,6 +6,10 @@
  */
 package org.semux.net;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.ArrayUtils;
 import org.semux.utils.SimpleDecoder;
 import org.semux.utils.SimpleEncoder;
 
@@ -25,6 +29,13 @@ public class Peer {
     private String peerId;
     private long latestBlockNumber;
 
+    /*
+     * Capabilities are encoded after the fields above, where peers which don't
+     * know them stop reading, so they can be added without changing the P2P
+     * version, which peers require to match exactly.
+     */
+    private String[] capabilities;
+
     /*
      * Variables below are not persisted
      */
@@ -41,6 +52,22 @@ public class Peer {
      * @param latestBlockNumber
      */
     public Peer(String ip, int port, short p2pVersion, String clientId, String peerId, long latestBlockNumber) {
+        this(ip, port, p2pVersion, clientId, peerId, latestBlockNumber, ArrayUtils.EMPTY_STRING_ARRAY);
+    }
+
+    /**
+     * Create a new Peer with capabilities.
+     * 
+     * @param ip
+     * @param port
+     * @param p2pVersion
+     * @param clientId
+     * @param peerId
+     * @param latestBlockNumber
+     * @param capabilities
+     */
+    public Peer(String ip, int port, short p2pVersion, String clientId, String peerId, long latestBlockNumber,
+            String[] capabilities) {
         super();
         this.ip = ip;
         this.port = port;
@@ -48,6 +75,7 @@ public class Peer {
         this.latestBlockNumber = latestBlockNumber;
         this.p2pVersion = p2pVersion;
         this.clientId = clientId;
+        this.capabilities = capabilities;
     }
 
     /**
@@ -113,6 +141,25 @@ public class Peer {
         this.latestBlockNumber = number;
     }
 
+    /**
+     * Get the capabilities.
+     * 
+     * @return
+     */
+    public String[] getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * Check whether the peer has a capability.
+     * 
+     * @param capability
+     * @return
+     */
+    public boolean supports(String capability) {
+        return ArrayUtils.contains(capabilities, capability);
+    }
+
     /**
      * Get peer latency.
      * 
@@ -144,6 +191,10 @@ public class Peer {
         enc.writeString(clientId);
         enc.writeString(peerId);
         enc.writeLong(latestBlockNumber);
+        enc.writeInt(capabilities.length);
+        for (String capability : capabilities) {
+            enc.writeString(capability);
+        }
 
         return enc.toBytes();
     }
@@ -163,7 +214,19 @@ public class Peer {
         String peerId = dec.readString();
         long latestBlockNumber = dec.readLong();
 
-        return new Peer(ip, port, p2pVersion, clientId, peerId, latestBlockNumber);
+        // peers not advertising capabilities end here
+        String[] capabilities = ArrayUtils.EMPTY_STRING_ARRAY;
+        if (dec.getReadIndex() < bytes.length) {
+            // read one by one, as the count is untrusted
+            int n = dec.readInt();
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                list.add(dec.readString());
+            }
+            capabilities = list.toArray(capabilities);
+        }
+
+        return new Peer(ip, port, p2pVersion, clientId, peerId, latestBlockNumber, capabilities);
     }
 
     /**
@@ -6,6 +6,7 @@
  */
 package org.semux.net;
 
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -23,6 +24,7 @@ import org.semux.core.Blockchain;
 import org.semux.core.Consensus;
 import org.semux.core.PendingManager;
 import org.semux.core.Sync;
+import org.semux.core.Transaction;
 import org.semux.net.msg.Message;
 import org.semux.net.msg.MessageQueue;
 import org.semux.net.msg.MessageRoundtrip;
@@ -34,11 +36,14 @@ import org.semux.net.msg.consensus.GetBlockHeaderMessage;
 import org.semux.net.msg.consensus.GetBlockMessage;
 import org.semux.net.msg.p2p.DisconnectMessage;
 import org.semux.net.msg.p2p.GetNodesMessage;
+import org.semux.net.msg.p2p.GetTransactionsMessage;
 import org.semux.net.msg.p2p.HelloMessage;
 import org.semux.net.msg.p2p.NodesMessage;
 import org.semux.net.msg.p2p.PingMessage;
 import org.semux.net.msg.p2p.PongMessage;
+import org.semux.net.msg.p2p.TransactionHashesMessage;
 import org.semux.net.msg.p2p.TransactionMessage;
+import org.semux.net.msg.p2p.TransactionsMessage;
 import org.semux.net.msg.p2p.WorldMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -118,7 +123,7 @@ public class SemuxP2pHandler extends SimpleChannelInboundHandler<Message> {
         // send a HELLO message to initiate handshake
         if (!channel.isInbound()) {
             Peer peer = new Peer(client.getIp(), client.getPort(), Config.P2P_VERSION, Config.getClientId(false),
-                    client.getPeerId(), chain.getLatestBlockNumber());
+                    client.getPeerId(), chain.getLatestBlockNumber(), Config.P2P_CAPABILITIES);
             HelloMessage msg = new HelloMessage(peer, client.getCoinbase());
             msgQueue.sendMessage(msg);
         }
@@ -162,7 +167,7 @@ public class SemuxP2pHandler extends SimpleChannelInboundHandler<Message> {
                 error = ReasonCode.BAD_PROTOCOL;
             } else if (client.getPeerId().equals(peer.getPeerId()) || channelMgr.isActivePeer(peer.getPeerId())) {
                 error = ReasonCode.DUPLICATE_PEER_ID;
-            } else if (chain.getValidators().contains(peer.getPeerId())
+            } else if (chain.getValidatorSet().contains(peer.getPeerId())
                     && channelMgr.isActiveIP(channel.getRemoteIp())) {
                 error = ReasonCode.SLOW_PEER;
             } else if (!helloMsg.isValid()) {
@@ -175,7 +180,7 @@ public class SemuxP2pHandler extends SimpleChannelInboundHandler<Message> {
 
                 // reply with a WORLD message
                 peer = new Peer(client.getIp(), client.getPort(), Config.P2P_VERSION, Config.getClientId(false),
-                        client.getPeerId(), chain.getLatestBlockNumber());
+                        client.getPeerId(), chain.getLatestBlockNumber(), Config.P2P_CAPABILITIES);
                 WorldMessage worldMsg = new WorldMessage(peer, client.getCoinbase());
                 msgQueue.sendMessage(worldMsg);
 
@@ -223,6 +228,29 @@ public class SemuxP2pHandler extends SimpleChannelInboundHandler<Message> {
             pendingMgr.addTransaction(transactionMsg.getTransaction());
             break;
         }
+        case TRANSACTION_HASHES: {
+            TransactionHashesMessage hashesMsg = (TransactionHashesMessage) msg;
+            List<byte[]> hashes = pendingMgr.requestTransactions(hashesMsg.getHashes());
+            if (!hashes.isEmpty()) {
+                msgQueue.sendMessage(new GetTransactionsMessage(hashes));
+            }
+            break;
+        }
+        case GET_TRANSACTIONS: {
+            GetTransactionsMessage getMsg = (GetTransactionsMessage) msg;
+            List<Transaction> txs = pendingMgr.getTransactions(getMsg.getHashes());
+            if (!txs.isEmpty()) {
+                msgQueue.sendMessage(new TransactionsMessage(txs));
+            }
+            break;
+        }
+        case TRANSACTIONS: {
+            TransactionsMessage transactionsMsg = (TransactionsMessage) msg;
+            for (Transaction tx : transactionsMsg.getTransactions()) {
+                pendingMgr.addTransaction(tx);
+            }
+            break;
+        }
 
         /* sync */
         case GET_BLOCK: {
@@ -52,6 +52,21 @@ public enum MessageCode {
      */
     TRANSACTION(0x07),
 
+    /**
+     * [0x08] Announce the hashes of new transactions.
+     */
+    TRANSACTION_HASHES(0x08),
+
+    /**
+     * [0x09] Request transactions by hash.
+     */
+    GET_TRANSACTIONS(0x09),
+
+    /**
+     * [0x0a] Response to a GET_TRANSACTIONS message.
+     */
+    TRANSACTIONS(0x0a),
+
     // =======================================
     // [0x30, 0x3f] Reserved for sync
     // =======================================
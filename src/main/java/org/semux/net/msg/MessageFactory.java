@@ -16,11 +16,14 @@ import org.semux.net.msg.consensus.GetBlockHeaderMessage;
 import org.semux.net.msg.consensus.GetBlockMessage;
 import org.semux.net.msg.p2p.DisconnectMessage;
 import org.semux.net.msg.p2p.GetNodesMessage;
+import org.semux.net.msg.p2p.GetTransactionsMessage;
 import org.semux.net.msg.p2p.HelloMessage;
 import org.semux.net.msg.p2p.NodesMessage;
 import org.semux.net.msg.p2p.PingMessage;
 import org.semux.net.msg.p2p.PongMessage;
+import org.semux.net.msg.p2p.TransactionHashesMessage;
 import org.semux.net.msg.p2p.TransactionMessage;
+import org.semux.net.msg.p2p.TransactionsMessage;
 import org.semux.net.msg.p2p.WorldMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +65,12 @@ public class MessageFactory {
                 return new NodesMessage(encoded);
             case TRANSACTION:
                 return new TransactionMessage(encoded);
+            case TRANSACTION_HASHES:
+                return new TransactionHashesMessage(encoded);
+            case GET_TRANSACTIONS:
+                return new GetTransactionsMessage(encoded);
+            case TRANSACTIONS:
+                return new TransactionsMessage(encoded);
 
             case GET_BLOCK:
                 return new GetBlockMessage(encoded);
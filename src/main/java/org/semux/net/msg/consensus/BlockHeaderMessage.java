@@ -18,7 +18,7 @@ public class BlockHeaderMessage extends Message {
     private BlockHeader header;
 
     public BlockHeaderMessage(BlockHeader header) {
-        super(MessageCode.GET_BLOCK_HEADER, null);
+        super(MessageCode.BLOCK_HEADER, null);
 
         this.header = header;
 
@@ -28,7 +28,7 @@ public class BlockHeaderMessage extends Message {
     }
 
     public BlockHeaderMessage(byte[] encoded) {
-        super(MessageCode.GET_BLOCK, null);
+        super(MessageCode.BLOCK_HEADER, null);
 
         this.encoded = encoded;
 
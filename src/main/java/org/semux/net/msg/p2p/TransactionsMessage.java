@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.net.msg.p2p;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.semux.core.Transaction;
+import org.semux.net.msg.Message;
+import org.semux.net.msg.MessageCode;
+import org.semux.utils.SimpleDecoder;
+import org.semux.utils.SimpleEncoder;
+
+public class TransactionsMessage extends Message {
+
+    private List<Transaction> transactions;
+
+    /**
+     * Create a TRANSACTIONS message.
+     * 
+     * @param transactions
+     */
+    public TransactionsMessage(List<Transaction> transactions) {
+        super(MessageCode.TRANSACTIONS, null);
+
+        this.transactions = transactions;
+
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeInt(transactions.size());
+        for (Transaction tx : transactions) {
+            enc.writeBytes(tx.toBytes());
+        }
+        this.encoded = enc.toBytes();
+    }
+
+    /**
+     * Parse a TRANSACTIONS message from byte array.
+     * 
+     * @param encoded
+     */
+    public TransactionsMessage(byte[] encoded) {
+        super(MessageCode.TRANSACTIONS, null);
+
+        this.encoded = encoded;
+
+        transactions = new ArrayList<>();
+        SimpleDecoder dec = new SimpleDecoder(encoded);
+        int n = dec.readInt();
+        for (int i = 0; i < n && i < TransactionHashesMessage.MAX_HASHES; i++) {
+            transactions.add(Transaction.fromBytes(dec.readBytes()));
+        }
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionsMessage [# txs =" + transactions.size() + "]";
+    }
+}
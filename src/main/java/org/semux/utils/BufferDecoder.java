@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.utils;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decoder reading from a {@link ByteBuffer}, heap or direct, in the encoding of
+ * {@link SimpleEncoder} and {@link BufferEncoder}. Byte arrays can be read as
+ * slices of the input, without copying.
+ */
+public class BufferDecoder {
+
+    private final ByteBuffer buf;
+
+    public BufferDecoder(byte[] in) {
+        this(ByteBuffer.wrap(in));
+    }
+
+    /**
+     * Create a decoder reading the remaining bytes of the given buffer, whose
+     * position is not changed.
+     *
+     * @param buf
+     */
+    public BufferDecoder(ByteBuffer buf) {
+        this.buf = buf.duplicate();
+        this.buf.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    public boolean readBoolean() {
+        return buf.get() > 0;
+    }
+
+    public byte readByte() {
+        return buf.get();
+    }
+
+    public short readShort() {
+        return buf.getShort();
+    }
+
+    public int readInt() {
+        return buf.getInt();
+    }
+
+    public long readLong() {
+        return buf.getLong();
+    }
+
+    public byte[] readBytes() {
+        byte[] bytes = new byte[readLength()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a length-prefixed byte array, as a slice of the input.
+     *
+     * @return
+     */
+    public ByteBuffer readSlice() {
+        int len = readLength();
+
+        ByteBuffer slice = buf.slice();
+        ((Buffer) slice).limit(len);
+        ((Buffer) buf).position(buf.position() + len);
+        return slice;
+    }
+
+    /**
+     * Returns the number of bytes read.
+     *
+     * @return
+     */
+    public int getReadIndex() {
+        return buf.position();
+    }
+
+    private int readLength() {
+        int len = buf.getInt();
+        if (len < 0 || len > buf.remaining()) {
+            throw new IndexOutOfBoundsException("length = " + len + ", remaining = " + buf.remaining());
+        }
+        return len;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.utils;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encoder writing into a pre-sized {@link ByteBuffer}, which may be heap or
+ * direct, and may be reused after {@link #reset()}. It produces the same
+ * encoding as {@link SimpleEncoder}.
+ *
+ * The buffer is never grown; use the <code>sizeOf</code> methods to compute
+ * the exact size beforehand. Writing past the capacity throws
+ * {@link java.nio.BufferOverflowException}.
+ */
+public class BufferEncoder {
+
+    public static final int SIZE_BOOLEAN = 1;
+    public static final int SIZE_BYTE = 1;
+    public static final int SIZE_SHORT = 2;
+    public static final int SIZE_INT = 4;
+    public static final int SIZE_LONG = 8;
+
+    private final ByteBuffer buf;
+
+    /**
+     * Create an encoder over a new heap buffer.
+     *
+     * @param size
+     *            the exact size of the encoding
+     */
+    public BufferEncoder(int size) {
+        this(ByteBuffer.allocate(size));
+    }
+
+    /**
+     * Create an encoder writing from the current position of the given buffer.
+     *
+     * @param buf
+     */
+    public BufferEncoder(ByteBuffer buf) {
+        this.buf = buf;
+        buf.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Returns the encoded size of a length-prefixed byte array.
+     *
+     * @param bytes
+     * @return
+     */
+    public static int sizeOf(byte[] bytes) {
+        return SIZE_INT + bytes.length;
+    }
+
+    public void writeBoolean(boolean b) {
+        buf.put((byte) (b ? 1 : 0));
+    }
+
+    public void writeByte(byte b) {
+        buf.put(b);
+    }
+
+    public void writeShort(short s) {
+        buf.putShort(s);
+    }
+
+    public void writeInt(int i) {
+        buf.putInt(i);
+    }
+
+    public void writeLong(long l) {
+        buf.putLong(l);
+    }
+
+    public void writeBytes(byte[] bytes) {
+        buf.putInt(bytes.length);
+        buf.put(bytes);
+    }
+
+    /**
+     * Writes bytes as they are, without a length prefix, e.g. an encoding being
+     * extended.
+     *
+     * @param bytes
+     */
+    public void writeRaw(byte[] bytes) {
+        buf.put(bytes);
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer, length prefixed, without changing
+     * its position.
+     *
+     * @param bytes
+     */
+    public void writeBytes(ByteBuffer bytes) {
+        buf.putInt(bytes.remaining());
+        buf.put(bytes.duplicate());
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return
+     */
+    public int getWriteIndex() {
+        return buf.position();
+    }
+
+    /**
+     * Discards what's written, so the buffer can be reused.
+     */
+    public void reset() {
+        ((Buffer) buf).clear();
+    }
+
+    /**
+     * Returns a view of the bytes written, without copying.
+     *
+     * @return
+     */
+    public ByteBuffer toBuffer() {
+        ByteBuffer b = buf.duplicate();
+        ((Buffer) b).flip();
+        return b;
+    }
+
+    /**
+     * Returns the bytes written. If the buffer was sized exactly, its backing
+     * array is returned without copying.
+     *
+     * @return
+     */
+    public byte[] toBytes() {
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.position() == buf.array().length) {
+            return buf.array();
+        }
+
+        byte[] bytes = new byte[buf.position()];
+        ByteBuffer b = toBuffer();
+        b.get(bytes);
+        return bytes;
+    }
+}
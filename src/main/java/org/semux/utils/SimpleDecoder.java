@@ -95,6 +95,14 @@ public class SimpleDecoder {
         }
     }
 
+    public void skip(int n) {
+        if (n < 0) {
+            throw new IndexOutOfBoundsException("Negative length: " + n);
+        }
+        require(n);
+        index += n;
+    }
+
     public SimpleDecoder readRecursively() {
         int len = readInt();
 
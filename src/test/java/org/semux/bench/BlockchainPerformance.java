@@ -4,38 +4,12 @@ import org.semux.core.Block;
 import org.semux.core.Blockchain;
 import org.semux.core.BlockchainImpl;
 import org.semux.db.DBFactory;
-import org.semux.db.DBName;
-import org.semux.db.KVDB;
-import org.semux.db.LevelDB;
+import org.semux.db.LevelDBFactory;
 
 public class BlockchainPerformance {
 
     public static void blockDbSizes() {
-        DBFactory dbFactory = new DBFactory() {
-            private final KVDB indexDB = new LevelDB(DBName.INDEX);
-            private final KVDB blockDB = new LevelDB(DBName.BLOCK);
-            private final KVDB accountDB = new LevelDB(DBName.ACCOUNT);
-            private final KVDB delegateDB = new LevelDB(DBName.DELEGATE);
-            private final KVDB voteDB = new LevelDB(DBName.VOTE);
-
-            @Override
-            public KVDB getDB(DBName name) {
-                switch (name) {
-                case INDEX:
-                    return indexDB;
-                case BLOCK:
-                    return blockDB;
-                case ACCOUNT:
-                    return accountDB;
-                case DELEGATE:
-                    return delegateDB;
-                case VOTE:
-                    return voteDB;
-                default:
-                    throw new RuntimeException("Unexpected database: " + name);
-                }
-            }
-        };
+        DBFactory dbFactory = new LevelDBFactory();
         Blockchain chain = new BlockchainImpl(dbFactory);
 
         long total = 0;
@@ -54,6 +28,8 @@ public class BlockchainPerformance {
         System.out.println("AVG: " + total / n);
         System.out.println("MAX: " + max);
         System.out.println("MIN:" + min);
+
+        dbFactory.close();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.bench;
+
+import java.nio.ByteBuffer;
+
+import org.semux.consensus.VoteType;
+import org.semux.core.Transaction;
+import org.semux.core.TransactionType;
+import org.semux.crypto.EdDSA;
+import org.semux.utils.BufferDecoder;
+import org.semux.utils.BufferEncoder;
+import org.semux.utils.Bytes;
+import org.semux.utils.SimpleDecoder;
+import org.semux.utils.SimpleEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares {@link SimpleEncoder}/{@link SimpleDecoder} with
+ * {@link BufferEncoder}/{@link BufferDecoder} on the encodings of transactions,
+ * votes and blocks.
+ */
+public class CodecPerformance {
+    private static Logger logger = LoggerFactory.getLogger(CodecPerformance.class);
+
+    private static int WARMUP = 100_000;
+    private static int REPEAT = 1_000_000;
+    private static int BLOCK_SIZE = 5_000;
+    private static int BLOCK_REPEAT = 200;
+
+    private static byte[] from = Bytes.random(20);
+    private static byte[] to = Bytes.random(20);
+    private static byte[] data = Bytes.random(32);
+    private static byte[] blockHash = Bytes.random(32);
+
+    private static Object sink;
+
+    public static void testTransaction() {
+        ByteBuffer reusable = ByteBuffer.allocateDirect(1024);
+
+        for (int k = 0; k < 2; k++) {
+            int n = (k == 0) ? WARMUP : REPEAT;
+
+            long t1 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                SimpleEncoder enc = new SimpleEncoder();
+                enc.writeByte(TransactionType.TRANSFER.toByte());
+                enc.writeBytes(from);
+                enc.writeBytes(to);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeBytes(data);
+                sink = enc.toBytes();
+            }
+            long t2 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                BufferEncoder enc = new BufferEncoder(BufferEncoder.SIZE_BYTE + BufferEncoder.sizeOf(from)
+                        + BufferEncoder.sizeOf(to) + 4 * BufferEncoder.SIZE_LONG + BufferEncoder.sizeOf(data));
+                enc.writeByte(TransactionType.TRANSFER.toByte());
+                enc.writeBytes(from);
+                enc.writeBytes(to);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeBytes(data);
+                sink = enc.toBytes();
+            }
+            long t3 = System.nanoTime();
+            BufferEncoder enc = new BufferEncoder(reusable);
+            for (int i = 0; i < n; i++) {
+                enc.reset();
+                enc.writeByte(TransactionType.TRANSFER.toByte());
+                enc.writeBytes(from);
+                enc.writeBytes(to);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeLong(i);
+                enc.writeBytes(data);
+                sink = enc.toBuffer();
+            }
+            long t4 = System.nanoTime();
+
+            if (k == 1) {
+                logger.info("Perf_encode_tx_simple: {} ns/tx", (t2 - t1) / n);
+                logger.info("Perf_encode_tx_buffer_exact: {} ns/tx", (t3 - t2) / n);
+                logger.info("Perf_encode_tx_buffer_reused_direct: {} ns/tx", (t4 - t3) / n);
+            }
+        }
+    }
+
+    public static void testVote() {
+        for (int k = 0; k < 2; k++) {
+            int n = (k == 0) ? WARMUP : REPEAT;
+
+            long t1 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                SimpleEncoder enc = new SimpleEncoder();
+                enc.writeByte(VoteType.PRECOMMIT.toByte());
+                enc.writeBoolean(true);
+                enc.writeLong(i);
+                enc.writeInt(i);
+                enc.writeBytes(blockHash);
+                sink = enc.toBytes();
+            }
+            long t2 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                BufferEncoder enc = new BufferEncoder(BufferEncoder.SIZE_BYTE + BufferEncoder.SIZE_BOOLEAN
+                        + BufferEncoder.SIZE_LONG + BufferEncoder.SIZE_INT + BufferEncoder.sizeOf(blockHash));
+                enc.writeByte(VoteType.PRECOMMIT.toByte());
+                enc.writeBoolean(true);
+                enc.writeLong(i);
+                enc.writeInt(i);
+                enc.writeBytes(blockHash);
+                sink = enc.toBytes();
+            }
+            long t3 = System.nanoTime();
+
+            if (k == 1) {
+                logger.info("Perf_encode_vote_simple: {} ns/vote", (t2 - t1) / n);
+                logger.info("Perf_encode_vote_buffer_exact: {} ns/vote", (t3 - t2) / n);
+            }
+        }
+    }
+
+    public static void testBlock() {
+        EdDSA key = new EdDSA();
+        byte[][] txs = new byte[BLOCK_SIZE][];
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            txs[i] = new Transaction(TransactionType.TRANSFER, key.toAddress(), to, i, i, i, i, data).sign(key)
+                    .toBytes();
+        }
+        byte[] header = Bytes.random(300);
+
+        for (int k = 0; k < 2; k++) {
+            int n = (k == 0) ? BLOCK_REPEAT / 4 : BLOCK_REPEAT;
+
+            long t1 = System.nanoTime();
+            byte[] encoded = null;
+            for (int i = 0; i < n; i++) {
+                SimpleEncoder enc = new SimpleEncoder();
+                enc.writeBytes(header);
+                enc.writeInt(txs.length);
+                for (byte[] tx : txs) {
+                    enc.writeBytes(tx);
+                }
+                encoded = enc.toBytes();
+            }
+            long t2 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                int size = BufferEncoder.sizeOf(header) + BufferEncoder.SIZE_INT;
+                for (byte[] tx : txs) {
+                    size += BufferEncoder.sizeOf(tx);
+                }
+                BufferEncoder enc = new BufferEncoder(size);
+                enc.writeBytes(header);
+                enc.writeInt(txs.length);
+                for (byte[] tx : txs) {
+                    enc.writeBytes(tx);
+                }
+                sink = enc.toBytes();
+            }
+            long t3 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                SimpleDecoder dec = new SimpleDecoder(encoded);
+                dec.readBytes();
+                for (int j = dec.readInt(); j > 0; j--) {
+                    sink = dec.readBytes();
+                }
+            }
+            long t4 = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                BufferDecoder dec = new BufferDecoder(encoded);
+                dec.readSlice();
+                for (int j = dec.readInt(); j > 0; j--) {
+                    sink = dec.readSlice();
+                }
+            }
+            long t5 = System.nanoTime();
+
+            if (k == 1) {
+                logger.info("Perf_encode_block_{}_simple: {} μs/block", BLOCK_SIZE, (t2 - t1) / 1_000 / n);
+                logger.info("Perf_encode_block_{}_buffer_exact: {} μs/block", BLOCK_SIZE, (t3 - t2) / 1_000 / n);
+                logger.info("Perf_decode_block_{}_simple_copy: {} μs/block", BLOCK_SIZE, (t4 - t3) / 1_000 / n);
+                logger.info("Perf_decode_block_{}_buffer_slice: {} μs/block", BLOCK_SIZE, (t5 - t4) / 1_000 / n);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        testTransaction();
+        testVote();
+        testBlock();
+    }
+}
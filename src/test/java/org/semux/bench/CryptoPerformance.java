@@ -6,8 +6,11 @@
  */
 package org.semux.bench;
 
+import org.semux.crypto.BatchVerifier;
 import org.semux.crypto.EdDSA;
+import org.semux.crypto.EdDSA.Signature;
 import org.semux.crypto.Hash;
+import org.semux.utils.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +19,7 @@ public class CryptoPerformance {
 
     private static int[] DATA_SIZES = { 1024, 1024 * 1024 };
     private static int REPEAT = 1000;
+    private static int[] BATCH_SIZES = { 64, 1024, 10_000 };
 
     public static void testH256() {
         for (int size : DATA_SIZES) {
@@ -78,10 +82,69 @@ public class CryptoPerformance {
         }
     }
 
+    public static void testVerifyKeyCache() {
+        byte[][] hashes = new byte[REPEAT][];
+        Signature[] sigsDistinct = new Signature[REPEAT];
+        Signature[] sigsSame = new Signature[REPEAT];
+        EdDSA key = new EdDSA();
+        for (int i = 0; i < REPEAT; i++) {
+            hashes[i] = Bytes.random(32);
+            sigsDistinct[i] = new EdDSA().sign(hashes[i]);
+            sigsSame[i] = key.sign(hashes[i]);
+        }
+
+        // every key is new, so each one is decoded
+        long t1 = System.nanoTime();
+        for (int i = 0; i < REPEAT; i++) {
+            EdDSA.verify(hashes[i], sigsDistinct[i]);
+        }
+        long t2 = System.nanoTime();
+
+        // the key is decoded once
+        for (int i = 0; i < REPEAT; i++) {
+            EdDSA.verify(hashes[i], sigsSame[i]);
+        }
+        long t3 = System.nanoTime();
+
+        logger.info("Perf_verify_key_miss: {} μs/time", (t2 - t1) / 1_000 / REPEAT);
+        logger.info("Perf_verify_key_hit: {} μs/time, speedup = {}", (t3 - t2) / 1_000 / REPEAT,
+                String.format("%.2f", (double) (t2 - t1) / (t3 - t2)));
+    }
+
+    public static void testBatchVerify() {
+        for (int size : BATCH_SIZES) {
+            byte[][] hashes = new byte[size][];
+            Signature[] sigs = new Signature[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = Bytes.random(32);
+                sigs[i] = new EdDSA().sign(hashes[i]);
+            }
+
+            long t1 = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                EdDSA.verify(hashes[i], sigs[i]);
+            }
+            long t2 = System.nanoTime();
+
+            BatchVerifier verifier = new BatchVerifier(null, true);
+            for (int i = 0; i < size; i++) {
+                verifier.add(hashes[i], sigs[i]);
+            }
+            verifier.verify();
+            long t3 = System.nanoTime();
+
+            logger.info("Perf_verify_single_{}: {} μs/sig", size, (t2 - t1) / 1_000 / size);
+            logger.info("Perf_verify_batch_{}: {} μs/sig, speedup = {}", size, (t3 - t2) / 1_000 / size,
+                    String.format("%.2f", (double) (t2 - t1) / (t3 - t2)));
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         testH256();
         testH160();
         testSign();
         testVerify();
+        testVerifyKeyCache();
+        testBatchVerify();
     }
 }
@@ -23,6 +23,7 @@ import org.semux.core.Genesis;
 import org.semux.core.PendingManager;
 import org.semux.core.Transaction;
 import org.semux.core.TransactionResult;
+import org.semux.core.ValidationPool;
 import org.semux.crypto.EdDSA;
 import org.semux.crypto.EdDSA.Signature;
 import org.semux.crypto.Hash;
@@ -46,7 +47,7 @@ public class SemuxBFTTest {
 
         bft = SemuxBFT.getInstance();
         coinbase = new EdDSA();
-        bft.init(chain, channelMgr, pendingMgr, coinbase);
+        bft.init(chain, channelMgr, pendingMgr, new ValidationPool(2), coinbase);
 
         new Thread(() -> {
             bft.start();
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.semux.crypto.EdDSA;
+import org.semux.crypto.Hash;
+import org.semux.utils.Bytes;
+
+public class BlockCacheTest {
+
+    @Test
+    public void testGetBlock() {
+        BlockCache cache = new BlockCache(1024, 1024);
+        Block block = createBlock(1);
+        cache.putBlock(block, 100);
+
+        assertSame(block, cache.getBlock(1));
+        assertSame(block, cache.getBlock(block.getHash()));
+        assertNull(cache.getBlock(2));
+        assertEquals(2, cache.getBlockHits());
+        assertEquals(1, cache.getBlockMisses());
+
+        assertSame(block.getHeader(), cache.getBlockHeader(1));
+        assertSame(block.getHeader(), cache.getBlockHeader(block.getHash()));
+        assertEquals(2, cache.getHeaderHits());
+    }
+
+    @Test
+    public void testEviction() {
+        BlockCache cache = new BlockCache(250, 250);
+        Block b1 = createBlock(1);
+        Block b2 = createBlock(2);
+        Block b3 = createBlock(3);
+
+        cache.putBlock(b1, 100);
+        cache.putBlock(b2, 100);
+        cache.getBlock(1); // b2 becomes the eldest
+        cache.putBlock(b3, 100);
+
+        assertSame(b1, cache.getBlock(1));
+        assertNull(cache.getBlock(2));
+        assertNull(cache.getBlock(b2.getHash()));
+        assertSame(b3, cache.getBlock(3));
+        assertEquals(200, cache.getBlocksSize());
+
+        // too large to be cached
+        cache.putBlock(createBlock(4), 300);
+        assertNull(cache.getBlock(4));
+        assertEquals(200, cache.getBlocksSize());
+    }
+
+    private Block createBlock(long number) {
+        BlockHeader header = new BlockHeader(number, Bytes.random(20), Bytes.random(32), System.currentTimeMillis(),
+                Hash.EMPTY_H256, Hash.EMPTY_H256, Hash.EMPTY_H256, Bytes.EMPY_BYTES);
+        return new Block(header.sign(new EdDSA()), Collections.emptyList(), Collections.emptyList());
+    }
+}
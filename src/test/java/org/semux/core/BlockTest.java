@@ -2,19 +2,27 @@ package org.semux.core;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 import org.semux.Config;
 import org.semux.crypto.EdDSA;
 import org.semux.crypto.EdDSA.Signature;
+import org.semux.crypto.Hash;
 import org.semux.utils.Bytes;
+import org.semux.utils.MerkleUtil;
 
 public class BlockTest {
     private long number = 1;
@@ -90,4 +98,84 @@ public class BlockTest {
                 .fromBytes(Arrays.copyOfRange(bytes, index.getLeft(), index.getLeft() + index.getRight()));
         assertArrayEquals(tx.getHash(), tx2.getHash());
     }
+
+    @Test
+    public void testLazyDecoding() {
+        EdDSA sender = new EdDSA();
+        List<Transaction> txs = new ArrayList<>();
+        List<TransactionResult> res = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            txs.add(new Transaction(TransactionType.TRANSFER, sender.toAddress(), Bytes.random(20), i,
+                    Config.MIN_TRANSACTION_FEE_HARD, i, System.currentTimeMillis(), Bytes.EMPY_BYTES).sign(sender));
+            res.add(new TransactionResult(true));
+        }
+        BlockHeader header = new BlockHeader(number, coinbase, prevHash, timestamp,
+                MerkleUtil.computeTransactionsRoot(txs), MerkleUtil.computeResultsRoot(res), Hash.EMPTY_H256, data)
+                        .sign(key);
+        Block block = new Block(header, txs, res, view, Collections.singletonList(key.sign(Bytes.random(32))));
+
+        // the original encoding is handed out as is
+        byte[] bytes = block.toBytes();
+        Block block2 = Block.fromBytes(bytes);
+        assertSame(bytes, block2.toBytes());
+        assertEquals(txs.size(), block2.getTransactionCount());
+        assertEquals(block.getTransacitonIndexes(), block2.getTransacitonIndexes());
+        for (int i = 0; i < txs.size(); i++) {
+            assertArrayEquals(txs.get(i).getHash(), block2.getTransactions().get(i).getHash());
+        }
+        assertTrue(block2.validate());
+
+        // changing the votes detaches the encoding
+        block2.setVotes(new ArrayList<>());
+        assertNotSame(bytes, block2.toBytes());
+        assertEquals(0, Block.fromBytes(block2.toBytes()).getVotes().size());
+        assertEquals(txs.size(), Block.fromBytes(block2.toBytes()).getTransactions().size());
+    }
+
+    @Test
+    public void testLazyDecodingConcurrent() throws Exception {
+        EdDSA sender = new EdDSA();
+        List<Transaction> txs = new ArrayList<>();
+        List<TransactionResult> res = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            txs.add(new Transaction(TransactionType.TRANSFER, sender.toAddress(), Bytes.random(20), i,
+                    Config.MIN_TRANSACTION_FEE_HARD, i, System.currentTimeMillis(), Bytes.EMPY_BYTES).sign(sender));
+            res.add(new TransactionResult(true));
+        }
+        BlockHeader header = new BlockHeader(number, coinbase, prevHash, timestamp,
+                MerkleUtil.computeTransactionsRoot(txs), MerkleUtil.computeResultsRoot(res), Hash.EMPTY_H256, data)
+                        .sign(key);
+        Block block = Block.fromBytes(new Block(header, txs, res, view, votes).toBytes());
+
+        // all threads get the same decoded instances
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        List<Future<List<Transaction>>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(exec.submit(() -> new ArrayList<>(block.getTransactions())));
+        }
+        List<Transaction> first = futures.get(0).get();
+        for (Future<List<Transaction>> f : futures) {
+            List<Transaction> list = f.get();
+            for (int i = 0; i < txs.size(); i++) {
+                assertSame(first.get(i), list.get(i));
+                assertArrayEquals(txs.get(i).getHash(), list.get(i).getHash());
+            }
+        }
+        exec.shutdown();
+    }
+
+    @Test
+    public void testLazyDecodingMalformed() {
+        BlockHeader header = new BlockHeader(number, coinbase, prevHash, timestamp,
+                MerkleUtil.computeTransactionsRoot(transactions), MerkleUtil.computeResultsRoot(results),
+                Hash.EMPTY_H256, data).sign(key);
+        byte[] bytes = new Block(header, transactions, results, view, votes).toBytes();
+
+        // corrupt the length prefix of the transaction body
+        int start = new Block(header, transactions, results, view, votes).getTransacitonIndexes().get(0).getLeft();
+        bytes[start + 4 + 32 + 3] = 0;
+
+        Block block = Block.fromBytes(bytes);
+        assertFalse(block.validate());
+    }
 }
@@ -15,11 +15,20 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
+import org.semux.core.state.AccountState;
 import org.semux.crypto.EdDSA;
 import org.semux.crypto.Hash;
+import org.semux.db.AppendDB;
+import org.semux.db.DBFactory;
+import org.semux.db.DBName;
+import org.semux.db.KVDB;
+import org.semux.db.MemoryAppendDB;
 import org.semux.db.MemoryDB;
 import org.semux.utils.Bytes;
 import org.semux.utils.MerkleUtil;
@@ -88,6 +97,46 @@ public class BlockchainImplTest {
         assertEquals(newBlock.getNumber(), chain.getBlockHeader(newBlock.getHash()).getNumber());
     }
 
+    @Test
+    public void testGetBlockHeaderWithoutBody() {
+        AppendDB blocks = new MemoryAppendDB();
+        DBFactory factory = createFactory(blocks);
+
+        Blockchain chain = new BlockchainImpl(factory);
+        Block block1 = createBlock(1);
+        chain.addBlock(block1);
+        chain.addBlock(createBlock(2));
+
+        // headers are stored separately from block bodies
+        chain = new BlockchainImpl(factory);
+        blocks.truncate(1);
+
+        assertNull(chain.getBlock(1));
+        assertArrayEquals(block1.getHash(), chain.getBlockHeader(1).getHash());
+        assertEquals(1, chain.getBlockHeader(block1.getHash()).getNumber());
+    }
+
+    @Test
+    public void testGetBlockHeaderCacheStats() {
+        DBFactory factory = createFactory(new MemoryAppendDB());
+
+        Blockchain chain = new BlockchainImpl(factory);
+        Block block1 = createBlock(1);
+        chain.addBlock(block1);
+        chain.addBlock(createBlock(2));
+
+        BlockchainImpl chain2 = new BlockchainImpl(factory);
+        BlockCache cache = chain2.getBlockCache();
+        long misses = cache.getHeaderMisses();
+        long hits = cache.getHeaderHits();
+        assertArrayEquals(block1.getHash(), chain2.getBlockHeader(1).getHash());
+        assertArrayEquals(block1.getHash(), chain2.getBlockHeader(1).getHash());
+
+        // the miss of the lookup by number isn't counted again by hash
+        assertEquals(misses + 1, cache.getHeaderMisses());
+        assertEquals(hits + 1, cache.getHeaderHits());
+    }
+
     @Test
     public void testGetTransaction() {
         Blockchain chain = createBlockchain();
@@ -136,6 +185,49 @@ public class BlockchainImplTest {
         assertArrayEquals(tx.getHash(), list.get(0).getHash());
     }
 
+    @Test
+    public void testGetTransactionsInSameBlock() {
+        Transaction tx2 = new Transaction(TransactionType.TRANSFER, from, to, value, fee, nonce + 1, timestamp, data);
+        tx2.sign(new EdDSA());
+
+        Block block = createBlock(1, Arrays.asList(tx, tx2), Arrays.asList(res, res));
+        Blockchain chain = createBlockchain();
+        chain.addBlock(block);
+
+        assertEquals(2, chain.getTotalTransactions(from));
+        List<Transaction> list = chain.getTransactions(from, 0, 1024);
+        assertEquals(2, list.size());
+        assertArrayEquals(tx.getHash(), list.get(0).getHash());
+        assertArrayEquals(tx2.getHash(), list.get(1).getHash());
+        assertArrayEquals(block.getHash(), chain.getLatestBlockHash());
+    }
+
+    @Test
+    public void testGetTransactionsPaging() {
+        Transaction tx2 = new Transaction(TransactionType.TRANSFER, from, to, value, fee, nonce + 1, timestamp, data);
+        tx2.sign(new EdDSA());
+        Transaction tx3 = new Transaction(TransactionType.TRANSFER, from, to, value, fee, nonce + 2, timestamp, data);
+        tx3.sign(new EdDSA());
+
+        Blockchain chain = createBlockchain();
+        chain.addBlock(createBlock(1, Arrays.asList(tx, tx2), Arrays.asList(res, res)));
+        chain.addBlock(createBlock(2, Collections.singletonList(tx3), Collections.singletonList(res)));
+
+        List<Transaction> list = chain.getTransactions(from, 1, 3);
+        assertEquals(2, list.size());
+        assertArrayEquals(tx2.getHash(), list.get(0).getHash());
+        assertArrayEquals(tx3.getHash(), list.get(1).getHash());
+
+        assertEquals(0, chain.getTransactions(from, 3, 10).size());
+        assertEquals(0, chain.getTransactions(from, 2, 2).size());
+
+        // coinbase transactions are stored in the index
+        list = chain.getTransactions(coinbase, 0, 10);
+        assertEquals(2, list.size());
+        assertEquals(TransactionType.COINBASE, list.get(0).getType());
+        assertEquals(2, list.get(1).getNonce());
+    }
+
     @Test
     public void testValidatorStates() {
         BlockchainImpl chain = createBlockchain();
@@ -154,6 +246,78 @@ public class BlockchainImplTest {
         assertEquals(2, chain.getNumberOfTurnsMissed(address));
     }
 
+    @Test
+    public void testCountersAfterRestart() {
+        DBFactory factory = createFactory(new MemoryAppendDB());
+        BlockchainImpl chain = new BlockchainImpl(factory);
+        chain.addBlock(createBlock(1));
+        assertEquals(1, chain.getTotalTransactions(from));
+        assertEquals(1, chain.getNumberOfBlocksForged(coinbase));
+
+        chain = new BlockchainImpl(factory);
+        assertEquals(1, chain.getTotalTransactions(from));
+        assertEquals(1, chain.getTotalTransactions(coinbase));
+        assertEquals(1, chain.getNumberOfBlocksForged(coinbase));
+
+        Transaction tx2 = new Transaction(TransactionType.TRANSFER, from, to, value, fee, nonce + 1, timestamp, data);
+        tx2.sign(new EdDSA());
+        chain.addBlock(createBlock(2, Collections.singletonList(tx2), Collections.singletonList(res)));
+        assertEquals(2, chain.getTotalTransactions(from));
+        assertEquals(2, chain.getNumberOfBlocksForged(coinbase));
+        assertEquals(2, chain.getTransactions(from, 0, 10).size());
+    }
+
+    @Test
+    public void testInterruptedImport() {
+        DBFactory factory = createFactory(new MemoryAppendDB());
+        BlockchainImpl chain = new BlockchainImpl(factory) {
+            @Override
+            protected void applyBatches(Map<DBName, List<Pair<byte[], byte[]>>> batches) {
+                // crash after writing the account state only
+                factory.getDB(DBName.ACCOUNT).updateBatch(batches.get(DBName.ACCOUNT));
+                throw new RuntimeException("crash");
+            }
+        };
+
+        AccountState as = chain.getAccountState().track();
+        as.getAccount(to).setBalance(100);
+        as.commit();
+        try {
+            chain.addBlock(createBlock(1));
+        } catch (RuntimeException e) {
+            assertEquals("crash", e.getMessage());
+        }
+
+        // the import is completed on restart, only once
+        for (int i = 0; i < 2; i++) {
+            BlockchainImpl restarted = new BlockchainImpl(factory);
+            assertEquals(1, restarted.getLatestBlockNumber());
+            assertNotNull(restarted.getBlock(1));
+            assertEquals(100, restarted.getAccountState().getAccount(to).getBalance());
+            assertEquals(1, restarted.getTotalTransactions(from));
+            assertEquals(1, restarted.getNumberOfBlocksForged(coinbase));
+        }
+    }
+
+    private DBFactory createFactory(AppendDB blocks) {
+        Map<DBName, KVDB> dbs = new EnumMap<>(DBName.class);
+        return new DBFactory() {
+            @Override
+            public KVDB getDB(DBName name) {
+                return dbs.computeIfAbsent(name, k -> new MemoryDB());
+            }
+
+            @Override
+            public AppendDB getAppendDB(DBName name) {
+                return blocks;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     private BlockchainImpl createBlockchain() {
         return new BlockchainImpl(MemoryDB.FACTORY);
     }
@@ -8,10 +8,12 @@ package org.semux.core;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -114,6 +116,7 @@ public class PendingManagerTest {
 
         Thread.sleep(8000);
         assertEquals(perm.length, pendingMgr.getTransactions().size());
+        assertEquals(perm.length, pendingMgr.getAdmittedCount());
     }
 
     @Test
@@ -152,6 +155,117 @@ public class PendingManagerTest {
         assertArrayEquals(tx3.getHash(), pendingMgr.getTransactions().get(0).getHash());
     }
 
+    @Test
+    public void testReconcile() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        byte[] from2 = new EdDSA().toAddress();
+        accountState.getAccount(from2).setBalance(10000 * Unit.SEM);
+        long nonce = accountState.getAccount(from).getNonce();
+
+        Transaction tx = new Transaction(type, from, to, value, fee, nonce, now, Bytes.EMPY_BYTES).sign(key);
+        pendingMgr.addTransaction(tx);
+        Transaction tx2 = new Transaction(type, from, to, value, fee, nonce + 1, now, Bytes.EMPY_BYTES).sign(key);
+        pendingMgr.addTransaction(tx2);
+        Transaction tx3 = new Transaction(type, from2, Bytes.random(20), value, fee, 0, now, Bytes.EMPY_BYTES)
+                .sign(key);
+        pendingMgr.addTransaction(tx3);
+
+        Thread.sleep(100);
+        assertEquals(3, pendingMgr.getTransactions().size());
+        assertEquals(nonce + 2, pendingMgr.getNonce(from));
+        assertEquals(1, pendingMgr.getNonce(from2));
+
+        BlockHeader header = new BlockHeader(1, Bytes.random(20), Bytes.random(20), now, Bytes.random(32),
+                Bytes.random(32), Bytes.random(32), Bytes.EMPY_BYTES);
+        Block block = new Block(header.sign(new EdDSA()), Arrays.asList(tx),
+                Arrays.asList(new TransactionResult(true)));
+        chain.getAccountState().getAccount(from).setNonce(nonce + 1);
+        pendingMgr.reconcile(block);
+
+        List<Transaction> txs = pendingMgr.getTransactions();
+        assertEquals(2, txs.size());
+        assertEquals(nonce + 2, pendingMgr.getNonce(from));
+        assertEquals(1, pendingMgr.getNonce(from2));
+
+        // tx3 doesn't depend on the block, and is carried over
+        Pair<List<Transaction>, List<TransactionResult>> pending = pendingMgr.getTransactionsAndResults(-1);
+        assertEquals(2, pending.getLeft().size());
+    }
+
+    @Test
+    public void testRequestTransactions() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long nonce = accountState.getAccount(from).getNonce();
+
+        Transaction tx = new Transaction(type, from, to, value, fee, nonce, now, Bytes.EMPY_BYTES).sign(key);
+        Transaction tx2 = new Transaction(type, from, to, value, fee, nonce + 1, now, Bytes.EMPY_BYTES).sign(key);
+        List<byte[]> hashes = Arrays.asList(tx.getHash(), tx2.getHash());
+
+        // requested once, until the request times out
+        assertEquals(2, pendingMgr.requestTransactions(hashes).size());
+        assertEquals(0, pendingMgr.requestTransactions(hashes).size());
+
+        // received transactions are served to peers
+        pendingMgr.addTransaction(tx);
+        pendingMgr.addTransaction(tx2);
+        Thread.sleep(100);
+        assertEquals(2, pendingMgr.getTransactions(hashes).size());
+        assertEquals(0, pendingMgr.requestTransactions(hashes).size());
+    }
+
+    @Test
+    public void testQueueMemory() {
+        long now = System.currentTimeMillis();
+        long budget = Config.PENDING_QUEUE_MEMORY;
+
+        PendingManager mgr = new PendingManager(chain, channelMgr);
+        try {
+            Transaction tx = new Transaction(type, from, to, value, fee, 0, now, Bytes.EMPY_BYTES).sign(key);
+            Config.PENDING_QUEUE_MEMORY = 10 * (tx.getMemorySize() + 32);
+
+            for (int i = 0; i < 20; i++) {
+                mgr.addTransaction(
+                        new Transaction(type, from, to, value, fee, i, now, Bytes.EMPY_BYTES).sign(key));
+            }
+            assertEquals(10, mgr.getQueue().size());
+            assertEquals(10, mgr.getDroppedCount());
+            assertTrue(mgr.getQueueMemory() <= Config.PENDING_QUEUE_MEMORY);
+        } finally {
+            Config.PENDING_QUEUE_MEMORY = budget;
+        }
+    }
+
+    @Test
+    public void testPoolMemory() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long budget = Config.PENDING_POOL_MEMORY;
+
+        Transaction[] txs = new Transaction[4];
+        for (int i = 0; i < txs.length; i++) {
+            byte[] sender = new EdDSA().toAddress();
+            accountState.getAccount(sender).setBalance(10000 * Unit.SEM);
+            txs[i] = new Transaction(type, sender, to, value, (i == 3) ? 2 * fee : fee, 0, now, Bytes.EMPY_BYTES)
+                    .sign(key);
+        }
+
+        try {
+            Config.PENDING_POOL_MEMORY = 3 * TransactionPool.sizeOf(txs[0]);
+
+            for (Transaction tx : txs) {
+                pendingMgr.addTransaction(tx);
+            }
+            Thread.sleep(100);
+
+            List<Transaction> pending = pendingMgr.getTransactions();
+            assertEquals(3, pending.size());
+            assertArrayEquals(txs[3].getHash(), pending.get(0).getHash());
+            assertEquals(1, pendingMgr.getEvictedCount());
+            assertTrue(pendingMgr.getPoolMemory() <= Config.PENDING_POOL_MEMORY);
+        } finally {
+            Config.PENDING_POOL_MEMORY = budget;
+        }
+    }
+
     @After
     public void stop() {
         pendingMgr.stop();
@@ -11,6 +11,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.semux.Config;
@@ -190,4 +194,74 @@ public class TransactionExecutorTest {
         assertEquals(0, voterAcc.getLocked());
         assertEquals(0, ds.getDelegateByAddress(delegate.toAddress()).getVotes());
     }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        Blockchain chain2 = new BlockchainImpl(MemoryDB.FACTORY);
+        AccountState as2 = chain2.getAccountState();
+        DelegateState ds2 = chain2.getDeleteState();
+
+        Random r = new Random(7);
+        byte[][] accounts = new byte[256][];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = Bytes.random(20);
+            as.getAccount(accounts[i]).setBalance(2000 * Unit.SEM);
+            as2.getAccount(accounts[i]).setBalance(2000 * Unit.SEM);
+        }
+
+        // generate and execute sequentially
+        AccountState t1 = as.track();
+        DelegateState d1 = ds.track();
+        List<Transaction> txs = new ArrayList<>();
+        List<TransactionResult> r1 = new ArrayList<>();
+        TransactionType[] types = { TransactionType.TRANSFER, TransactionType.DELEGATE, TransactionType.VOTE,
+                TransactionType.UNVOTE };
+        for (int i = 0; i < 2000; i++) {
+            int from = r.nextInt(accounts.length);
+            int to = r.nextInt(accounts.length);
+            TransactionType type = types[r.nextInt(types.length)];
+            long value = (1 + r.nextInt(3)) * Unit.SEM;
+            byte[] data = Bytes.EMPY_BYTES;
+            if (type == TransactionType.DELEGATE) {
+                to = from;
+                value = Config.MIN_DELEGATE_FEE;
+                data = Bytes.of("name" + r.nextInt(20));
+            }
+
+            // mostly the expected nonce, sometimes a wrong one
+            long nonce = t1.getAccount(accounts[from]).getNonce() + (r.nextInt(10) == 0 ? 1 : 0);
+            Transaction tx = new Transaction(type, accounts[from], accounts[to], value,
+                    Config.MIN_TRANSACTION_FEE_HARD, nonce, System.currentTimeMillis(), data);
+            txs.add(tx);
+            r1.add(exec.execute(tx, t1, d1));
+        }
+
+        AccountState t2 = as2.track();
+        DelegateState d2 = ds2.track();
+        List<TransactionResult> r2 = exec.executeParallel(txs, t2, d2);
+
+        int valid = 0;
+        for (int i = 0; i < txs.size(); i++) {
+            assertEquals(r1.get(i).isValid(), r2.get(i).isValid());
+            valid += r1.get(i).isValid() ? 1 : 0;
+        }
+        assertTrue(valid > txs.size() / 4);
+
+        for (byte[] a : accounts) {
+            assertEquals(t1.getAccount(a).getBalance(), t2.getAccount(a).getBalance());
+            assertEquals(t1.getAccount(a).getLocked(), t2.getAccount(a).getLocked());
+            assertEquals(t1.getAccount(a).getNonce(), t2.getAccount(a).getNonce());
+
+            Delegate dg1 = d1.getDelegateByAddress(a);
+            Delegate dg2 = d2.getDelegateByAddress(a);
+            assertEquals(dg1 == null, dg2 == null);
+            if (dg1 != null) {
+                assertArrayEquals(dg1.getName(), dg2.getName());
+                assertEquals(dg1.getVotes(), dg2.getVotes());
+            }
+            for (byte[] b : accounts) {
+                assertEquals(d1.getVote(a, b), d2.getVote(a, b));
+            }
+        }
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.semux.utils.Bytes;
+
+public class TransactionPoolTest {
+
+    private byte[] alice = Bytes.random(20);
+    private byte[] bob = Bytes.random(20);
+    private byte[] carol = Bytes.random(20);
+
+    private TransactionPool pool;
+
+    @Before
+    public void setup() {
+        pool = new TransactionPool();
+    }
+
+    @Test
+    public void testAdd() {
+        Transaction tx = createTransaction(alice, 0, 10);
+        assertTrue(pool.add(tx));
+        assertFalse(pool.add(tx));
+        assertFalse(pool.add(createTransaction(alice, 2, 10)));
+        assertTrue(pool.add(createTransaction(alice, 1, 10)));
+
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.getSenderCount());
+        assertTrue(pool.contains(tx.getHash()));
+    }
+
+    @Test
+    public void testSelect() {
+        Transaction a0 = createTransaction(alice, 0, 5);
+        Transaction a1 = createTransaction(alice, 1, 50);
+        Transaction b0 = createTransaction(bob, 7, 20);
+        Transaction b1 = createTransaction(bob, 8, 10);
+        Transaction c0 = createTransaction(carol, 3, 20);
+        for (Transaction tx : Arrays.asList(a0, a1, b0, b1, c0)) {
+            pool.add(tx);
+        }
+
+        // a1 pays the most, but only becomes eligible after a0
+        assertEquals(Arrays.asList(b0, c0, b1, a0, a1), pool.select(-1));
+        assertEquals(Arrays.asList(b0, c0), pool.select(2));
+        assertEquals(Arrays.asList(a0, a1, b0, b1, c0), pool.getTransactionsByArrival());
+    }
+
+    @Test
+    public void testRemove() {
+        Transaction a0 = createTransaction(alice, 0, 5);
+        Transaction a1 = createTransaction(alice, 1, 50);
+        Transaction b0 = createTransaction(bob, 0, 20);
+        for (Transaction tx : Arrays.asList(a0, a1, b0)) {
+            pool.add(tx);
+        }
+
+        assertSame(a0, pool.remove(a0.getHash()));
+        assertNull(pool.remove(a0.getHash()));
+        assertEquals(Arrays.asList(a1, b0), pool.select(-1));
+
+        pool.clear();
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.select(-1).size());
+    }
+
+    @Test
+    public void testEvict() {
+        Transaction a0 = createTransaction(alice, 0, 5);
+        Transaction a1 = createTransaction(alice, 1, 30);
+        Transaction b0 = createTransaction(bob, 0, 10);
+        Transaction b1 = createTransaction(bob, 1, 20);
+        for (Transaction tx : Arrays.asList(a0, a1, b0, b1)) {
+            pool.add(tx);
+        }
+
+        // a0 pays the least, but only the last of each sender can be evicted
+        assertEquals(20, pool.getLowestFee());
+        assertSame(b1, pool.evict());
+        assertSame(b0, pool.evict());
+        assertSame(a1, pool.evict());
+        assertSame(a0, pool.evict());
+        assertNull(pool.evict());
+        assertEquals(-1, pool.getLowestFee());
+    }
+
+    @Test
+    public void testMemorySize() {
+        Transaction a0 = createTransaction(alice, 0, 5);
+        Transaction b0 = createTransaction(bob, 0, 10);
+        pool.add(a0);
+        pool.add(b0);
+        assertEquals(TransactionPool.sizeOf(a0) + TransactionPool.sizeOf(b0), pool.getMemorySize());
+
+        pool.evict();
+        assertEquals(TransactionPool.sizeOf(b0), pool.getMemorySize());
+
+        pool.clear();
+        assertEquals(0, pool.getMemorySize());
+    }
+
+    @Test
+    public void testSelectLarge() {
+        int n = 10_000;
+        for (int i = 0; i < n; i++) {
+            pool.add(createTransaction(Bytes.random(20), 0, i % 100));
+        }
+
+        List<Transaction> txs = pool.select(100);
+        assertEquals(100, txs.size());
+        for (Transaction tx : txs) {
+            assertEquals(99, tx.getFee());
+        }
+    }
+
+    private Transaction createTransaction(byte[] from, long nonce, long fee) {
+        return new Transaction(TransactionType.TRANSFER, from, Bytes.random(20), 0, fee, nonce,
+                System.currentTimeMillis(), Bytes.EMPY_BYTES);
+    }
+}
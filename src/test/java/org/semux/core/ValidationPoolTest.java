@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semux.Config;
+import org.semux.crypto.EdDSA;
+import org.semux.utils.Bytes;
+
+public class ValidationPoolTest {
+
+    private static ValidationPool pool;
+
+    @BeforeClass
+    public static void setup() {
+        pool = new ValidationPool(4);
+    }
+
+    @Test
+    public void testValidate() {
+        List<Transaction> txs = createTransactions(1000);
+        long count = pool.getTransactionCount();
+
+        assertTrue(pool.validate(txs, false));
+        assertTrue(pool.validate(txs, true));
+        assertTrue(pool.validate(new ArrayList<>(), true));
+        assertEquals(count + 2 * txs.size(), pool.getTransactionCount());
+        assertTrue(pool.getChunkCount() > 1);
+    }
+
+    @Test
+    public void testInvalid() {
+        List<Transaction> txs = createTransactions(1000);
+        txs.set(777, createTransaction(null));
+
+        assertFalse(pool.validate(txs, false));
+        assertFalse(pool.validate(txs, true));
+    }
+
+    @Test
+    public void testVerify() {
+        List<Transaction> txs = createTransactions(1000);
+        txs.get(10).setSignature(txs.get(11).getSignature());
+
+        for (boolean cofactored : new boolean[] { false, true }) {
+            boolean[] valid = pool.verify(txs, cofactored);
+            for (int i = 0; i < txs.size(); i++) {
+                assertEquals(i != 10, valid[i]);
+            }
+        }
+        assertEquals(0, pool.verify(new ArrayList<>(), true).length);
+    }
+
+    @Test
+    public void testStats() {
+        assertEquals(4, pool.getParallelism());
+        assertTrue(pool.getQueueDepth() >= 0);
+        assertTrue(pool.getUtilization() >= 0 && pool.getUtilization() <= 1);
+    }
+
+    private List<Transaction> createTransactions(int n) {
+        EdDSA key = new EdDSA();
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            txs.add(createTransaction(key));
+        }
+        return txs;
+    }
+
+    private Transaction createTransaction(EdDSA key) {
+        Transaction tx = new Transaction(TransactionType.TRANSFER, Bytes.random(20), Bytes.random(20), 0,
+                Config.MIN_TRANSACTION_FEE_HARD, 1, System.currentTimeMillis(), Bytes.EMPY_BYTES);
+        return (key == null) ? tx : tx.sign(key);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.semux.crypto.Hex;
+import org.semux.utils.Bytes;
+
+public class ValidatorSetTest {
+
+    @Test
+    public void testLookup() {
+        byte[] v1 = Bytes.random(20);
+        byte[] v2 = Bytes.random(20);
+        ValidatorSet set = new ValidatorSet(Arrays.asList(v1, v2));
+
+        assertEquals(2, set.size());
+        assertArrayEquals(v2, set.get(1));
+        assertTrue(set.contains(v1));
+        assertTrue(set.contains(Hex.encode(v2)));
+        assertFalse(set.contains(Bytes.random(20)));
+        assertEquals(1, set.indexOf(v2));
+        assertEquals(0, set.indexOf(Hex.encode(v1)));
+        assertEquals(-1, set.indexOf(Bytes.random(20)));
+        assertEquals(Arrays.asList(Hex.encode(v1), Hex.encode(v2)), set.getPeerIds());
+    }
+
+    @Test
+    public void testImmutable() {
+        byte[] v1 = Bytes.random(20);
+        ValidatorSet set = new ValidatorSet(Arrays.asList(v1));
+
+        set.get(0)[0]++;
+        v1[0]++;
+        assertFalse(Arrays.equals(v1, set.get(0)));
+        assertEquals(1, set.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiablePeerIds() {
+        new ValidatorSet(Arrays.asList(Bytes.random(20))).getPeerIds().clear();
+    }
+}
@@ -8,6 +8,8 @@ package org.semux.core.state;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.util.Map;
 
@@ -15,6 +17,7 @@ import org.junit.Test;
 import org.semux.core.Account;
 import org.semux.core.Blockchain;
 import org.semux.core.BlockchainImpl;
+import org.semux.db.KVDB;
 import org.semux.db.MemoryDB;
 import org.semux.utils.ByteArray;
 import org.semux.utils.Bytes;
@@ -55,4 +58,135 @@ public class AccountStateTest {
         assertArrayEquals(Bytes.of("test"), acc2.getCode());
         assertArrayEquals(Bytes.of("value"), acc2.getStorage(Bytes.of("key")));
     }
+
+    @Test
+    public void testEvictionWithOpenOverlay() {
+        AccountState state = new AccountStateImpl(new MemoryDB());
+        byte[] addr = Bytes.random(20);
+        state.getAccount(addr).setBalance(10);
+        state.commit();
+
+        // an overlay which reads the account through to the root
+        AccountState overlay = state.track();
+        assertEquals(10L, overlay.getAccount(addr).getBalance());
+
+        // commit past the cache size, which evicts the decoded accounts
+        for (int i = 0; i <= AccountStateImpl.MAX_CACHED_ACCOUNTS; i++) {
+            state.getAccount(Bytes.random(20)).setNonce(1);
+        }
+        state.commit();
+
+        // later blocks update the account
+        AccountState track = state.track();
+        track.getAccount(addr).setBalance(20);
+        track.getAccount(addr).setNonce(5);
+        track.commit();
+        state.commit();
+
+        Account acc = overlay.getAccount(addr);
+        assertEquals(20L, acc.getBalance());
+        assertEquals(5L, acc.getNonce());
+    }
+
+    @Test
+    public void testTrack() {
+        AccountState state = new AccountStateImpl(new MemoryDB());
+        byte[] addr = Bytes.random(20);
+        state.getAccount(addr).setBalance(10);
+
+        AccountState track = state.track();
+        Account acc = track.getAccount(addr);
+        assertSame(acc, track.getAccount(addr));
+        acc.setBalance(20);
+        assertEquals(10L, state.getAccount(addr).getBalance());
+
+        AccountState track2 = track.track();
+        track2.getAccount(addr).setNonce(1);
+        track2.rollback();
+        assertEquals(0L, track.getAccount(addr).getNonce());
+
+        track.commit();
+        assertEquals(20L, state.getAccount(addr).getBalance());
+    }
+
+    @Test
+    public void testBranch() {
+        AccountState state = new AccountStateImpl(new MemoryDB());
+        byte[] addr1 = Bytes.random(20);
+        byte[] addr2 = Bytes.random(20);
+        byte[] key = Bytes.of("key");
+        state.getAccount(addr1).setBalance(10);
+
+        AccountState track = state.track();
+        AccountState b1 = track.branch();
+        AccountState b2 = track.branch();
+        b1.getAccount(addr1).setBalance(20);
+        b1.getAccount(addr1).putStorage(key, Bytes.of("v1"));
+        b2.getAccount(addr2).setNonce(1);
+        assertEquals(10L, track.getAccount(addr1).getBalance());
+        assertEquals(0L, b1.getAccount(addr2).getNonce());
+
+        b1.commit();
+        b2.commit();
+        assertEquals(20L, track.getAccount(addr1).getBalance());
+        assertArrayEquals(Bytes.of("v1"), track.getAccount(addr1).getStorage(key));
+        assertEquals(1L, track.getAccount(addr2).getNonce());
+
+        // the commits of the branches are undone with the overlay
+        track.rollback();
+        assertEquals(10L, track.getAccount(addr1).getBalance());
+        assertNull(track.getAccount(addr1).getStorage(key));
+        assertEquals(0L, track.getAccount(addr2).getNonce());
+    }
+
+    @Test
+    public void testNestedSnapshots() {
+        AccountState state = new AccountStateImpl(new MemoryDB());
+        byte[] addr = Bytes.random(20);
+        byte[] key = Bytes.of("key");
+
+        AccountState track = state.track();
+        Account acc = track.getAccount(addr);
+        acc.setBalance(1);
+
+        AccountState track2 = track.track();
+        track2.getAccount(addr).setBalance(2);
+        track2.getAccount(addr).putStorage(key, Bytes.of("v2"));
+        track2.commit();
+
+        AccountState track3 = track2.track();
+        track3.getAccount(addr).setBalance(3);
+        track3.getAccount(addr).putStorage(key, Bytes.of("v3"));
+        assertSame(acc, track3.getAccount(addr));
+        track3.rollback();
+
+        assertEquals(2L, acc.getBalance());
+        assertArrayEquals(Bytes.of("v2"), acc.getStorage(key));
+
+        track2.getAccount(addr).setNonce(5);
+        track2.rollback();
+        assertEquals(0L, acc.getNonce());
+
+        track.commit();
+        assertEquals(2L, state.getAccount(addr).getBalance());
+        assertArrayEquals(Bytes.of("v2"), state.getAccount(addr).getStorage(key));
+    }
+
+    @Test
+    public void testMigration() {
+        KVDB db = new MemoryDB();
+        byte[] addr = Bytes.random(20);
+        db.put(Bytes.merge(addr, new byte[] { 0 }), Bytes.of(1L));
+        db.put(Bytes.merge(addr, new byte[] { 1 }), Bytes.of(2L));
+        db.put(Bytes.merge(addr, new byte[] { 2 }), Bytes.of(3L));
+        db.put(Bytes.merge(addr, new byte[] { 3 }), Bytes.of("code"));
+
+        AccountState state = new AccountStateImpl(db);
+        Account acc = state.getAccount(addr);
+        assertEquals(1L, acc.getBalance());
+        assertEquals(2L, acc.getLocked());
+        assertEquals(3L, acc.getNonce());
+        assertArrayEquals(Bytes.of("code"), acc.getCode());
+        assertNull(db.get(Bytes.merge(addr, new byte[] { 0 })));
+    }
 }
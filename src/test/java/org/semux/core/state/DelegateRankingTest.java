@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.core.state;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.semux.core.Delegate;
+import org.semux.utils.Bytes;
+
+public class DelegateRankingTest {
+
+    @Test
+    public void testRanking() {
+        DelegateRanking ranking = new DelegateRanking();
+        Delegate a = new Delegate(Bytes.random(20), Bytes.of("aaaa"), 0, 10);
+        Delegate b = new Delegate(Bytes.random(20), Bytes.of("bbbb"), 0, 10);
+        Delegate c = new Delegate(Bytes.random(20), Bytes.of("cccc"), 0, 20);
+        ranking.put(b);
+        ranking.put(a);
+        ranking.put(c);
+
+        assertEquals(3, ranking.size());
+        assertEquals(0, ranking.getRank(c.getAddress()));
+        assertEquals(1, ranking.getRank(a.getAddress()));
+        assertEquals(2, ranking.getRank(b.getAddress()));
+
+        // b overtakes c
+        ranking.put(new Delegate(b.getAddress(), b.getName(), 0, 30));
+        assertEquals(0, ranking.getRank(b.getAddress()));
+        assertEquals(3, ranking.size());
+
+        List<Delegate> page = ranking.getDelegates(1, 3);
+        assertEquals(2, page.size());
+        assertArrayEquals(c.getAddress(), page.get(0).getAddress());
+        assertArrayEquals(a.getAddress(), page.get(1).getAddress());
+
+        ranking.remove(c.getAddress());
+        assertEquals(-1, ranking.getRank(c.getAddress()));
+        assertEquals(1, ranking.getRank(a.getAddress()));
+    }
+
+    @Test
+    public void testRandomUpdates() {
+        DelegateRanking ranking = new DelegateRanking();
+        List<Delegate> delegates = new ArrayList<>();
+        Random r = new Random(1);
+
+        for (int i = 0; i < 200; i++) {
+            Delegate d = new Delegate(Bytes.random(20), Bytes.of("d" + i), 0, r.nextInt(50));
+            delegates.add(d);
+            ranking.put(d);
+        }
+        for (int i = 0; i < 1000; i++) {
+            Delegate d = delegates.get(r.nextInt(delegates.size()));
+            d.setVotes(r.nextInt(50));
+            ranking.put(new Delegate(d.getAddress(), d.getName(), 0, d.getVotes()));
+        }
+
+        delegates.sort((d1, d2) -> {
+            int cmp = Long.compare(d2.getVotes(), d1.getVotes());
+            return (cmp != 0) ? cmp : d1.getNameString().compareTo(d2.getNameString());
+        });
+        List<Delegate> list = ranking.getDelegates(0, Integer.MAX_VALUE);
+        assertEquals(delegates.size(), list.size());
+        for (int i = 0; i < delegates.size(); i++) {
+            assertArrayEquals(delegates.get(i).getAddress(), list.get(i).getAddress());
+            assertEquals(i, ranking.getRank(delegates.get(i).getAddress()));
+        }
+    }
+}
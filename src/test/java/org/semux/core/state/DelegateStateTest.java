@@ -10,6 +10,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
@@ -103,6 +104,28 @@ public class DelegateStateTest {
         assertEquals(200 - 1, list.get(0).getVotes());
     }
 
+    @Test
+    public void testRanking() {
+        byte[] voter = new EdDSA().toAddress();
+        byte[] delegate = new EdDSA().toAddress();
+
+        assertTrue(ds.register(delegate, Bytes.of("test")));
+        assertEquals(delegates.size(), ds.getRank(delegate));
+
+        DelegateState track = ds.track();
+        assertTrue(track.vote(voter, delegate, 1));
+        assertEquals(0, track.getRank(delegate));
+        assertEquals(delegates.size(), ds.getRank(delegate));
+        track.commit();
+
+        assertEquals(0, ds.getRank(delegate));
+        List<Delegate> top = ds.getDelegates(0, 1);
+        assertEquals(1, top.size());
+        assertArrayEquals(delegate, top.get(0).getAddress());
+        assertEquals(2, ds.getDelegates(1, 3).size());
+        assertEquals(-1, ds.getRank(voter));
+    }
+
     @Test
     public void testUnvote() {
         byte[] voter = new EdDSA().toAddress();
@@ -130,6 +153,28 @@ public class DelegateStateTest {
         assertEquals(value * 2, ds.getVote(voter, delegate));
     }
 
+    @Test
+    public void testNestedSnapshots() {
+        byte[] voter = new EdDSA().toAddress();
+        byte[] delegate = new EdDSA().toAddress();
+
+        DelegateState track = ds.track();
+        assertTrue(track.register(delegate, Bytes.of("test")));
+
+        DelegateState track2 = track.track();
+        assertTrue(track2.vote(voter, delegate, 10));
+        track2.commit();
+        assertTrue(track2.vote(voter, delegate, 20));
+        track2.rollback();
+
+        assertEquals(10, track.getVote(voter, delegate));
+        assertEquals(10, track.getDelegateByAddress(delegate).getVotes());
+        assertNull(ds.getDelegateByAddress(delegate));
+
+        track.commit();
+        assertEquals(10, ds.getDelegateByName(Bytes.of("test")).getVotes());
+    }
+
     @After
     public void rollback() {
         ds.rollback();
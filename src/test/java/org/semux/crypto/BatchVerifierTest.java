@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.MessageDigest;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.semux.crypto.EdDSA.Signature;
+import org.semux.utils.Bytes;
+
+import net.i2p.crypto.eddsa.EdDSAEngine;
+import net.i2p.crypto.eddsa.EdDSAPrivateKey;
+import net.i2p.crypto.eddsa.EdDSAPublicKey;
+import net.i2p.crypto.eddsa.math.GroupElement;
+import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
+import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
+
+public class BatchVerifierTest {
+
+    private static final int SIZE = 100;
+
+    private byte[][] hashes = new byte[SIZE][];
+    private Signature[] sigs = new Signature[SIZE];
+
+    public BatchVerifierTest() {
+        EdDSA key = new EdDSA();
+        for (int i = 0; i < SIZE; i++) {
+            hashes[i] = Bytes.random(32);
+            sigs[i] = (i % 3 == 0 ? key : new EdDSA()).sign(hashes[i]);
+        }
+    }
+
+    private BatchVerifier create(boolean cofactored) {
+        BatchVerifier verifier = new BatchVerifier(null, cofactored);
+        for (int i = 0; i < SIZE; i++) {
+            verifier.add(hashes[i], sigs[i]);
+        }
+        return verifier;
+    }
+
+    private static boolean verifySingle(boolean cofactored, byte[] hash, Signature sig) {
+        if (sig == null) {
+            return false;
+        }
+        return cofactored ? EdDSA.verifyCofactored(hash, sig) : EdDSA.verify(hash, sig);
+    }
+
+    @Test
+    public void testValid() {
+        for (boolean cofactored : new boolean[] { false, true }) {
+            assertTrue(create(cofactored).verify());
+
+            boolean[] results = create(cofactored).verifyEach();
+            for (boolean r : results) {
+                assertTrue(r);
+            }
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        // wrong message, tampered R, tampered S, and wrong public key
+        hashes[5] = Bytes.random(32);
+        sigs[17] = tamper(sigs[17], 0);
+        sigs[42] = tamper(sigs[42], 40);
+        sigs[77] = new Signature(sigs[77].getSignature(), new EdDSA().getPublicKey());
+        sigs[90] = null;
+
+        for (boolean cofactored : new boolean[] { false, true }) {
+            assertFalse(create(cofactored).verify());
+
+            boolean[] results = create(cofactored).verifyEach();
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals(verifySingle(cofactored, hashes[i], sigs[i]), results[i]);
+            }
+            assertFalse(results[5]);
+            assertFalse(results[42]);
+            assertTrue(results[6]);
+        }
+    }
+
+    @Test
+    public void testSmallBatch() {
+        BatchVerifier verifier = new BatchVerifier(null, true);
+        verifier.add(hashes[0], sigs[0]);
+        assertTrue(verifier.verify());
+
+        verifier.add(hashes[1], sigs[0]);
+        assertFalse(verifier.verify());
+        assertEquals(2, verifier.size());
+    }
+
+    @Test
+    public void testSmallOrderComponent() throws Exception {
+        EdDSA key = new EdDSA();
+        byte[] msgHash = Bytes.random(32);
+        Signature sig = signWithTorsion(key, msgHash);
+
+        // the library's check, which is the standard one, rejects it
+        EdDSAEngine engine = new EdDSAEngine();
+        engine.initVerify(new EdDSAPublicKey(new X509EncodedKeySpec(key.getPublicKey())));
+        assertFalse(engine.verifyOneShot(msgHash, sig.getSignature()));
+        assertFalse(EdDSA.verify(msgHash, sig));
+        assertTrue(EdDSA.verifyCofactored(msgHash, sig));
+
+        sigs[SIZE / 2] = sig;
+        hashes[SIZE / 2] = msgHash;
+        for (boolean cofactored : new boolean[] { false, true }) {
+            boolean single = verifySingle(cofactored, msgHash, sig);
+
+            // in a batch
+            assertEquals(single, create(cofactored).verify());
+            assertEquals(single, create(cofactored).verifyEach()[SIZE / 2]);
+
+            // alone
+            BatchVerifier verifier = new BatchVerifier(null, cofactored);
+            verifier.add(msgHash, sig);
+            assertEquals(single, verifier.verify());
+        }
+    }
+
+    /**
+     * Signs with R = rB + T, where T is a point of order 4.
+     */
+    private Signature signWithTorsion(EdDSA key, byte[] msgHash) throws Exception {
+        EdDSAParameterSpec spec = EdDSANamedCurveTable.getByName("Ed25519");
+        EdDSAPrivateKey priv = new EdDSAPrivateKey(new PKCS8EncodedKeySpec(key.getPrivateKey()));
+
+        GroupElement t = new GroupElement(spec.getCurve(), new byte[32]);
+        byte[] r = spec.getScalarOps().reduce(Bytes.random(64));
+        byte[] encodedR = spec.getB().scalarMultiply(r).add(t.toCached()).toP3().toByteArray();
+
+        MessageDigest digest = MessageDigest.getInstance(spec.getHashAlgorithm());
+        digest.update(encodedR);
+        digest.update(priv.getAbyte());
+        byte[] h = spec.getScalarOps().reduce(digest.digest(msgHash));
+        byte[] s = spec.getScalarOps().multiplyAndAdd(h, priv.geta(), r);
+
+        return new Signature(Bytes.merge(encodedR, s), key.getPublicKey());
+    }
+
+    private Signature tamper(Signature sig, int index) {
+        byte[] s = Arrays.copyOf(sig.getSignature(), 64);
+        s[index] ^= 1;
+        return new Signature(s, sig.getPublicKey());
+    }
+}
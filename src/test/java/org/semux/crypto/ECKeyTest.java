@@ -7,15 +7,21 @@
 package org.semux.crypto;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.semux.utils.Bytes;
 
+import net.i2p.crypto.eddsa.EdDSAEngine;
+import net.i2p.crypto.eddsa.EdDSAPublicKey;
+
 public class ECKeyTest {
 
     @Test
@@ -42,4 +48,52 @@ public class ECKeyTest {
         boolean isValid = EdDSA.verify(hash, sig);
         assertTrue(isValid);
     }
+
+    @Test
+    public void testVerifyWithCachedKey() {
+        EdDSA key = new EdDSA();
+        EdDSA other = new EdDSA();
+
+        for (int i = 0; i < 3; i++) {
+            byte[] hash = Bytes.random(32);
+            EdDSA.Signature sig = key.sign(hash);
+
+            assertTrue(EdDSA.verify(hash, sig));
+            assertFalse(EdDSA.verify(Bytes.random(32), sig));
+            assertFalse(EdDSA.verify(hash, new EdDSA.Signature(sig.getSignature(), other.getPublicKey())));
+        }
+    }
+
+    @Test
+    public void testNonCanonicalS() throws Exception {
+        EdDSA key = new EdDSA();
+        byte[] hash = Bytes.random(32);
+        EdDSA.Signature sig = key.sign(hash);
+
+        // S + L, which is less than 2^256 as S < L < 2^253
+        byte[] l = Hex.parse("edd3f55c1a631258d69cf7a2def9de1400000000000000000000000000000010");
+        byte[] bytes = Arrays.copyOf(sig.getSignature(), 64);
+        int carry = 0;
+        for (int i = 0; i < 32; i++) {
+            int sum = (bytes[32 + i] & 0xff) + (l[i] & 0xff) + carry;
+            bytes[32 + i] = (byte) sum;
+            carry = sum >> 8;
+        }
+        EdDSA.Signature malleated = new EdDSA.Signature(bytes, sig.getPublicKey());
+
+        // the library alone accepts it
+        EdDSAEngine engine = new EdDSAEngine();
+        engine.initVerify(new EdDSAPublicKey(new X509EncodedKeySpec(sig.getPublicKey())));
+        assertTrue(engine.verifyOneShot(hash, malleated.getSignature()));
+
+        assertTrue(EdDSA.verify(hash, sig));
+        assertFalse(EdDSA.verify(hash, malleated));
+        assertFalse(EdDSA.verifyCofactored(hash, malleated));
+
+        for (boolean cofactored : new boolean[] { false, true }) {
+            BatchVerifier verifier = new BatchVerifier(null, cofactored);
+            verifier.add(hash, malleated);
+            assertFalse(verifier.verify());
+        }
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.semux.crypto.EdDSA.Signature;
+import org.semux.utils.Bytes;
+
+public class SignatureCacheTest {
+
+    @Test
+    public void testVerify() {
+        SignatureCache cache = new SignatureCache(1024);
+        EdDSA key = new EdDSA();
+        byte[] hash = Bytes.random(32);
+        Signature sig = key.sign(hash);
+
+        assertTrue(cache.verify(hash, sig));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertTrue(cache.verify(hash, sig));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+        assertEquals(1, cache.size());
+
+        // another message, or another signer, is not a hit
+        assertFalse(cache.verify(Bytes.random(32), sig));
+        assertFalse(cache.verify(hash, new Signature(sig.getSignature(), new EdDSA().getPublicKey())));
+        assertFalse(cache.verify(hash, null));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        SignatureCache cache = new SignatureCache(64);
+        EdDSA key = new EdDSA();
+        for (int i = 0; i < 1000; i++) {
+            byte[] hash = Bytes.random(32);
+            cache.add(hash, key.sign(hash));
+        }
+        assertTrue(cache.size() <= 64);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBatchVerifier() {
+        SignatureCache cache = new SignatureCache(1024);
+        EdDSA key = new EdDSA();
+        byte[][] hashes = new byte[100][];
+        Signature[] sigs = new Signature[100];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = Bytes.random(32);
+            sigs[i] = key.sign(hashes[i]);
+        }
+
+        BatchVerifier verifier = new BatchVerifier(cache, true);
+        for (int i = 0; i < hashes.length; i++) {
+            verifier.add(hashes[i], sigs[i]);
+        }
+        assertTrue(verifier.verify());
+        assertEquals(hashes.length, cache.size());
+
+        // the second batch is served by the cache, so one bad signature fails alone
+        verifier = new BatchVerifier(cache, true);
+        for (int i = 0; i < hashes.length; i++) {
+            verifier.add(hashes[i], sigs[i]);
+        }
+        verifier.add(Bytes.random(32), sigs[0]);
+        boolean[] results = verifier.verifyEach();
+        for (int i = 0; i < hashes.length; i++) {
+            assertTrue(results[i]);
+        }
+        assertFalse(results[hashes.length]);
+        assertEquals(hashes.length, cache.getHitCount());
+    }
+
+    @Test
+    public void testCofactored() {
+        SignatureCache cache = new SignatureCache(1024);
+        EdDSA key = new EdDSA();
+        byte[] hash = Bytes.random(32);
+        Signature sig = key.sign(hash);
+
+        // verified with the cofactored equation only
+        cache.add(hash, sig, true);
+        assertTrue(cache.contains(hash, sig, true));
+        assertFalse(cache.contains(hash, sig));
+
+        // verified with the cofactorless check, which covers both
+        cache.add(hash, sig);
+        cache.add(hash, sig, true);
+        assertTrue(cache.contains(hash, sig));
+        assertTrue(cache.contains(hash, sig, true));
+    }
+}
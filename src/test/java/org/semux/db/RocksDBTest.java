@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rocksdb.CompressionType;
+import org.semux.utils.Bytes;
+import org.semux.utils.ClosableIterator;
+import org.semux.utils.FileUtil;
+
+public class RocksDBTest {
+
+    private File dir;
+    private RocksDBFactory factory;
+
+    private byte[] key = Bytes.of("key");
+    private byte[] value = Bytes.of("value");
+
+    @Before
+    public void setup() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "semux-rocksdb-" + System.nanoTime());
+        factory = new RocksDBFactory(dir);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        factory.close();
+        FileUtil.recursiveDelete(dir);
+    }
+
+    @Test
+    public void testGetAndPut() {
+        KVDB kvdb = factory.getDB(DBName.BLOCK);
+
+        assertNull(kvdb.get(key));
+        kvdb.put(key, value);
+        assertTrue(Arrays.equals(value, kvdb.get(key)));
+        assertNull(factory.getDB(DBName.HEADER).get(key));
+        kvdb.delete(key);
+        assertNull(kvdb.get(key));
+    }
+
+    @Test
+    public void testUpdateBatch() {
+        KVDB kvdb = factory.getDB(DBName.ACCOUNT);
+        kvdb.put(key, value);
+
+        List<Pair<byte[], byte[]>> pairs = new ArrayList<>();
+        pairs.add(Pair.of(key, null));
+        pairs.add(Pair.of(Bytes.of("key2"), value));
+        kvdb.updateBatch(pairs);
+
+        assertNull(kvdb.get(key));
+        assertArrayEquals(value, kvdb.get(Bytes.of("key2")));
+    }
+
+    @Test
+    public void testPrefixIterator() {
+        KVDB kvdb = factory.getDB(DBName.INDEX);
+        byte[] address1 = Bytes.random(20);
+        byte[] address2 = Bytes.random(20);
+        for (int i = 0; i < 3; i++) {
+            kvdb.put(Bytes.merge(address1, Bytes.of(i)), value);
+            kvdb.put(Bytes.merge(address2, Bytes.of(i)), value);
+        }
+
+        int count = 0;
+        ClosableIterator<Entry<byte[], byte[]>> itr = kvdb.iterator(address1);
+        while (itr.hasNext()) {
+            byte[] k = itr.next().getKey();
+            if (!Arrays.equals(address1, Arrays.copyOf(k, 20))) {
+                break;
+            }
+            count++;
+        }
+        itr.close();
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void testReopen() {
+        factory.getDB(DBName.VOTE).put(key, value);
+        factory.close();
+
+        factory = new RocksDBFactory(dir);
+        assertArrayEquals(value, factory.getDB(DBName.VOTE).get(key));
+        assertFalse(dir.listFiles().length == 0);
+    }
+
+    @Test
+    public void testSegmentsDir() {
+        // block bodies are not shared with the LevelDB backend
+        assertTrue(new File(dir, "rocksdb-segments").isDirectory());
+        assertFalse(new File(dir, "segments").exists());
+    }
+
+    @Test
+    public void testParseCompressionType() {
+        assertEquals(CompressionType.NO_COMPRESSION, RocksDBFactory.parseCompressionType("none"));
+        assertEquals(CompressionType.ZLIB_COMPRESSION, RocksDBFactory.parseCompressionType("zlib"));
+        assertEquals(CompressionType.LZ4_COMPRESSION, RocksDBFactory.parseCompressionType("lz4"));
+        assertEquals(CompressionType.ZSTD_COMPRESSION, RocksDBFactory.parseCompressionType("zstd"));
+        assertNull(RocksDBFactory.parseCompressionType("zstandard"));
+    }
+}
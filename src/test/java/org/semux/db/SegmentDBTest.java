@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.semux.utils.Bytes;
+
+public class SegmentDBTest {
+
+    private File dir;
+    private SegmentDB db;
+
+    @Before
+    public void setup() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "semux-segments-" + System.nanoTime());
+        db = new SegmentDB(dir, 64);
+    }
+
+    @After
+    public void teardown() {
+        db.destory();
+    }
+
+    @Test
+    public void testAppendAndGet() {
+        byte[] r1 = Bytes.random(40);
+        byte[] r2 = Bytes.random(40);
+        db.append(1, r1);
+        db.append(2, r2);
+
+        assertEquals(3, db.size());
+        assertNull(db.get(0));
+        assertArrayEquals(r1, toBytes(db.get(1)));
+        assertArrayEquals(r2, toBytes(db.get(2)));
+        assertNull(db.get(3));
+
+        // the second record does not fit in the first segment
+        assertTrue(new File(dir, "segment-00001").exists());
+    }
+
+    @Test
+    public void testLargeRecord() {
+        byte[] r = Bytes.random(100);
+        db.append(0, r);
+        assertArrayEquals(r, toBytes(db.get(0)));
+    }
+
+    @Test
+    public void testReadOnly() {
+        db.append(0, Bytes.random(8));
+        assertTrue(db.get(0).isReadOnly());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testAppendExisting() {
+        db.append(0, Bytes.random(8));
+        db.append(0, Bytes.random(8));
+    }
+
+    @Test
+    public void testReopen() {
+        byte[] r1 = Bytes.random(20);
+        byte[] r2 = Bytes.random(20);
+        db.append(0, r1);
+        db.append(1, r2);
+        db.close();
+
+        db = new SegmentDB(dir, 64);
+        assertEquals(2, db.size());
+        assertArrayEquals(r1, toBytes(db.get(0)));
+        assertArrayEquals(r2, toBytes(db.get(1)));
+
+        byte[] r3 = Bytes.random(20);
+        db.append(2, r3);
+        assertArrayEquals(r3, toBytes(db.get(2)));
+        assertFalse(new File(dir, "segment-00001").exists());
+    }
+
+    @Test
+    public void testTruncate() {
+        db.append(0, Bytes.random(40));
+        db.append(1, Bytes.random(40));
+        db.truncate(1);
+
+        assertEquals(1, db.size());
+        assertNull(db.get(1));
+        assertFalse(new File(dir, "segment-00001").exists());
+
+        byte[] r = Bytes.random(10);
+        db.append(1, r);
+        assertArrayEquals(r, toBytes(db.get(1)));
+    }
+
+    private byte[] toBytes(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+}
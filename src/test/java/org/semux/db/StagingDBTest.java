@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.semux.utils.Bytes;
+import org.semux.utils.ClosableIterator;
+
+public class StagingDBTest {
+
+    @Test
+    public void testStaging() {
+        MemoryDB memory = new MemoryDB();
+        StagingDB db = new StagingDB(memory);
+
+        db.put(Bytes.of("a"), Bytes.of(1));
+        assertArrayEquals(Bytes.of(1), memory.get(Bytes.of("a")));
+
+        db.stage();
+        db.updateBatch(Arrays.asList(Pair.of(Bytes.of("a"), null), Pair.of(Bytes.of("b"), Bytes.of(2))));
+        assertNull(db.get(Bytes.of("a")));
+        assertArrayEquals(Bytes.of(2), db.get(Bytes.of("b")));
+        assertArrayEquals(Bytes.of(1), memory.get(Bytes.of("a")));
+        assertNull(memory.get(Bytes.of("b")));
+        assertEquals(2, db.getStaged().size());
+
+        memory.updateBatch(db.getStaged());
+        db.reset();
+        assertNull(db.get(Bytes.of("a")));
+        assertArrayEquals(Bytes.of(2), db.get(Bytes.of("b")));
+        assertEquals(0, db.getStaged().size());
+    }
+
+    @Test
+    public void testIterator() {
+        MemoryDB memory = new MemoryDB();
+        StagingDB db = new StagingDB(memory);
+        db.put(Bytes.of("a"), Bytes.of(1));
+        db.put(Bytes.of("c"), Bytes.of(3));
+        db.put(Bytes.of("e"), Bytes.of(5));
+
+        db.stage();
+        db.put(Bytes.of("b"), Bytes.of(2));
+        db.put(Bytes.of("c"), Bytes.of(4));
+        db.delete(Bytes.of("e"));
+        db.put(Bytes.of("f"), Bytes.of(6));
+
+        assertEquals(Arrays.asList("a", "b", "c", "f"), keys(db.iterator()));
+        assertEquals(Arrays.asList("c", "f"), keys(db.iterator(Bytes.of("c"))));
+
+        ClosableIterator<Entry<byte[], byte[]>> itr = db.iterator(Bytes.of("c"));
+        assertArrayEquals(Bytes.of(4), itr.next().getValue());
+        itr.close();
+    }
+
+    private List<String> keys(ClosableIterator<Entry<byte[], byte[]>> itr) {
+        List<String> keys = new ArrayList<>();
+        while (itr.hasNext()) {
+            keys.add(Bytes.toString(itr.next().getKey()));
+        }
+        itr.close();
+        return keys;
+    }
+}
@@ -6,11 +6,15 @@
  */
 package org.semux.net;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 import org.semux.Config;
 import org.semux.crypto.EdDSA;
+import org.semux.utils.SimpleEncoder;
 
 public class PeerTest {
 
@@ -33,4 +37,32 @@ public class PeerTest {
         assertEquals(peerId, peer.getPeerId());
         assertEquals(latestBlockNumber, peer.getLatestBlockNumber());
     }
+
+    @Test
+    public void testCapabilities() {
+        Peer peer = new Peer("127.0.0.1", 1234, Config.P2P_VERSION, Config.getClientId(false),
+                new EdDSA().toAddressString(), 1, new String[] { Config.P2P_CAPABILITY_TX_HASHES, "UNKNOWN" });
+        peer = Peer.fromBytes(peer.toBytes());
+
+        assertArrayEquals(new String[] { Config.P2P_CAPABILITY_TX_HASHES, "UNKNOWN" }, peer.getCapabilities());
+        assertTrue(peer.supports(Config.P2P_CAPABILITY_TX_HASHES));
+        assertFalse(peer.supports("OTHER"));
+    }
+
+    @Test
+    public void testNoCapabilities() {
+        // encoding of peers which don't advertise capabilities
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeString("127.0.0.1");
+        enc.writeInt(1234);
+        enc.writeShort(Config.P2P_VERSION);
+        enc.writeString(Config.getClientId(false));
+        enc.writeString(new EdDSA().toAddressString());
+        enc.writeLong(1);
+        Peer peer = Peer.fromBytes(enc.toBytes());
+
+        assertEquals(1, peer.getLatestBlockNumber());
+        assertEquals(0, peer.getCapabilities().length);
+        assertFalse(peer.supports(Config.P2P_CAPABILITY_TX_HASHES));
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.net.msg.p2p;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.semux.crypto.Hash;
+import org.semux.utils.Bytes;
+
+public class TransactionHashesMessageTest {
+
+    @Test
+    public void testCodec() {
+        List<byte[]> hashes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            hashes.add(Hash.h256(Bytes.of(i)));
+        }
+
+        TransactionHashesMessage msg = new TransactionHashesMessage(new TransactionHashesMessage(hashes).getEncoded());
+        assertEquals(hashes.size(), msg.getHashes().size());
+        for (int i = 0; i < hashes.size(); i++) {
+            assertArrayEquals(hashes.get(i), msg.getHashes().get(i));
+        }
+
+        GetTransactionsMessage req = new GetTransactionsMessage(new GetTransactionsMessage(hashes).getEncoded());
+        assertEquals(hashes.size(), req.getHashes().size());
+        for (int i = 0; i < hashes.size(); i++) {
+            assertArrayEquals(hashes.get(i), req.getHashes().get(i));
+        }
+    }
+
+    @Test
+    public void testMaxHashes() {
+        List<byte[]> hashes = new ArrayList<>();
+        for (int i = 0; i < TransactionHashesMessage.MAX_HASHES + 1; i++) {
+            hashes.add(Hash.h256(Bytes.of(i)));
+        }
+
+        TransactionHashesMessage msg = new TransactionHashesMessage(new TransactionHashesMessage(hashes).getEncoded());
+        assertEquals(TransactionHashesMessage.MAX_HASHES, msg.getHashes().size());
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.net.msg.p2p;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.semux.Config;
+import org.semux.core.Transaction;
+import org.semux.core.TransactionType;
+import org.semux.crypto.EdDSA;
+import org.semux.utils.Bytes;
+
+public class TransactionsMessageTest {
+
+    @Test
+    public void testCodec() {
+        EdDSA key = new EdDSA();
+        byte[] to = new EdDSA().toAddress();
+        long now = System.currentTimeMillis();
+
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            txs.add(new Transaction(TransactionType.TRANSFER, key.toAddress(), to, 1, Config.MIN_TRANSACTION_FEE_SOFT,
+                    i, now, Bytes.EMPY_BYTES).sign(key));
+        }
+
+        TransactionsMessage msg = new TransactionsMessage(new TransactionsMessage(txs).getEncoded());
+        assertEquals(txs.size(), msg.getTransactions().size());
+        for (int i = 0; i < txs.size(); i++) {
+            Transaction tx = msg.getTransactions().get(i);
+            assertArrayEquals(txs.get(i).getHash(), tx.getHash());
+            assertTrue(tx.validate());
+        }
+    }
+}
@@ -14,7 +14,7 @@ public class WorldMessageTest {
     public void TestIsValid() {
         EdDSA key = new EdDSA();
         Peer peer = new Peer("127.0.0.1", 5161, Config.P2P_VERSION, Config.getClientId(false), key.toAddressString(),
-                2);
+                2, Config.P2P_CAPABILITIES);
 
         WorldMessage msg = new WorldMessage(peer, key);
         assertTrue(msg.isValid());
@@ -23,5 +23,6 @@ public class WorldMessageTest {
         msg = new WorldMessage(msg.getEncoded());
         assertTrue(msg.isValid());
         assertEquals(key.toAddressString(), msg.getPeer().getPeerId());
+        assertTrue(msg.getPeer().supports(Config.P2P_CAPABILITY_TX_HASHES));
     }
 }
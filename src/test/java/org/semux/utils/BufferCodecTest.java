@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017 The Semux Developers
+ *
+ * Distributed under the MIT software license, see the accompanying file
+ * LICENSE or https://opensource.org/licenses/mit-license.php
+ */
+package org.semux.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BufferCodecTest {
+
+    @Test
+    public void testCompatibility() {
+        byte[] bytes = Bytes.random(20);
+
+        SimpleEncoder enc1 = new SimpleEncoder();
+        enc1.writeBoolean(true);
+        enc1.writeByte(Byte.MIN_VALUE);
+        enc1.writeShort(Short.MAX_VALUE);
+        enc1.writeInt(Integer.MIN_VALUE);
+        enc1.writeLong(Long.MAX_VALUE);
+        enc1.writeBytes(bytes);
+        enc1.writeBytes(Bytes.EMPY_BYTES);
+
+        int size = BufferEncoder.SIZE_BOOLEAN + BufferEncoder.SIZE_BYTE + BufferEncoder.SIZE_SHORT
+                + BufferEncoder.SIZE_INT + BufferEncoder.SIZE_LONG + BufferEncoder.sizeOf(bytes)
+                + BufferEncoder.sizeOf(Bytes.EMPY_BYTES);
+        BufferEncoder enc2 = new BufferEncoder(size);
+        enc2.writeBoolean(true);
+        enc2.writeByte(Byte.MIN_VALUE);
+        enc2.writeShort(Short.MAX_VALUE);
+        enc2.writeInt(Integer.MIN_VALUE);
+        enc2.writeLong(Long.MAX_VALUE);
+        enc2.writeBytes(bytes);
+        enc2.writeBytes(Bytes.EMPY_BYTES);
+
+        assertArrayEquals(enc1.toBytes(), enc2.toBytes());
+        assertSame(enc2.toBytes(), enc2.toBytes());
+
+        BufferDecoder dec = new BufferDecoder(enc1.toBytes());
+        assertEquals(true, dec.readBoolean());
+        assertEquals(Byte.MIN_VALUE, dec.readByte());
+        assertEquals(Short.MAX_VALUE, dec.readShort());
+        assertEquals(Integer.MIN_VALUE, dec.readInt());
+        assertEquals(Long.MAX_VALUE, dec.readLong());
+        assertArrayEquals(bytes, dec.readBytes());
+        assertArrayEquals(Bytes.EMPY_BYTES, dec.readBytes());
+        assertEquals(size, dec.getReadIndex());
+    }
+
+    @Test
+    public void testReuseDirect() {
+        BufferEncoder enc = new BufferEncoder(ByteBuffer.allocateDirect(64));
+        for (int i = 0; i < 3; i++) {
+            enc.reset();
+            enc.writeInt(i);
+            enc.writeBytes(Bytes.of("abc"));
+
+            byte[] encoded = enc.toBytes();
+            assertEquals(11, encoded.length);
+
+            BufferDecoder dec = new BufferDecoder(enc.toBuffer());
+            assertEquals(i, dec.readInt());
+            ByteBuffer slice = dec.readSlice();
+            assertEquals(3, slice.remaining());
+            assertEquals('a', slice.get(0));
+        }
+    }
+
+    @Test
+    public void testSlice() {
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeBytes(Bytes.of("hello"));
+        enc.writeInt(7);
+        byte[] encoded = enc.toBytes();
+
+        BufferDecoder dec = new BufferDecoder(encoded);
+        ByteBuffer slice = dec.readSlice();
+        assertEquals(7, dec.readInt());
+
+        // shares the input
+        assertSame(encoded, slice.array());
+        assertEquals(5, slice.remaining());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBadLength() {
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeInt(100);
+        new BufferDecoder(enc.toBytes()).readSlice();
+    }
+}